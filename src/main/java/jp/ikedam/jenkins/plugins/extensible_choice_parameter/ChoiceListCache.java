@@ -0,0 +1,840 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Caches choices returned from {@link ChoiceListProvider}s.
+ * 
+ * Only providers returning a cache key ({@link ChoiceListProvider#getCacheKey()})
+ * are cached, and only when caching is enabled in the System Configuration page.
+ * 
+ * The time to live of each cached list adapts to how often the list changes:
+ * each time a list is retrieved again, its fingerprint is compared with the previous one,
+ * and the rate of changes is tracked as an exponential moving average.
+ * The time to live is interpolated geometrically between the configured minimum
+ * (for lists changing every time) and maximum (for lists never changing).
+ * 
+ * Also works as a circuit breaker for failing providers:
+ * after the configured number of failures in a row,
+ * the provider is not called for the configured cool-down period,
+ * and the last choices successfully retrieved are used instead.
+ * Those choices are stored with {@link LastKnownGoodChoiceListStore}
+ * to be available even after restarts.
+ * 
+ * Lists with many choices can be stored in memory-mapped files
+ * with {@link MappedChoiceListStore}, not to hold them in the heap.
+ * 
+ * The number of evaluations running at the same time can also be limited
+ * with {@link ChoiceListEvaluationLimiter}.
+ * When the limit is reached and the permit is not acquired in the configured time,
+ * the cached choices are used even if expired.
+ * 
+ * Choices being retrieved in background with {@link #getSnapshotAsync(ChoiceListProvider, ExecutorService)}
+ * are not retrieved again at the same time: callers wait for them instead.
+ */
+public class ChoiceListCache
+{
+    private static final Logger LOGGER = Logger.getLogger(ChoiceListCache.class.getName());
+    
+    /**
+     * Maximum number of lists to cache.
+     * The least recently used one is dropped when exceeded.
+     */
+    private static final int MAX_ENTRIES = 1024;
+    
+    /**
+     * Weight of the latest observation in the rate of changes.
+     */
+    private static final double CHANGE_RATE_WEIGHT = 0.3;
+    
+    /**
+     * Maximum time to wait for choices being retrieved in another thread, in milliseconds.
+     */
+    public static final long PENDING_TIMEOUT = 60 * 1000L;
+    
+    private static final ChoiceListCache INSTANCE = new ChoiceListCache();
+    
+    /**
+     * @return the instance shared in this Jenkins.
+     */
+    public static ChoiceListCache getInstance()
+    {
+        return INSTANCE;
+    }
+    
+    /**
+     * A cached list and the statistics of its changes.
+     */
+    protected static class CacheEntry
+    {
+        private ChoiceListSnapshot snapshot = null;
+        private double changeRate = 1.0;
+        private long ttl = 0;
+        private long expiresAt = 0;
+        private int failures = 0;
+        private long openUntil = 0;
+        private ChoiceListSnapshot storedSnapshot = null;
+        
+        /**
+         * @return the cached snapshot. null if not retrieved yet.
+         */
+        public ChoiceListSnapshot getSnapshot()
+        {
+            return snapshot;
+        }
+        
+        /**
+         * @return the rate the list changed in recent retrievals, between 0.0 and 1.0.
+         */
+        public double getChangeRate()
+        {
+            return changeRate;
+        }
+        
+        /**
+         * @return the current time to live in milliseconds.
+         */
+        public long getTtl()
+        {
+            return ttl;
+        }
+        
+        /**
+         * @param now current time in milliseconds.
+         * @return whether the cached snapshot can be used.
+         */
+        public boolean isFresh(long now)
+        {
+            return snapshot != null && now < expiresAt;
+        }
+        
+        /**
+         * Record a retrieved list, and update the time to live.
+         * 
+         * @param newSnapshot the retrieved list.
+         * @param minTtl the minimum time to live in milliseconds.
+         * @param maxTtl the maximum time to live in milliseconds.
+         * @return whether the contents changed from the previous one.
+         */
+        protected boolean update(ChoiceListSnapshot newSnapshot, long minTtl, long maxTtl)
+        {
+            boolean changed = !newSnapshot.hasSameContents(snapshot);
+            if(snapshot != null)
+            {
+                changeRate = changeRate * (1.0 - CHANGE_RATE_WEIGHT) + (changed?CHANGE_RATE_WEIGHT:0.0);
+            }
+            snapshot = newSnapshot;
+            ttl = computeTtl(changeRate, minTtl, maxTtl);
+            expiresAt = newSnapshot.getCreatedAt() + ttl;
+            return changed;
+        }
+        
+        /**
+         * @return the number of failures in a row.
+         */
+        public int getFailures()
+        {
+            return failures;
+        }
+        
+        /**
+         * @param now current time in milliseconds.
+         * @return whether the provider should not be called now.
+         */
+        public boolean isCircuitOpen(long now)
+        {
+            return now < openUntil;
+        }
+        
+        /**
+         * Record a success of the provider.
+         */
+        protected void recordSuccess()
+        {
+            failures = 0;
+            openUntil = 0;
+        }
+        
+        /**
+         * Record a failure of the provider, and open the circuit if needed.
+         * 
+         * @param now current time in milliseconds.
+         * @param threshold the number of failures in a row to open the circuit.
+         * @param coolDown the time to keep the circuit open in milliseconds.
+         * @return whether the circuit is opened.
+         */
+        protected boolean recordFailure(long now, int threshold, long coolDown)
+        {
+            ++failures;
+            if(threshold <= 0 || failures < threshold)
+            {
+                return false;
+            }
+            openUntil = now + coolDown;
+            return true;
+        }
+        
+        /**
+         * Make the cached snapshot expire.
+         * 
+         * The snapshot and the statistics are preserved
+         * to detect changes at the next retrieval.
+         */
+        protected void expire()
+        {
+            expiresAt = 0;
+        }
+    }
+    
+    /**
+     * Adapts a future of a list of choices to a future of its snapshot.
+     */
+    private static class SnapshotFuture implements Future<ChoiceListSnapshot>
+    {
+        private final Future<List<String>> future;
+        private ChoiceListSnapshot snapshot = null;
+        
+        public SnapshotFuture(Future<List<String>> future)
+        {
+            this.future = future;
+        }
+        
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            return future.cancel(mayInterruptIfRunning);
+        }
+        
+        @Override
+        public boolean isCancelled()
+        {
+            return future.isCancelled();
+        }
+        
+        @Override
+        public boolean isDone()
+        {
+            return future.isDone();
+        }
+        
+        @Override
+        public synchronized ChoiceListSnapshot get() throws InterruptedException, ExecutionException
+        {
+            if(snapshot == null)
+            {
+                snapshot = new ChoiceListSnapshot(future.get());
+            }
+            return snapshot;
+        }
+        
+        @Override
+        public synchronized ChoiceListSnapshot get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException
+        {
+            if(snapshot == null)
+            {
+                snapshot = new ChoiceListSnapshot(future.get(timeout, unit));
+            }
+            return snapshot;
+        }
+    }
+    
+    /**
+     * Compute the time to live from the rate of changes.
+     * 
+     * @param changeRate the rate of changes, between 0.0 and 1.0.
+     * @param minTtl the minimum time to live.
+     * @param maxTtl the maximum time to live.
+     * @return the time to live.
+     */
+    protected static long computeTtl(double changeRate, long minTtl, long maxTtl)
+    {
+        if(minTtl <= 0 || maxTtl <= minTtl)
+        {
+            return Math.max(minTtl, maxTtl);
+        }
+        double rate = Math.min(1.0, Math.max(0.0, changeRate));
+        return Math.round(minTtl * Math.pow((double)maxTtl / minTtl, 1.0 - rate));
+    }
+    
+    private final MappedChoiceListStore mappedStore = new MappedChoiceListStore();
+    
+    private final LastKnownGoodChoiceListStore lastKnownGoodStore = new LastKnownGoodChoiceListStore(mappedStore);
+    
+    private final ChoiceListEvaluationLimiter limiter = new ChoiceListEvaluationLimiter();
+    
+    private final ChoiceListChangeNotifier notifier = new ChoiceListChangeNotifier();
+    
+    private final Map<String, Future<ChoiceListSnapshot>> pending = new HashMap<String, Future<ChoiceListSnapshot>>();
+    
+    private final Map<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest)
+        {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    
+    /**
+     * Returns the global configuration.
+     * 
+     * @return the descriptor holding the configuration. null if Jenkins is not running.
+     */
+    protected ExtensibleChoiceParameterDefinition.DescriptorImpl getConfiguration()
+    {
+        Jenkins jenkins = Jenkins.getInstance();
+        if(jenkins == null)
+        {
+            return null;
+        }
+        return jenkins.getDescriptorByType(ExtensibleChoiceParameterDefinition.DescriptorImpl.class);
+    }
+    
+    /**
+     * Returns whether the choices of the provider are cached.
+     * 
+     * @param provider
+     * @return true if the choices are cached.
+     */
+    public boolean isCached(ChoiceListProvider provider)
+    {
+        if(provider == null || provider.getCacheKey() == null)
+        {
+            return false;
+        }
+        ExtensibleChoiceParameterDefinition.DescriptorImpl config = getConfiguration();
+        return config != null && config.isCacheEnabled();
+    }
+    
+    /**
+     * Returns whether choices are managed with the configuration.
+     * 
+     * @param config the global configuration. may be null.
+     * @return false if choices are always retrieved directly from providers.
+     */
+    private static boolean isManaged(ExtensibleChoiceParameterDefinition.DescriptorImpl config)
+    {
+        return config != null && (
+                config.isCacheEnabled()
+                || config.isCircuitBreakerEnabled()
+                || config.isEvaluationLimited()
+        );
+    }
+    
+    /**
+     * Returns the choices of the provider, using the cache if available.
+     * 
+     * @param provider the provider. must not be null.
+     * @return the list of choices. never null.
+     */
+    public List<String> getChoiceList(ChoiceListProvider provider)
+    {
+        return getSnapshot(provider).getChoiceList();
+    }
+    
+    /**
+     * Returns the snapshot of the choices of the provider, using the cache if available.
+     * 
+     * Waits for the choices if they are being retrieved in background,
+     * at most for {@link #PENDING_TIMEOUT} milliseconds.
+     * The cached choices are used if it takes longer, even if expired.
+     * 
+     * @param provider the provider. must not be null.
+     * @return the snapshot of the choices. never null.
+     */
+    public ChoiceListSnapshot getSnapshot(ChoiceListProvider provider)
+    {
+        Future<ChoiceListSnapshot> future = null;
+        if(provider.getCacheKey() != null)
+        {
+            synchronized(pending)
+            {
+                future = pending.get(provider.getCacheKey());
+            }
+        }
+        if(future != null)
+        {
+            try
+            {
+                return future.get(PENDING_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch(ExecutionException e)
+            {
+                // retrieve by itself.
+            }
+            catch(CancellationException e)
+            {
+                // gave up by another thread. retrieve by itself.
+            }
+            catch(TimeoutException e)
+            {
+                LOGGER.warning(String.format("Timed out waiting for choices of %s", provider.getCacheKey()));
+                ChoiceListSnapshot cached = getCachedSnapshot(provider);
+                if(cached != null)
+                {
+                    return cached;
+                }
+                // retrieve by itself.
+            }
+        }
+        return retrieveSnapshot(provider);
+    }
+    
+    /**
+     * Returns the snapshot of the choices of the provider, using the cache if available.
+     * 
+     * @param provider the provider. must not be null.
+     * @return the snapshot of the choices. never null.
+     */
+    protected ChoiceListSnapshot retrieveSnapshot(ChoiceListProvider provider)
+    {
+        String key = provider.getCacheKey();
+        ExtensibleChoiceParameterDefinition.DescriptorImpl config = (key != null)?getConfiguration():null;
+        if(!isManaged(config))
+        {
+            return provider.getChoiceListSnapshot();
+        }
+        
+        CacheEntry entry = getEntry(key);
+        synchronized(entry)
+        {
+            long now = System.currentTimeMillis();
+            if(config.isCacheEnabled() && entry.isFresh(now))
+            {
+                return entry.getSnapshot();
+            }
+            if(config.isCircuitBreakerEnabled() && entry.isCircuitOpen(now))
+            {
+                return getLastKnownGood(key, entry);
+            }
+        }
+        
+        ChoiceListEvaluationLimiter.Permit permit = getLimiter().acquire(
+                provider.getClass().getName(),
+                key,
+                config.getMaxEvaluationsPerType(),
+                config.getMaxEvaluationsPerProvider(),
+                TimeUnit.SECONDS.toMillis(config.getEvaluationQueueTimeout())
+        );
+        if(permit == null)
+        {
+            LOGGER.warning(String.format("Too many evaluations running. Use cached choices for %s", key));
+            synchronized(entry)
+            {
+                return getLastKnownGood(key, entry);
+            }
+        }
+        
+        // retrieve outside of the lock, for that can take a long time.
+        ChoiceListSnapshot snapshot;
+        try
+        {
+            if(config.isCacheEnabled())
+            {
+                synchronized(entry)
+                {
+                    if(entry.isFresh(System.currentTimeMillis()))
+                    {
+                        // retrieved by another thread while waiting for the permit.
+                        return entry.getSnapshot();
+                    }
+                }
+            }
+            snapshot = new ChoiceListSnapshot(provider.fetchChoiceList());
+        }
+        catch(Exception e)
+        {
+            LOGGER.log(Level.WARNING, String.format("Failed to retrieve choices from %s", key), e);
+            if(!config.isCircuitBreakerEnabled())
+            {
+                return new ChoiceListSnapshot(null);
+            }
+            synchronized(entry)
+            {
+                if(entry.recordFailure(
+                        System.currentTimeMillis(),
+                        config.getCircuitBreakerThreshold(),
+                        TimeUnit.SECONDS.toMillis(config.getCircuitBreakerCoolDown())
+                ))
+                {
+                    LOGGER.warning(String.format(
+                            "%s failed %d times in a row. Not called for %d seconds.",
+                            key,
+                            entry.getFailures(),
+                            config.getCircuitBreakerCoolDown()
+                    ));
+                }
+                return getLastKnownGood(key, entry);
+            }
+        }
+        finally
+        {
+            permit.release();
+        }
+        
+        if(config.getMappedListThreshold() > 0 && snapshot.getChoiceList().size() >= config.getMappedListThreshold())
+        {
+            snapshot = getMappedStore().map(key, snapshot);
+        }
+        
+        boolean toStore;
+        boolean changed;
+        synchronized(entry)
+        {
+            entry.recordSuccess();
+            changed = entry.update(
+                    snapshot,
+                    TimeUnit.SECONDS.toMillis(config.getMinCacheTtl()),
+                    TimeUnit.SECONDS.toMillis(config.getMaxCacheTtl())
+            );
+            toStore = config.isCircuitBreakerEnabled() && !snapshot.hasSameContents(entry.storedSnapshot);
+            if(toStore)
+            {
+                entry.storedSnapshot = snapshot;
+            }
+        }
+        if(toStore)
+        {
+            getLastKnownGoodStore().save(key, snapshot);
+        }
+        if(changed)
+        {
+            getNotifier().notifyChanged(key);
+        }
+        return snapshot;
+    }
+    
+    /**
+     * Starts retrieving the snapshot of the choices of the provider,
+     * and returns without waiting for it.
+     * 
+     * Returns a completed one when the cached choices can be used,
+     * and the running one if the choices are already being retrieved.
+     * Choices not managed with the configuration are retrieved with
+     * {@link ChoiceListProvider#getChoiceListAsync(ExecutorService)}.
+     * Others are retrieved with {@link #getSnapshot(ChoiceListProvider)} in the executor,
+     * so that the circuit breaker and the limits of evaluations apply.
+     * 
+     * @param provider the provider. must not be null.
+     * @param executor the executor to retrieve choices in.
+     * @return the snapshot of the choices, available when retrieved.
+     * @throws RejectedExecutionException the executor does not accept the retrieval.
+     */
+    public Future<ChoiceListSnapshot> getSnapshotAsync(final ChoiceListProvider provider, ExecutorService executor)
+    {
+        final String key = provider.getCacheKey();
+        ExtensibleChoiceParameterDefinition.DescriptorImpl config = (key != null)?getConfiguration():null;
+        if(!isManaged(config))
+        {
+            return new SnapshotFuture(provider.getChoiceListAsync(executor));
+        }
+        
+        boolean fresh = false;
+        if(config.isCacheEnabled())
+        {
+            CacheEntry entry = getEntry(key);
+            synchronized(entry)
+            {
+                fresh = entry.isFresh(System.currentTimeMillis());
+            }
+        }
+        if(fresh)
+        {
+            // no need to use another thread for the cached one.
+            FutureTask<ChoiceListSnapshot> cached = new FutureTask<ChoiceListSnapshot>(new Callable<ChoiceListSnapshot>()
+            {
+                @Override
+                public ChoiceListSnapshot call() throws Exception
+                {
+                    return retrieveSnapshot(provider);
+                }
+            });
+            cached.run();
+            return cached;
+        }
+        
+        synchronized(pending)
+        {
+            Future<ChoiceListSnapshot> future = pending.get(key);
+            if(future != null)
+            {
+                return future;
+            }
+            FutureTask<ChoiceListSnapshot> task = new FutureTask<ChoiceListSnapshot>(new Callable<ChoiceListSnapshot>()
+            {
+                @Override
+                public ChoiceListSnapshot call() throws Exception
+                {
+                    return retrieveSnapshot(provider);
+                }
+            })
+            {
+                @Override
+                protected void done()
+                {
+                    // the cache is already updated, or cancelled even before started.
+                    synchronized(pending)
+                    {
+                        if(pending.get(key) == this)
+                        {
+                            pending.remove(key);
+                        }
+                    }
+                }
+            };
+            pending.put(key, task);
+            try
+            {
+                executor.execute(task);
+            }
+            catch(RejectedExecutionException e)
+            {
+                // others would wait for the task never run.
+                pending.remove(key);
+                throw e;
+            }
+            return task;
+        }
+    }
+    
+    /**
+     * Returns the choices of the provider retrieved before, without retrieving them.
+     * 
+     * Used when choices cannot be waited for.
+     * 
+     * @param provider
+     * @return the snapshot of the choices, even if expired. null if not retrieved yet.
+     */
+    public ChoiceListSnapshot getCachedSnapshot(ChoiceListProvider provider)
+    {
+        if(provider == null || provider.getCacheKey() == null)
+        {
+            return null;
+        }
+        CacheEntry entry;
+        synchronized(entries)
+        {
+            entry = entries.get(provider.getCacheKey());
+        }
+        if(entry == null)
+        {
+            return null;
+        }
+        synchronized(entry)
+        {
+            return entry.getSnapshot();
+        }
+    }
+    
+    /**
+     * Returns the last choices successfully retrieved, without retrieving them.
+     * 
+     * Used when choices being retrieved cannot be waited for any more.
+     * Falls back to ones stored with {@link LastKnownGoodChoiceListStore}
+     * when nothing is retrieved since Jenkins started.
+     * 
+     * @param provider the provider. must not be null.
+     * @return the snapshot of the choices, even if expired. an empty one if there is none.
+     */
+    public ChoiceListSnapshot getLastKnownGoodSnapshot(ChoiceListProvider provider)
+    {
+        String key = provider.getCacheKey();
+        if(key == null)
+        {
+            return new ChoiceListSnapshot(null);
+        }
+        CacheEntry entry = getEntry(key);
+        synchronized(entry)
+        {
+            return getLastKnownGood(key, entry);
+        }
+    }
+    
+    /**
+     * Returns the entry for the key, creating it if not exists.
+     * 
+     * @param key
+     * @return the entry.
+     */
+    protected CacheEntry getEntry(String key)
+    {
+        synchronized(entries)
+        {
+            CacheEntry entry = entries.get(key);
+            if(entry == null)
+            {
+                entry = new CacheEntry();
+                entries.put(key, entry);
+            }
+            return entry;
+        }
+    }
+    
+    /**
+     * Returns the last choices successfully retrieved.
+     * 
+     * Must be called in the lock of the entry.
+     * 
+     * @param key the cache key of the provider.
+     * @param entry the entry for the provider.
+     * @return the last known good choices. an empty list if there is none.
+     */
+    protected ChoiceListSnapshot getLastKnownGood(String key, CacheEntry entry)
+    {
+        if(entry.getSnapshot() != null)
+        {
+            return entry.getSnapshot();
+        }
+        if(entry.storedSnapshot == null)
+        {
+            // retrieved nothing since Jenkins started.
+            entry.storedSnapshot = getLastKnownGoodStore().load(key);
+            if(entry.storedSnapshot == null)
+            {
+                entry.storedSnapshot = new ChoiceListSnapshot(null);
+            }
+        }
+        return entry.storedSnapshot;
+    }
+    
+    /**
+     * @return the limiter for evaluations of providers.
+     */
+    protected ChoiceListEvaluationLimiter getLimiter()
+    {
+        return limiter;
+    }
+    
+    /**
+     * @return the notifier for changes of choices.
+     */
+    public ChoiceListChangeNotifier getNotifier()
+    {
+        return notifier;
+    }
+    
+    /**
+     * @return the store for lists in memory-mapped files.
+     */
+    protected MappedChoiceListStore getMappedStore()
+    {
+        return mappedStore;
+    }
+    
+    /**
+     * @return the store for the last known good choices.
+     */
+    protected LastKnownGoodChoiceListStore getLastKnownGoodStore()
+    {
+        return lastKnownGoodStore;
+    }
+    
+    /**
+     * Returns the current time to live of the choices of the provider.
+     * 
+     * @param provider
+     * @return the time to live in seconds. 0 if not cached.
+     */
+    public long getEffectiveTtl(ChoiceListProvider provider)
+    {
+        if(!isCached(provider))
+        {
+            return 0;
+        }
+        CacheEntry entry;
+        synchronized(entries)
+        {
+            entry = entries.get(provider.getCacheKey());
+        }
+        if(entry == null)
+        {
+            return 0;
+        }
+        synchronized(entry)
+        {
+            return TimeUnit.MILLISECONDS.toSeconds(entry.getTtl());
+        }
+    }
+    
+    /**
+     * Make the cached choices of the provider expire.
+     * 
+     * @param provider
+     */
+    public void invalidate(ChoiceListProvider provider)
+    {
+        if(provider == null || provider.getCacheKey() == null)
+        {
+            return;
+        }
+        CacheEntry entry;
+        synchronized(entries)
+        {
+            entry = entries.get(provider.getCacheKey());
+        }
+        if(entry != null)
+        {
+            synchronized(entry)
+            {
+                entry.expire();
+            }
+        }
+    }
+    
+    /**
+     * Drop all cached choices.
+     */
+    public void clear()
+    {
+        synchronized(entries)
+        {
+            entries.clear();
+        }
+    }
+}
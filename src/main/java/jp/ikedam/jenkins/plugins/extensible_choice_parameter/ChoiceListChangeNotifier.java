@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Notifies threads waiting for choices of providers to change.
+ * 
+ * Each provider (identified with the cache key) has a version,
+ * incremented each time its choices change.
+ * Waiting threads pass the versions they know,
+ * so that changes between reading the version and starting to wait are not missed.
+ * A thread can wait for any of many providers to change,
+ * so that a build page watches all of its parameters with a single request.
+ */
+public class ChoiceListChangeNotifier
+{
+    /**
+     * Maximum number of providers to track.
+     * The least recently used one is dropped when exceeded,
+     * and threads waiting for it wake up only with the timeout
+     * or changes of other providers.
+     */
+    private static final int MAX_PROVIDERS = 1024;
+    
+    /**
+     * versions of providers. also used as the monitor to wait on.
+     */
+    private final Map<String, Long> versions = new LinkedHashMap<String, Long>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+        {
+            return size() > MAX_PROVIDERS;
+        }
+    };
+    
+    /**
+     * @param key the cache key of the provider.
+     * @return the current version of the choices of the provider.
+     */
+    public long getVersion(String key)
+    {
+        synchronized(versions)
+        {
+            Long version = versions.get(key);
+            if(version == null)
+            {
+                version = 0L;
+                versions.put(key, version);
+            }
+            return version;
+        }
+    }
+    
+    /**
+     * Notify that the choices of a provider changed.
+     * 
+     * @param key the cache key of the provider.
+     */
+    public void notifyChanged(String key)
+    {
+        synchronized(versions)
+        {
+            versions.put(key, getVersion(key) + 1);
+            versions.notifyAll();
+        }
+    }
+    
+    /**
+     * Wait for the choices of a provider to change.
+     * 
+     * @param key the cache key of the provider.
+     * @param knownVersion the version the caller knows. returns immediately if already changed.
+     * @param timeout the time to wait in milliseconds.
+     * @return true if changed. false if timed out or interrupted.
+     */
+    public boolean await(String key, long knownVersion, long timeout)
+    {
+        return await(Collections.singletonMap(key, knownVersion), timeout);
+    }
+    
+    /**
+     * Wait for the choices of any of providers to change.
+     * 
+     * @param knownVersions the cache keys of the providers to the versions the caller knows.
+     *        returns immediately if any of them already changed, or this is empty.
+     * @param timeout the time to wait in milliseconds.
+     * @return true if changed. false if timed out, interrupted, or no providers are specified.
+     */
+    public boolean await(Map<String, Long> knownVersions, long timeout)
+    {
+        if(knownVersions.isEmpty())
+        {
+            return false;
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized(versions)
+        {
+            try
+            {
+                while(!isChanged(knownVersions))
+                {
+                    long wait = deadline - System.currentTimeMillis();
+                    if(wait <= 0)
+                    {
+                        return false;
+                    }
+                    versions.wait(wait);
+                }
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * @param knownVersions the cache keys of providers to the versions the caller knows.
+     * @return whether any of the providers changed.
+     */
+    private boolean isChanged(Map<String, Long> knownVersions)
+    {
+        for(Map.Entry<String, Long> entry: knownVersions.entrySet())
+        {
+            if(getVersion(entry.getKey()) != entry.getValue())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
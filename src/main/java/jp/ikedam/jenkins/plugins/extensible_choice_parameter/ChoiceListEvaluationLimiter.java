@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of evaluations of providers running at the same time.
+ * 
+ * Two limits are applied:
+ * <ul>
+ *    <li>per provider type (e.g. all System Groovy Choice Parameters)</li>
+ *    <li>per provider (providers with the same cache key)</li>
+ * </ul>
+ * 
+ * Callers wait for the specified time when the limit is reached,
+ * and should fall back to cached choices if they fail to acquire the permit.
+ */
+public class ChoiceListEvaluationLimiter
+{
+    /**
+     * Maximum number of providers to track.
+     * The least recently used one is dropped when exceeded.
+     */
+    private static final int MAX_PROVIDERS = 1024;
+    
+    /**
+     * A semaphore with the number of permits it was created with.
+     * 
+     * Recreated when the configured number is changed.
+     * Permits acquired before that are released to the old one.
+     */
+    private static class Limit
+    {
+        private final int permits;
+        private final Semaphore semaphore;
+        
+        public Limit(int permits)
+        {
+            this.permits = permits;
+            this.semaphore = new Semaphore(permits, true);
+        }
+    }
+    
+    /**
+     * Permits acquired for an evaluation.
+     * 
+     * Must be released after the evaluation.
+     */
+    public static class Permit
+    {
+        private final List<Semaphore> semaphoreList = new ArrayList<Semaphore>(2);
+        
+        /**
+         * Release all the acquired permits.
+         */
+        public void release()
+        {
+            for(Semaphore semaphore: semaphoreList)
+            {
+                semaphore.release();
+            }
+            semaphoreList.clear();
+        }
+    }
+    
+    private final Map<String, Limit> typeLimits = new HashMap<String, Limit>();
+    
+    private final Map<String, Limit> providerLimits = new LinkedHashMap<String, Limit>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Limit> eldest)
+        {
+            return size() > MAX_PROVIDERS;
+        }
+    };
+    
+    private static Semaphore getSemaphore(Map<String, Limit> limits, String key, int permits)
+    {
+        synchronized(limits)
+        {
+            Limit limit = limits.get(key);
+            if(limit == null || limit.permits != permits)
+            {
+                limit = new Limit(permits);
+                limits.put(key, limit);
+            }
+            return limit.semaphore;
+        }
+    }
+    
+    /**
+     * Acquire permits to evaluate a provider.
+     * 
+     * Limits of 0 or less mean unlimited.
+     * 
+     * @param type the type of the provider. usually the class name.
+     * @param key the cache key of the provider.
+     * @param maxPerType the maximum number of evaluations for the type.
+     * @param maxPerProvider the maximum number of evaluations for the provider.
+     * @param timeout the time to wait for permits in milliseconds.
+     * @return the acquired permits. null if failed to acquire in the time.
+     */
+    public Permit acquire(String type, String key, int maxPerType, int maxPerProvider, long timeout)
+    {
+        long deadline = System.currentTimeMillis() + timeout;
+        Permit permit = new Permit();
+        try
+        {
+            // acquire the narrower one first,
+            // not to block other providers of the type
+            // while waiting for the same provider.
+            if(maxPerProvider > 0
+                    && !tryAcquire(permit, getSemaphore(providerLimits, key, maxPerProvider), deadline))
+            {
+                permit.release();
+                return null;
+            }
+            if(maxPerType > 0
+                    && !tryAcquire(permit, getSemaphore(typeLimits, type, maxPerType), deadline))
+            {
+                permit.release();
+                return null;
+            }
+        }
+        catch(InterruptedException e)
+        {
+            permit.release();
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return permit;
+    }
+    
+    private static boolean tryAcquire(Permit permit, Semaphore semaphore, long deadline)
+        throws InterruptedException
+    {
+        long wait = Math.max(0, deadline - System.currentTimeMillis());
+        if(!semaphore.tryAcquire(wait, TimeUnit.MILLISECONDS))
+        {
+            return false;
+        }
+        permit.semaphoreList.add(semaphore);
+        return true;
+    }
+}
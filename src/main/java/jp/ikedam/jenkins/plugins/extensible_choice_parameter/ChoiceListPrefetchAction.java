@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Action;
+import hudson.model.AbstractProject;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.TransientProjectActionFactory;
+import jenkins.model.Jenkins;
+
+/**
+ * Starts retrieving choices of a job when the job page is shown,
+ * as users usually go to the build page from there.
+ * 
+ * Added to jobs with Extensible Choice parameters,
+ * and works only when enabled in the System Configuration page.
+ * Not shown in the side panel.
+ * 
+ * @see ChoiceListPrefetcher
+ */
+public class ChoiceListPrefetchAction implements Action
+{
+    /**
+     * Adds {@link ChoiceListPrefetchAction} to jobs with Extensible Choice parameters.
+     */
+    @Extension
+    public static class FactoryImpl extends TransientProjectActionFactory
+    {
+        @SuppressWarnings("rawtypes") // declared with the raw type in TransientProjectActionFactory
+        @Override
+        public Collection<? extends Action> createFor(AbstractProject target)
+        {
+            AbstractProject<?,?> job = target;
+            ParametersDefinitionProperty pp = job.getProperty(ParametersDefinitionProperty.class);
+            if(pp == null
+                    || !Util.filter(pp.getParameterDefinitions(), ExtensibleChoiceParameterDefinition.class).iterator().hasNext())
+            {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new ChoiceListPrefetchAction(job));
+        }
+    }
+    
+    private final AbstractProject<?,?> project;
+    
+    /**
+     * @param project the job.
+     */
+    public ChoiceListPrefetchAction(AbstractProject<?,?> project)
+    {
+        this.project = project;
+    }
+    
+    /**
+     * @return the job.
+     */
+    public AbstractProject<?,?> getProject()
+    {
+        return project;
+    }
+    
+    /**
+     * @return null not to be shown in the side panel.
+     * @see hudson.model.Action#getIconFileName()
+     */
+    @Override
+    public String getIconFileName()
+    {
+        return null;
+    }
+    
+    /**
+     * @return null not to be shown in the side panel.
+     * @see hudson.model.Action#getDisplayName()
+     */
+    @Override
+    public String getDisplayName()
+    {
+        return null;
+    }
+    
+    /**
+     * @return null not to be accessed with URLs.
+     * @see hudson.model.Action#getUrlName()
+     */
+    @Override
+    public String getUrlName()
+    {
+        return null;
+    }
+    
+    /**
+     * Start retrieving choices of the job in background, if enabled.
+     * 
+     * Called from jobMain.jelly, and returns without waiting for choices.
+     */
+    public void prefetch()
+    {
+        Jenkins jenkins = Jenkins.getInstance();
+        ExtensibleChoiceParameterDefinition.DescriptorImpl descriptor = (jenkins != null)
+                ?jenkins.getDescriptorByType(ExtensibleChoiceParameterDefinition.DescriptorImpl.class)
+                :null;
+        if(descriptor == null || !descriptor.isPrefetchEnabled())
+        {
+            return;
+        }
+        ChoiceListPrefetcher.getInstance().prefetch(project);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Computer;
+import hudson.model.ParametersDefinitionProperty;
+
+/**
+ * Starts retrieving choices of a job in background before they are needed
+ * (e.g. when the job page is shown), so that the build page is shown with cached choices.
+ * 
+ * Only choices to be cached are retrieved.
+ * Retrievals are started at most once in {@link #MIN_INTERVAL} milliseconds for each job,
+ * and choices already being retrieved are not retrieved again
+ * (see {@link ChoiceListCache#getSnapshotAsync(ChoiceListProvider, java.util.concurrent.ExecutorService)}).
+ */
+public class ChoiceListPrefetcher
+{
+    /**
+     * Minimum interval to start retrievals for a job, in milliseconds.
+     */
+    public static final long MIN_INTERVAL = 60 * 1000L;
+    
+    /**
+     * Maximum number of jobs to track.
+     * The least recently used one is dropped when exceeded.
+     */
+    public static final int MAX_JOBS = 1024;
+    
+    private static final ChoiceListPrefetcher INSTANCE = new ChoiceListPrefetcher();
+    
+    /**
+     * @return the instance shared in Jenkins.
+     */
+    public static ChoiceListPrefetcher getInstance()
+    {
+        return INSTANCE;
+    }
+    
+    private final Map<String, Long> lastStarted = new LinkedHashMap<String, Long>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+        {
+            return size() > MAX_JOBS;
+        }
+    };
+    
+    /**
+     * Record that retrievals for a job start, if allowed.
+     * 
+     * @param job the full name of the job.
+     * @param now the current time in milliseconds.
+     * @return false if retrievals for the job were started in {@link #MIN_INTERVAL}.
+     */
+    public boolean tryStart(String job, long now)
+    {
+        synchronized(lastStarted)
+        {
+            Long last = lastStarted.get(job);
+            if(last != null && now < last + MIN_INTERVAL)
+            {
+                return false;
+            }
+            lastStarted.put(job, now);
+            return true;
+        }
+    }
+    
+    /**
+     * Returns providers of Extensible Choice parameters of a job whose choices are cached.
+     * 
+     * @param project
+     * @return the list of providers. never null.
+     */
+    protected List<ChoiceListProvider> getCachedProviderList(AbstractProject<?,?> project)
+    {
+        List<ChoiceListProvider> providerList = new ArrayList<ChoiceListProvider>();
+        ParametersDefinitionProperty pp = project.getProperty(ParametersDefinitionProperty.class);
+        if(pp == null)
+        {
+            return providerList;
+        }
+        ChoiceListCache cache = ChoiceListCache.getInstance();
+        for(ExtensibleChoiceParameterDefinition def:
+                Util.filter(pp.getParameterDefinitions(), ExtensibleChoiceParameterDefinition.class))
+        {
+            if(cache.isCached(def.getChoiceListProvider()))
+            {
+                providerList.add(def.getChoiceListProvider());
+            }
+        }
+        return providerList;
+    }
+    
+    /**
+     * Start retrieving choices of a job in background.
+     * 
+     * Choices cached and not expired are not retrieved.
+     * 
+     * @param project the job.
+     * @return the number of providers checked. 0 if not allowed now.
+     */
+    public int prefetch(AbstractProject<?,?> project)
+    {
+        List<ChoiceListProvider> providerList = getCachedProviderList(project);
+        if(providerList.isEmpty() || !tryStart(project.getFullName(), System.currentTimeMillis()))
+        {
+            return 0;
+        }
+        ChoiceListCache cache = ChoiceListCache.getInstance();
+        for(ChoiceListProvider provider: providerList)
+        {
+            try
+            {
+                cache.getSnapshotAsync(provider, Computer.threadPoolForRemoting);
+            }
+            catch(RejectedExecutionException e)
+            {
+                // retrieved when referred instead.
+                break;
+            }
+        }
+        return providerList.size();
+    }
+}
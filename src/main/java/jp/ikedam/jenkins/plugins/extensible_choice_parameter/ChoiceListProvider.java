@@ -24,6 +24,10 @@
 package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
 
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import hudson.ExtensionPoint;
 import hudson.DescriptorExtensionList;
 import hudson.model.Hudson;
@@ -52,6 +56,64 @@ abstract public class ChoiceListProvider extends AbstractDescribableImpl<ChoiceL
      */
     abstract public List<String> getChoiceList();
     
+    /**
+     * Returns the choices, reporting failures with exceptions.
+     * 
+     * Used when choices are cached, to tell failures from empty choices.
+     * Providers that can fail should override this
+     * and throw an exception instead of returning a fallback value.
+     * 
+     * Default implementation calls {@link #getChoiceList()}.
+     * 
+     * @return the choices list.
+     * @throws Exception failed to retrieve choices.
+     */
+    public List<String> fetchChoiceList() throws Exception
+    {
+        return getChoiceList();
+    }
+    
+    /**
+     * Starts retrieving the choices, and returns without waiting for them.
+     * 
+     * Used to retrieve choices of parameters of a job at the same time.
+     * Providers that can retrieve choices without occupying a thread
+     * (e.g. with asynchronous I/O) can override this.
+     * 
+     * Default implementation calls {@link #getChoiceList()} in the executor.
+     * 
+     * @param executor the executor to retrieve choices in.
+     * @return the choices list, available when retrieved.
+     */
+    public Future<List<String>> getChoiceListAsync(ExecutorService executor)
+    {
+        return executor.submit(new Callable<List<String>>()
+        {
+            @Override
+            public List<String> call() throws Exception
+            {
+                return getChoiceList();
+            }
+        });
+    }
+    
+    /**
+     * Returns the choices with values derived from them (e.g. the fingerprint).
+     * 
+     * Used when choices are not cached.
+     * Providers holding choices in memory can override this
+     * to return the same snapshot while the choices are not changed,
+     * so that the fingerprint and indexes are calculated only once.
+     * 
+     * Default implementation creates a new snapshot with {@link #getChoiceList()}.
+     * 
+     * @return the snapshot of the choices. never null.
+     */
+    public ChoiceListSnapshot getChoiceListSnapshot()
+    {
+        return new ChoiceListSnapshot(getChoiceList());
+    }
+    
     /**
      * Returns the default choice value.
      * 
@@ -64,6 +126,23 @@ abstract public class ChoiceListProvider extends AbstractDescribableImpl<ChoiceL
         return null;
     }
     
+    /**
+     * Returns a key to cache the choices.
+     * 
+     * Providers whose choices are expensive to retrieve (e.g. running scripts, scanning files)
+     * can override this to have their choices cached.
+     * The key must be determined by the configuration of the provider,
+     * and providers with the same key must return the same choices.
+     * 
+     * Default implementation returns null, which means the choices are never cached.
+     * 
+     * @return the key to cache the choices. null not to cache.
+     */
+    public String getCacheKey()
+    {
+        return null;
+    }
+    
     /**
      * Called when a build is triggered
      * 
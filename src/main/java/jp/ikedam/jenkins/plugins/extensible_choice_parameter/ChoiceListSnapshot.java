@@ -0,0 +1,359 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListFingerprint;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListPrefixIndex;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListTrigramIndex;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.FrontCodedStringList;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.MappedStringList;
+
+/**
+ * A list of choices returned from a {@link ChoiceListProvider} at a point of time.
+ * 
+ * The list is copied when created, unless it is known to be never modified,
+ * so values derived from the list (like the fingerprint)
+ * are calculated only once and shared,
+ * and are not affected by providers modifying their lists later.
+ */
+public class ChoiceListSnapshot
+{
+    private static final Logger LOGGER = Logger.getLogger(ChoiceListSnapshot.class.getName());
+    
+    private final List<String> choiceList;
+    private final boolean compact;
+    private final long createdAt;
+    private volatile ChoiceListFingerprint fingerprint = null;
+    private final FutureTask<ChoiceListPrefixIndex> prefixIndex = new FutureTask<ChoiceListPrefixIndex>(
+            new Callable<ChoiceListPrefixIndex>()
+            {
+                @Override
+                public ChoiceListPrefixIndex call()
+                {
+                    return createPrefixIndex();
+                }
+            }
+    );
+    private final FutureTask<ChoiceListTrigramIndex> trigramIndex = new FutureTask<ChoiceListTrigramIndex>(
+            new Callable<ChoiceListTrigramIndex>()
+            {
+                @Override
+                public ChoiceListTrigramIndex call()
+                {
+                    return createTrigramIndex();
+                }
+            }
+    );
+    private volatile Set<String> choiceSet = null;
+    
+    /**
+     * Constructor.
+     * 
+     * @param choiceList the list of choices. null is treated as an empty list.
+     */
+    public ChoiceListSnapshot(List<String> choiceList)
+    {
+        this(choiceList, System.currentTimeMillis());
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param choiceList the list of choices. null is treated as an empty list.
+     * @param createdAt the time the list is retrieved, in milliseconds.
+     */
+    public ChoiceListSnapshot(List<String> choiceList, long createdAt)
+    {
+        this(choiceList, createdAt, null);
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * Used when the fingerprint is already known,
+     * not to read all choices again.
+     * 
+     * @param choiceList the list of choices. null is treated as an empty list.
+     * @param createdAt the time the list is retrieved, in milliseconds.
+     * @param fingerprint the fingerprint of the list. null to calculate when needed.
+     */
+    public ChoiceListSnapshot(List<String> choiceList, long createdAt, ChoiceListFingerprint fingerprint)
+    {
+        this(choiceList, createdAt, fingerprint, false);
+    }
+    
+    private ChoiceListSnapshot(List<String> choiceList, long createdAt, ChoiceListFingerprint fingerprint, boolean unmodifiable)
+    {
+        this.compact = (choiceList instanceof FrontCodedStringList || choiceList instanceof MappedStringList);
+        if(choiceList == null)
+        {
+            this.choiceList = Collections.emptyList();
+        }
+        else if(compact)
+        {
+            // lists in the compact form or in mapped files are not modifiable.
+            this.choiceList = choiceList;
+        }
+        else
+        {
+            this.choiceList = Collections.unmodifiableList(
+                    unmodifiable?choiceList:new ArrayList<String>(choiceList)
+            );
+        }
+        this.createdAt = createdAt;
+        this.fingerprint = fingerprint;
+    }
+    
+    /**
+     * Create a snapshot of a list never modified, without copying it.
+     * 
+     * Used for lists shared with {@link jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListInterner}.
+     * 
+     * @param choiceList the list of choices. must not be modified. null is treated as an empty list.
+     * @return the snapshot of the list.
+     */
+    public static ChoiceListSnapshot fromUnmodifiableList(List<String> choiceList)
+    {
+        return new ChoiceListSnapshot(choiceList, System.currentTimeMillis(), null, true);
+    }
+    
+    /**
+     * @return the list of choices. never null, and not modifiable.
+     */
+    public List<String> getChoiceList()
+    {
+        return choiceList;
+    }
+    
+    /**
+     * @return the time this snapshot is created, in milliseconds.
+     */
+    public long getCreatedAt()
+    {
+        return createdAt;
+    }
+    
+    /**
+     * Returns the fingerprint of the contents.
+     * 
+     * Calculated at the first call.
+     * 
+     * @return the fingerprint of the list of choices.
+     */
+    public ChoiceListFingerprint getFingerprint()
+    {
+        ChoiceListFingerprint f = fingerprint;
+        if(f == null)
+        {
+            // calculated multiple times in a race, but the results are same.
+            f = ChoiceListFingerprint.fromStringList(choiceList);
+            fingerprint = f;
+        }
+        return f;
+    }
+    
+    /**
+     * Returns the index to search choices by prefixes.
+     * 
+     * Built at the first call, unless started with {@link #prepareSearch(boolean, Executor)}.
+     * The index of choices in a mapped file is stored in a file next to it.
+     * 
+     * @return the index of the list of choices.
+     */
+    public ChoiceListPrefixIndex getPrefixIndex()
+    {
+        return getIndex(prefixIndex);
+    }
+    
+    private ChoiceListPrefixIndex createPrefixIndex()
+    {
+        if(choiceList instanceof MappedStringList)
+        {
+            try
+            {
+                return ChoiceListPrefixIndex.open((MappedStringList)choiceList);
+            }
+            catch(IOException e)
+            {
+                LOGGER.log(Level.WARNING, "Failed to store the index of choices. Built in memory instead.", e);
+            }
+        }
+        return new ChoiceListPrefixIndex(choiceList);
+    }
+    
+    /**
+     * Returns the index to search choices by substrings.
+     * 
+     * Built at the first call, unless started with {@link #prepareSearch(boolean, Executor)}.
+     * The index of choices in a mapped file is stored in a file next to it.
+     * 
+     * @return the index of the list of choices.
+     */
+    public ChoiceListTrigramIndex getTrigramIndex()
+    {
+        return getIndex(trigramIndex);
+    }
+    
+    /**
+     * Start building the index to search choices in background,
+     * so that the first search does not build it.
+     * 
+     * Searches wait for the index being built instead of building another one.
+     * 
+     * @param fuzzy true for {@link #getTrigramIndex()}, false for {@link #getPrefixIndex()}.
+     * @param executor the executor to build the index.
+     *        built at the first search if the executor rejects it.
+     */
+    public void prepareSearch(boolean fuzzy, Executor executor)
+    {
+        FutureTask<?> task = fuzzy?trigramIndex:prefixIndex;
+        if(task.isDone())
+        {
+            return;
+        }
+        try
+        {
+            // does nothing if already started.
+            executor.execute(task);
+        }
+        catch(RejectedExecutionException e)
+        {
+            LOGGER.log(Level.FINE, "Failed to build the index of choices in background", e);
+        }
+    }
+    
+    /**
+     * Build the index in this thread, or wait for the one being built.
+     * 
+     * @param task
+     * @return the index.
+     */
+    private static <T> T getIndex(FutureTask<T> task)
+    {
+        // does nothing if already started.
+        task.run();
+        boolean interrupted = false;
+        try
+        {
+            while(true)
+            {
+                try
+                {
+                    return task.get();
+                }
+                catch(InterruptedException e)
+                {
+                    // the index is built anyway.
+                    interrupted = true;
+                }
+            }
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException)e.getCause();
+            }
+            if(e.getCause() instanceof Error)
+            {
+                throw (Error)e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        finally
+        {
+            if(interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private ChoiceListTrigramIndex createTrigramIndex()
+    {
+        if(choiceList instanceof MappedStringList)
+        {
+            try
+            {
+                return ChoiceListTrigramIndex.open((MappedStringList)choiceList);
+            }
+            catch(IOException e)
+            {
+                LOGGER.log(Level.WARNING, "Failed to store the index of choices. Built in memory instead.", e);
+            }
+        }
+        return new ChoiceListTrigramIndex(choiceList);
+    }
+    
+    /**
+     * Returns whether a value is one of the choices.
+     * 
+     * Uses a hash set built at the first call.
+     * Lists in the compact form or in mapped files are scanned instead,
+     * not to hold all choices as strings.
+     * 
+     * @param value the value to test.
+     * @return true if the value is in the list of choices.
+     */
+    public boolean contains(String value)
+    {
+        if(compact)
+        {
+            return choiceList.contains(value);
+        }
+        Set<String> set = choiceSet;
+        if(set == null)
+        {
+            // built multiple times in a race, but the results are same.
+            set = Collections.unmodifiableSet(new HashSet<String>(choiceList));
+            choiceSet = set;
+        }
+        return set.contains(value);
+    }
+    
+    /**
+     * Returns whether the contents are same to another snapshot.
+     * 
+     * @param snapshot a snapshot to compare. may be null.
+     * @return true if the contents are same.
+     */
+    public boolean hasSameContents(ChoiceListSnapshot snapshot)
+    {
+        return snapshot != null && getFingerprint().equals(snapshot.getFingerprint());
+    }
+}
@@ -23,22 +23,55 @@
  */
 package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
 
 import hudson.Extension;
 import hudson.DescriptorExtensionList;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Api;
+import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.ParameterValue;
+import hudson.model.ParametersDefinitionProperty;
 import hudson.model.StringParameterValue;
 import hudson.model.SimpleParameterDefinition;
 import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListFingerprint;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListInterner;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListPrefixIndex;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListTrigramIndex;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 
 /**
@@ -49,108 +82,1432 @@ public class ExtensibleChoiceParameterDefinition extends SimpleParameterDefiniti
 {
     private static final long serialVersionUID = 1L;
     
-    private static final Pattern namePattern = Pattern.compile("[A-Za-z_][A-Za-z_0-9]*");
+    private static final Logger LOGGER = Logger.getLogger(ExtensibleChoiceParameterDefinition.class.getName());
+    
+    private static final Pattern namePattern = Pattern.compile("[A-Za-z_][A-Za-z_0-9]*");
+    
+    /**
+     * Maximum number of choices returned at once from {@link #doChoices(StaplerRequest, StaplerResponse, String, String)}.
+     */
+    public static final int MAX_CHOICES_PAGE_SIZE = 1000;
+    
+    /**
+     * Number of choices returned from {@link #doSearch(StaplerRequest, StaplerResponse, String, String, String)}
+     * when not specified.
+     */
+    public static final int DEFAULT_SEARCH_RESULTS = 20;
+    
+    /**
+     * The value of mode for {@link #doSearch(StaplerRequest, StaplerResponse, String, String, String)}
+     * to search choices by substrings.
+     */
+    public static final String SEARCH_MODE_FUZZY = "fuzzy";
+    
+    /**
+     * JSON responses shorter than this (in characters) are not compressed,
+     * as compression does not make them much smaller.
+     */
+    public static final int MIN_COMPRESSED_SIZE = 1024;
+    
+    /**
+     * Time for {@link ExtensibleChoiceRootAction#doWatch(StaplerRequest, StaplerResponse)} to wait for changes, in seconds.
+     * 
+     * Shorter than usual timeouts of proxies.
+     */
+    public static final long WATCH_TIMEOUT = 25;
+    
+    /**
+     * The name of the attribute of requests to hold choices retrieved in the request.
+     */
+    private static final String SNAPSHOTS_ATTRIBUTE = ExtensibleChoiceParameterDefinition.class.getName() + ".snapshots";
+    
+    /**
+     * The name of the attribute of requests to hold choices being retrieved in background.
+     */
+    private static final String FUTURES_ATTRIBUTE = ExtensibleChoiceParameterDefinition.class.getName() + ".futures";
+    
+    /**
+     * The name of the attribute of requests to hold providers whose choices are not waited for.
+     */
+    private static final String DEFERRED_ATTRIBUTE = ExtensibleChoiceParameterDefinition.class.getName() + ".deferred";
+    
+    /**
+     * The name of the attribute of requests to hold the time to stop waiting for choices.
+     */
+    private static final String DEADLINE_ATTRIBUTE = ExtensibleChoiceParameterDefinition.class.getName() + ".deadline";
+    
+    /**
+     * Matches the tree parameter of the remote API naming choices.
+     */
+    private static final Pattern EXPORTED_CHOICES_PATTERN = Pattern.compile("(^|[\\[,])\\s*choices\\s*($|[\\[\\],{])");
+    
+    /**
+     * Returns a regular expression pattern for the acceptable parameter names.
+     * 
+     * Strangely, Jenkins has no limitation for the name of parameters.
+     * But in many cases, it is good to be limited to the symbol name in C.
+     * 
+     * @return A regular expression pattern for the acceptable variable names.
+     */
+    public static Pattern getNamePattern()
+    {
+        return namePattern;
+    }
+    
+    /**
+     * The internal class to work with views.
+     * 
+     * The following files are used (put in main/resource directory in the source tree).
+     * <dl>
+     *     <dt>config.jelly</dt>
+     *         <dd>shown as a part of a job configuration page.</dd>
+     *     <dt>index.jelly</dt>
+     *         <dd>shown when a user launches a build, and specifies parameters of the build.</dd>
+     *     <dt>global.jelly</dt>
+     *         <dd>shown as a part of the System Configuration page.</dd>
+     *     </dt>
+     * </dl>
+     */
+    @Extension
+    public static class DescriptorImpl extends ParameterDescriptor
+    {
+        /**
+         * Restore from the global configuration
+         */
+        public DescriptorImpl()
+        {
+            load();
+        }
+        
+        private boolean cacheEnabled = false;
+        
+        /**
+         * Returns whether to cache choices of providers that support caching.
+         * 
+         * @return whether to cache choices.
+         */
+        public boolean isCacheEnabled()
+        {
+            return cacheEnabled;
+        }
+        
+        /**
+         * @param cacheEnabled whether to cache choices.
+         */
+        public void setCacheEnabled(boolean cacheEnabled)
+        {
+            this.cacheEnabled = cacheEnabled;
+        }
+        
+        private long minCacheTtl = 10;
+        
+        /**
+         * Returns the time to live of cached choices that change every time.
+         * 
+         * @return the minimum time to live in seconds.
+         */
+        public long getMinCacheTtl()
+        {
+            return minCacheTtl;
+        }
+        
+        /**
+         * @param minCacheTtl the minimum time to live in seconds.
+         */
+        public void setMinCacheTtl(long minCacheTtl)
+        {
+            this.minCacheTtl = Math.max(0, minCacheTtl);
+        }
+        
+        private long maxCacheTtl = 3600;
+        
+        /**
+         * Returns the time to live of cached choices that never change.
+         * 
+         * @return the maximum time to live in seconds.
+         */
+        public long getMaxCacheTtl()
+        {
+            return maxCacheTtl;
+        }
+        
+        /**
+         * @param maxCacheTtl the maximum time to live in seconds.
+         */
+        public void setMaxCacheTtl(long maxCacheTtl)
+        {
+            this.maxCacheTtl = Math.max(0, maxCacheTtl);
+        }
+        
+        private int circuitBreakerThreshold = 0;
+        
+        /**
+         * Returns the number of failures in a row to stop calling a provider.
+         * 
+         * @return the number of failures. 0 for disabling the circuit breaker.
+         */
+        public int getCircuitBreakerThreshold()
+        {
+            return circuitBreakerThreshold;
+        }
+        
+        /**
+         * @param circuitBreakerThreshold the number of failures. 0 for disabling the circuit breaker.
+         */
+        public void setCircuitBreakerThreshold(int circuitBreakerThreshold)
+        {
+            this.circuitBreakerThreshold = Math.max(0, circuitBreakerThreshold);
+        }
+        
+        /**
+         * @return whether to stop calling failing providers.
+         */
+        public boolean isCircuitBreakerEnabled()
+        {
+            return getCircuitBreakerThreshold() > 0;
+        }
+        
+        private long circuitBreakerCoolDown = 60;
+        
+        /**
+         * Returns the time not to call a failing provider.
+         * 
+         * @return the time in seconds.
+         */
+        public long getCircuitBreakerCoolDown()
+        {
+            return circuitBreakerCoolDown;
+        }
+        
+        /**
+         * @param circuitBreakerCoolDown the time in seconds.
+         */
+        public void setCircuitBreakerCoolDown(long circuitBreakerCoolDown)
+        {
+            this.circuitBreakerCoolDown = Math.max(0, circuitBreakerCoolDown);
+        }
+        
+        private int maxEvaluationsPerType = 0;
+        
+        /**
+         * Returns the number of evaluations of providers of a same type allowed to run at the same time.
+         * 
+         * @return the number of evaluations. 0 for unlimited.
+         */
+        public int getMaxEvaluationsPerType()
+        {
+            return maxEvaluationsPerType;
+        }
+        
+        /**
+         * @param maxEvaluationsPerType the number of evaluations. 0 for unlimited.
+         */
+        public void setMaxEvaluationsPerType(int maxEvaluationsPerType)
+        {
+            this.maxEvaluationsPerType = Math.max(0, maxEvaluationsPerType);
+        }
+        
+        private int maxEvaluationsPerProvider = 0;
+        
+        /**
+         * Returns the number of evaluations of a provider allowed to run at the same time.
+         * 
+         * @return the number of evaluations. 0 for unlimited.
+         */
+        public int getMaxEvaluationsPerProvider()
+        {
+            return maxEvaluationsPerProvider;
+        }
+        
+        /**
+         * @param maxEvaluationsPerProvider the number of evaluations. 0 for unlimited.
+         */
+        public void setMaxEvaluationsPerProvider(int maxEvaluationsPerProvider)
+        {
+            this.maxEvaluationsPerProvider = Math.max(0, maxEvaluationsPerProvider);
+        }
+        
+        /**
+         * @return whether the number of evaluations running at the same time is limited.
+         */
+        public boolean isEvaluationLimited()
+        {
+            return getMaxEvaluationsPerType() > 0 || getMaxEvaluationsPerProvider() > 0;
+        }
+        
+        private long evaluationQueueTimeout = 10;
+        
+        /**
+         * Returns the time to wait for other evaluations to finish
+         * before falling back to cached choices.
+         * 
+         * @return the time in seconds.
+         */
+        public long getEvaluationQueueTimeout()
+        {
+            return evaluationQueueTimeout;
+        }
+        
+        /**
+         * @param evaluationQueueTimeout the time in seconds.
+         */
+        public void setEvaluationQueueTimeout(long evaluationQueueTimeout)
+        {
+            this.evaluationQueueTimeout = Math.max(0, evaluationQueueTimeout);
+        }
+        
+        private int choicesPageSize = 0;
+        
+        /**
+         * Returns the number of choices loaded at once in the build page.
+         * 
+         * When this is positive, choices are not embedded in the build page,
+         * and loaded page by page when the user opens the dropdown.
+         * 
+         * @return the number of choices. 0 for embedding all choices in the page.
+         */
+        public int getChoicesPageSize()
+        {
+            return choicesPageSize;
+        }
+        
+        /**
+         * @param choicesPageSize the number of choices. 0 for embedding all choices in the page.
+         */
+        public void setChoicesPageSize(int choicesPageSize)
+        {
+            this.choicesPageSize = Math.min(MAX_CHOICES_PAGE_SIZE, Math.max(0, choicesPageSize));
+        }
+        
+        private boolean fuzzySearchEnabled = false;
+        
+        /**
+         * Returns whether to search choices by substrings
+         * for the value the user is typing.
+         * 
+         * Choices are searched by prefixes if false.
+         * 
+         * @return whether to search choices by substrings.
+         */
+        public boolean isFuzzySearchEnabled()
+        {
+            return fuzzySearchEnabled;
+        }
+        
+        /**
+         * @param fuzzySearchEnabled whether to search choices by substrings.
+         */
+        public void setFuzzySearchEnabled(boolean fuzzySearchEnabled)
+        {
+            this.fuzzySearchEnabled = fuzzySearchEnabled;
+        }
+        
+        private boolean watchEnabled = false;
+        
+        /**
+         * Returns whether build pages watch changes of choices.
+         * 
+         * Works only when choices are loaded page by page.
+         * Each build page keeps a request to the server waiting for changes.
+         * 
+         * @return whether build pages watch changes of choices.
+         */
+        public boolean isWatchEnabled()
+        {
+            return watchEnabled;
+        }
+        
+        /**
+         * @param watchEnabled whether build pages watch changes of choices.
+         */
+        public void setWatchEnabled(boolean watchEnabled)
+        {
+            this.watchEnabled = watchEnabled;
+        }
+        
+        private long renderBudget = 0;
+        
+        /**
+         * Returns the time to wait for choices when showing the build page.
+         * 
+         * Shared among all Extensible Choice parameters in the page.
+         * When it runs out, parameters whose choices are not retrieved yet
+         * are shown with cached choices, or load choices after the page is shown.
+         * 
+         * @return the time in milliseconds. 0 for waiting for all choices.
+         */
+        public long getRenderBudget()
+        {
+            return renderBudget;
+        }
+        
+        /**
+         * @param renderBudget the time in milliseconds. 0 for waiting for all choices.
+         */
+        public void setRenderBudget(long renderBudget)
+        {
+            this.renderBudget = Math.max(0, renderBudget);
+        }
+        
+        private boolean prefetchEnabled = false;
+        
+        /**
+         * Returns whether to start retrieving choices of a job when the job page is shown.
+         * 
+         * Works only when choices are cached.
+         * 
+         * @return whether to retrieve choices when job pages are shown.
+         * @see ChoiceListPrefetchAction
+         */
+        public boolean isPrefetchEnabled()
+        {
+            return prefetchEnabled;
+        }
+        
+        /**
+         * @param prefetchEnabled whether to retrieve choices when job pages are shown.
+         */
+        public void setPrefetchEnabled(boolean prefetchEnabled)
+        {
+            this.prefetchEnabled = prefetchEnabled;
+        }
+        
+        private int compactListThreshold = 0;
+        
+        /**
+         * Returns the number of choices to store lists in the compact form.
+         * 
+         * Applies to lists written in job configurations or the global configuration
+         * (Textarea Choice Parameter and Global Choice Parameter),
+         * when they are loaded or saved.
+         * 
+         * @return the number of choices. 0 not to compact lists.
+         * @see jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.FrontCodedStringList
+         */
+        public int getCompactListThreshold()
+        {
+            return compactListThreshold;
+        }
+        
+        /**
+         * @param compactListThreshold the number of choices. 0 not to compact lists.
+         */
+        public void setCompactListThreshold(int compactListThreshold)
+        {
+            this.compactListThreshold = Math.max(0, compactListThreshold);
+        }
+        
+        private int mappedListThreshold = 0;
+        
+        /**
+         * Returns the number of choices to store lists in memory-mapped files.
+         * 
+         * Applies to choices retrieved from providers
+         * managed with the cache, the circuit breaker or the limits of evaluations.
+         * 
+         * @return the number of choices. 0 not to store lists in files.
+         * @see MappedChoiceListStore
+         */
+        public int getMappedListThreshold()
+        {
+            return mappedListThreshold;
+        }
+        
+        /**
+         * @param mappedListThreshold the number of choices. 0 not to store lists in files.
+         */
+        public void setMappedListThreshold(int mappedListThreshold)
+        {
+            this.mappedListThreshold = Math.max(0, mappedListThreshold);
+        }
+        
+        /**
+         * Store the parameters specified in the System Configuration page.
+         * 
+         * @param req
+         * @param formData
+         * @return whether succeeded to store.
+         * @throws FormException
+         * @see hudson.model.Descriptor#configure(org.kohsuke.stapler.StaplerRequest, net.sf.json.JSONObject)
+         */
+        @Override
+        public boolean configure(StaplerRequest req, JSONObject formData) throws FormException
+        {
+            setCacheEnabled(formData.optBoolean("cacheEnabled", false));
+            setMinCacheTtl(formData.optLong("minCacheTtl", getMinCacheTtl()));
+            setMaxCacheTtl(formData.optLong("maxCacheTtl", getMaxCacheTtl()));
+            setCircuitBreakerThreshold(formData.optInt("circuitBreakerThreshold", getCircuitBreakerThreshold()));
+            setCircuitBreakerCoolDown(formData.optLong("circuitBreakerCoolDown", getCircuitBreakerCoolDown()));
+            setMaxEvaluationsPerType(formData.optInt("maxEvaluationsPerType", getMaxEvaluationsPerType()));
+            setMaxEvaluationsPerProvider(formData.optInt("maxEvaluationsPerProvider", getMaxEvaluationsPerProvider()));
+            setEvaluationQueueTimeout(formData.optLong("evaluationQueueTimeout", getEvaluationQueueTimeout()));
+            setChoicesPageSize(formData.optInt("choicesPageSize", getChoicesPageSize()));
+            setFuzzySearchEnabled(formData.optBoolean("fuzzySearchEnabled", false));
+            setWatchEnabled(formData.optBoolean("watchEnabled", false));
+            setRenderBudget(formData.optLong("renderBudget", getRenderBudget()));
+            setPrefetchEnabled(formData.optBoolean("prefetchEnabled", false));
+            setCompactListThreshold(formData.optInt("compactListThreshold", getCompactListThreshold()));
+            setMappedListThreshold(formData.optInt("mappedListThreshold", getMappedListThreshold()));
+            if(!isCacheEnabled() && !isCircuitBreakerEnabled() && !isEvaluationLimited())
+            {
+                ChoiceListCache.getInstance().clear();
+            }
+            
+            save();
+            
+            return super.configure(req, formData);
+        }
+        
+        /**
+         * Returns the string to be shown in a job configuration page, in the dropdown of &quot;Add Parameter&quot;.
+         * 
+         * @return a name of this parameter type.
+         * @see hudson.model.ParameterDefinition.ParameterDescriptor#getDisplayName()
+         */
+        @Override
+        public String getDisplayName()
+        {
+            return Messages._ExtensibleChoiceParameterDefinition_DisplayName().toString();
+        }
+        
+        /**
+         * Returns all the available methods to provide choices.
+         * 
+         * Used for showing dropdown for users to select a choice provider.
+         * 
+         * @return DescriptorExtensionList of ChoiceListProvider subclasses.
+         */
+        public DescriptorExtensionList<ChoiceListProvider,Descriptor<ChoiceListProvider>> getChoiceListProviderList()
+        {
+            return ChoiceListProvider.all();
+        }
+        
+        public FormValidation doCheckName(@QueryParameter String name){
+            if(StringUtils.isBlank(name))
+            {
+                return FormValidation.error(Messages.ExtensibleChoiceParameterDefinition_Name_empty());
+            }
+            
+            if(!getNamePattern().matcher(name.trim()).matches()){
+                return FormValidation.error(Messages.ExtensibleChoiceParameterDefinition_Name_invalid());
+            }
+            
+            return FormValidation.ok();
+        }
+        
+        public FormValidation doCheckMinCacheTtl(@QueryParameter String minCacheTtl)
+        {
+            return FormValidation.validateNonNegativeInteger(minCacheTtl);
+        }
+        
+        public FormValidation doCheckCircuitBreakerThreshold(@QueryParameter String circuitBreakerThreshold)
+        {
+            return FormValidation.validateNonNegativeInteger(circuitBreakerThreshold);
+        }
+        
+        public FormValidation doCheckCircuitBreakerCoolDown(@QueryParameter String circuitBreakerCoolDown)
+        {
+            return FormValidation.validateNonNegativeInteger(circuitBreakerCoolDown);
+        }
+        
+        public FormValidation doCheckMaxEvaluationsPerType(@QueryParameter String maxEvaluationsPerType)
+        {
+            return FormValidation.validateNonNegativeInteger(maxEvaluationsPerType);
+        }
+        
+        public FormValidation doCheckMaxEvaluationsPerProvider(@QueryParameter String maxEvaluationsPerProvider)
+        {
+            return FormValidation.validateNonNegativeInteger(maxEvaluationsPerProvider);
+        }
+        
+        public FormValidation doCheckEvaluationQueueTimeout(@QueryParameter String evaluationQueueTimeout)
+        {
+            return FormValidation.validateNonNegativeInteger(evaluationQueueTimeout);
+        }
+        
+        public FormValidation doCheckRenderBudget(@QueryParameter String renderBudget)
+        {
+            return FormValidation.validateNonNegativeInteger(renderBudget);
+        }
+        
+        public FormValidation doCheckCompactListThreshold(@QueryParameter String compactListThreshold)
+        {
+            return FormValidation.validateNonNegativeInteger(compactListThreshold);
+        }
+        
+        public FormValidation doCheckMappedListThreshold(@QueryParameter String mappedListThreshold)
+        {
+            return FormValidation.validateNonNegativeInteger(mappedListThreshold);
+        }
+        
+        public FormValidation doCheckChoicesPageSize(@QueryParameter String choicesPageSize)
+        {
+            FormValidation v = FormValidation.validateNonNegativeInteger(choicesPageSize);
+            if(v.kind != FormValidation.Kind.OK)
+            {
+                return v;
+            }
+            if(Integer.parseInt(choicesPageSize.trim()) > MAX_CHOICES_PAGE_SIZE)
+            {
+                return FormValidation.error(Messages.ExtensibleChoiceParameterDefinition_ChoicesPageSize_tooLarge(MAX_CHOICES_PAGE_SIZE));
+            }
+            return FormValidation.ok();
+        }
+        
+        public FormValidation doCheckMaxCacheTtl(@QueryParameter String minCacheTtl, @QueryParameter String maxCacheTtl)
+        {
+            FormValidation v = FormValidation.validateNonNegativeInteger(maxCacheTtl);
+            if(v.kind != FormValidation.Kind.OK)
+            {
+                return v;
+            }
+            if(StringUtils.isNumeric(StringUtils.trim(minCacheTtl)) && !StringUtils.isBlank(minCacheTtl)
+                    && Long.parseLong(maxCacheTtl.trim()) < Long.parseLong(minCacheTtl.trim()))
+            {
+                return FormValidation.error(Messages.ExtensibleChoiceParameterDefinition_MaxCacheTtl_lessThanMin());
+            }
+            return FormValidation.ok();
+        }
+    }
+    
+    private boolean editable = false;
+    
+    /**
+     * Is this parameter value can be set to a value not in the choices?
+     * 
+     * @return whether this parameter is editable.
+     */
+    public boolean isEditable()
+    {
+        return editable;
+    }
+    
+    private ChoiceListProvider choiceListProvider = null;
+    
+    /**
+     * The choice provider the user specified.
+     * 
+     * @return choice provider.
+     */
+    public ChoiceListProvider getChoiceListProvider()
+    {
+        return choiceListProvider;
+    }
+    
+    /**
+     * Return choices for the remote API.
+     * 
+     * Not to run providers of all jobs when the remote API is crawled with depth,
+     * choices are retrieved only when specified with the tree parameter
+     * (e.g. api/json?tree=property[parameterDefinitions[name,choices]]).
+     * Otherwise, only cached choices are exported, even if they are expired.
+     * 
+     * @return list of choices. null if not retrieved yet.
+     */
+    @Exported(name="choices")
+    public List<String> getExportedChoiceList()
+    {
+        ChoiceListProvider provider = getChoiceListProvider();
+        if(provider == null)
+        {
+            return null;
+        }
+        if(isChoiceListRetrievable())
+        {
+            return getChoiceList();
+        }
+        ChoiceListSnapshot cached = ChoiceListCache.getInstance().getCachedSnapshot(provider);
+        return (cached != null)?cached.getChoiceList():null;
+    }
+    
+    /**
+     * Returns whether choices can be retrieved from the provider in the current request.
+     * 
+     * Requests to the remote API retrieve choices
+     * only when choices are specified with the tree parameter.
+     * 
+     * @return false when serving the remote API without choices specified.
+     * @see #getExportedChoiceList()
+     */
+    protected static boolean isChoiceListRetrievable()
+    {
+        StaplerRequest req = Stapler.getCurrentRequest();
+        if(req == null || req.findAncestorObject(Api.class) == null)
+        {
+            return true;
+        }
+        String tree = req.getParameter("tree");
+        return tree != null && EXPORTED_CHOICES_PATTERN.matcher(tree).find();
+    }
+    
+    /**
+     * Return choices available for this parameter.
+     * 
+     * @return list of choices. never null.
+     */
+    public List<String> getChoiceList()
+    {
+        return getChoiceListSnapshot().getChoiceList();
+    }
+    
+    /**
+     * Return choices available for this parameter with the fingerprint of them.
+     * 
+     * Choices are retrieved only once in a request to Jenkins,
+     * as rendering or submitting a page refers them several times
+     * (e.g. for the default value, for the list, and for validation).
+     * 
+     * When the build page is shown, choices of other Extensible Choice parameters
+     * of the job are retrieved in background at the same time,
+     * so that the page waits only as long as the slowest one.
+     * 
+     * @return the snapshot of choices. never null.
+     */
+    public ChoiceListSnapshot getChoiceListSnapshot()
+    {
+        ChoiceListProvider provider = getChoiceListProvider();
+        if(provider == null)
+        {
+            return new ChoiceListSnapshot(null);
+        }
+        StaplerRequest req = Stapler.getCurrentRequest();
+        if(req == null)
+        {
+            return ChoiceListCache.getInstance().getSnapshot(provider);
+        }
+        Map<ChoiceListProvider, ChoiceListSnapshot> snapshots = getMapInRequest(req, SNAPSHOTS_ATTRIBUTE);
+        ChoiceListSnapshot snapshot = snapshots.get(provider);
+        if(snapshot != null)
+        {
+            return snapshot;
+        }
+        Map<ChoiceListProvider, Future<ChoiceListSnapshot>> futures = getMapInRequest(req, FUTURES_ATTRIBUTE);
+        Future<ChoiceListSnapshot> future = futures.remove(provider);
+        if(future != null)
+        {
+            snapshot = waitForSnapshot(provider, future, ChoiceListCache.PENDING_TIMEOUT);
+        }
+        else
+        {
+            startRetrievingChoiceLists(req, snapshots, futures, provider);
+            snapshot = ChoiceListCache.getInstance().getSnapshot(provider);
+        }
+        snapshots.put(provider, snapshot);
+        return snapshot;
+    }
+    
+    /**
+     * Returns whether choices are loaded after the build page is shown.
+     * 
+     * Choices are waited for until the time configured with {@link DescriptorImpl#getRenderBudget()}
+     * runs out, counted from when the page starts to wait for the first one.
+     * After that, the cached choices are used if any.
+     * Otherwise, they keep being retrieved in background,
+     * and the page loads them after shown.
+     * 
+     * Only choices stored in {@link ChoiceListCache} are deferred.
+     * Others would be retrieved again when the page loads them,
+     * and the page waits for them instead.
+     * 
+     * @return true if choices are not available when showing the page.
+     */
+    public boolean isChoiceListDeferred()
+    {
+        ChoiceListProvider provider = getChoiceListProvider();
+        StaplerRequest req = Stapler.getCurrentRequest();
+        DescriptorImpl descriptor = (DescriptorImpl)getDescriptor();
+        if(provider == null || req == null || descriptor == null || descriptor.getRenderBudget() <= 0)
+        {
+            return false;
+        }
+        if(!ChoiceListCache.getInstance().isCached(provider))
+        {
+            return false;
+        }
+        Map<ChoiceListProvider, ChoiceListSnapshot> snapshots = getMapInRequest(req, SNAPSHOTS_ATTRIBUTE);
+        if(snapshots.containsKey(provider))
+        {
+            return false;
+        }
+        Map<ChoiceListProvider, Boolean> deferred = getMapInRequest(req, DEFERRED_ATTRIBUTE);
+        if(deferred.containsKey(provider))
+        {
+            return true;
+        }
+        Map<ChoiceListProvider, Future<ChoiceListSnapshot>> futures = getMapInRequest(req, FUTURES_ATTRIBUTE);
+        if(!futures.containsKey(provider))
+        {
+            // retrieve also this one in background, not to wait longer than the budget.
+            startRetrievingChoiceLists(req, snapshots, futures, null);
+        }
+        Future<ChoiceListSnapshot> future = futures.get(provider);
+        if(future == null)
+        {
+            // not in a page of a job.
+            return false;
+        }
+        
+        long now = System.currentTimeMillis();
+        Object deadline = req.getAttribute(DEADLINE_ATTRIBUTE);
+        if(!(deadline instanceof Long))
+        {
+            deadline = Long.valueOf(now + descriptor.getRenderBudget());
+            req.setAttribute(DEADLINE_ATTRIBUTE, deadline);
+        }
+        try
+        {
+            ChoiceListSnapshot snapshot = future.get(Math.max(0, (Long)deadline - now), TimeUnit.MILLISECONDS);
+            futures.remove(provider);
+            snapshots.put(provider, snapshot);
+            return false;
+        }
+        catch(ExecutionException e)
+        {
+            // reported when choices are referred.
+            return false;
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch(TimeoutException e)
+        {
+            ChoiceListSnapshot cached = ChoiceListCache.getInstance().getCachedSnapshot(provider);
+            if(cached != null)
+            {
+                futures.remove(provider);
+                snapshots.put(provider, cached);
+                return false;
+            }
+        }
+        deferred.put(provider, Boolean.TRUE);
+        return true;
+    }
+    
+    /**
+     * Returns a map stored in the current request, keyed by providers.
+     * 
+     * @param req the current request.
+     * @param name the name of the attribute.
+     * @return the map stored in the request.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Map<ChoiceListProvider, T> getMapInRequest(StaplerRequest req, String name)
+    {
+        Object map = req.getAttribute(name);
+        if(!(map instanceof Map))
+        {
+            map = new IdentityHashMap<ChoiceListProvider, T>();
+            req.setAttribute(name, map);
+        }
+        return (Map<ChoiceListProvider, T>)map;
+    }
+    
+    /**
+     * Starts retrieving choices of Extensible Choice parameters of the job in background.
+     * 
+     * Done only when showing a page of a job.
+     * Submitted values are usually validated with the choices shown,
+     * and choices of other parameters are not needed.
+     * 
+     * @param req the current request.
+     * @param snapshots choices already retrieved in the request.
+     * @param futures choices being retrieved in the request.
+     * @param except the provider retrieved by the caller itself. may be null.
+     */
+    private static void startRetrievingChoiceLists(
+            StaplerRequest req,
+            Map<ChoiceListProvider, ChoiceListSnapshot> snapshots,
+            Map<ChoiceListProvider, Future<ChoiceListSnapshot>> futures,
+            ChoiceListProvider except
+    )
+    {
+        if(!"GET".equals(req.getMethod()))
+        {
+            return;
+        }
+        AbstractProject<?,?> project = req.findAncestorObject(AbstractProject.class);
+        ParametersDefinitionProperty pp = (project != null)?project.getProperty(ParametersDefinitionProperty.class):null;
+        if(pp == null)
+        {
+            return;
+        }
+        ChoiceListCache cache = ChoiceListCache.getInstance();
+        for(ExtensibleChoiceParameterDefinition def:
+                Util.filter(pp.getParameterDefinitions(), ExtensibleChoiceParameterDefinition.class))
+        {
+            ChoiceListProvider provider = def.getChoiceListProvider();
+            if(provider == null
+                    || provider == except
+                    || snapshots.containsKey(provider)
+                    || futures.containsKey(provider))
+            {
+                continue;
+            }
+            try
+            {
+                futures.put(provider, cache.getSnapshotAsync(provider, Computer.threadPoolForRemoting));
+            }
+            catch(RejectedExecutionException e)
+            {
+                // others are retrieved in this thread when referred.
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Waits for choices retrieved in background.
+     * 
+     * Gives up when it takes too long, not to block the page forever
+     * with a provider never returning.
+     * 
+     * @param provider the provider the choices are retrieved from.
+     * @param future
+     * @param timeout the time to wait in milliseconds.
+     * @return the snapshot of choices.
+     *         the last known good one (or an empty one) if interrupted or timed out.
+     */
+    protected static ChoiceListSnapshot waitForSnapshot(
+            ChoiceListProvider provider,
+            Future<ChoiceListSnapshot> future,
+            long timeout
+    )
+    {
+        try
+        {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return ChoiceListCache.getInstance().getLastKnownGoodSnapshot(provider);
+        }
+        catch(TimeoutException e)
+        {
+            LOGGER.warning(String.format("Timed out waiting for choices of %s", provider.getCacheKey()));
+            future.cancel(true);
+            return ChoiceListCache.getInstance().getLastKnownGoodSnapshot(provider);
+        }
+        catch(CancellationException e)
+        {
+            // gave up in another request.
+            return ChoiceListCache.getInstance().getLastKnownGoodSnapshot(provider);
+        }
+        catch(ExecutionException e)
+        {
+            // behave as if retrieved in this thread.
+            if(e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException)e.getCause();
+            }
+            if(e.getCause() instanceof Error)
+            {
+                throw (Error)e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
     
     /**
-     * Returns a regular expression pattern for the acceptable parameter names.
+     * Returns the token for the choices shown in the build page.
      * 
-     * Strangely, Jenkins has no limitation for the name of parameters.
-     * But in many cases, it is good to be limited to the symbol name in C.
+     * The choices are retained for a while,
+     * and the submitted value is validated against them,
+     * without retrieving choices again.
      * 
-     * @return A regular expression pattern for the acceptable variable names.
+     * @return the token to embed in the page. null if values are not validated.
+     * @see RenderedChoiceListStore
      */
-    public static Pattern getNamePattern()
+    public String getChoiceListToken()
     {
-        return namePattern;
+        if(isEditable() || isChoiceListDeferred())
+        {
+            return null;
+        }
+        return RenderedChoiceListStore.getInstance().retain(
+                this,
+                getChoiceListSnapshot(),
+                System.currentTimeMillis()
+        );
     }
     
     /**
-     * The internal class to work with views.
+     * Returns the number of choices loaded at once in the build page.
      * 
-     * The following files are used (put in main/resource directory in the source tree).
-     * <dl>
-     *     <dt>config.jelly</dt>
-     *         <dd>shown as a part of a job configuration page.</dd>
-     *     <dt>index.jelly</dt>
-     *         <dd>shown when a user launches a build, and specifies parameters of the build.</dd>
-     *     </dt>
-     * </dl>
+     * Choices not available when showing the page are always loaded after shown.
+     * 
+     * @return the number of choices. 0 for embedding all choices in the page.
+     * @see DescriptorImpl#getChoicesPageSize()
+     * @see #isChoiceListDeferred()
      */
-    @Extension
-    public static class DescriptorImpl extends ParameterDescriptor
+    public int getChoicesPageSize()
     {
-        /**
-         * Returns the string to be shown in a job configuration page, in the dropdown of &quot;Add Parameter&quot;.
-         * 
-         * @return a name of this parameter type.
-         * @see hudson.model.ParameterDefinition.ParameterDescriptor#getDisplayName()
-         */
-        @Override
-        public String getDisplayName()
+        DescriptorImpl descriptor = (DescriptorImpl)getDescriptor();
+        int pageSize = (descriptor != null)?descriptor.getChoicesPageSize():0;
+        if(pageSize <= 0 && isChoiceListDeferred())
         {
-            return Messages._ExtensibleChoiceParameterDefinition_DisplayName().toString();
+            return MAX_CHOICES_PAGE_SIZE;
+        }
+        return pageSize;
+    }
+    
+    /**
+     * Returns the URL to load choices page by page.
+     * 
+     * Used in the build page.
+     * 
+     * @return the URL of {@link #doChoices(StaplerRequest, StaplerResponse, String, String)}.
+     *         null if choices should be embedded in the page.
+     */
+    public String getChoicesUrl()
+    {
+        if(getChoicesPageSize() <= 0)
+        {
+            return null;
+        }
+        return getActionUrl("choices");
+    }
+    
+    /**
+     * Returns the URL to search choices for the value the user is typing.
+     * 
+     * Used in the build page for editable parameters
+     * whose choices are loaded page by page.
+     * The index to search choices starts to be built in background
+     * when the choices are available.
+     * 
+     * @return the URL of {@link #doSearch(StaplerRequest, StaplerResponse, String, String, String)}.
+     *         null if choices are embedded in the page.
+     */
+    public String getSearchUrl()
+    {
+        if(!isEditable() || getChoicesPageSize() <= 0)
+        {
+            return null;
+        }
+        String url = getActionUrl("search");
+        DescriptorImpl descriptor = (DescriptorImpl)getDescriptor();
+        if(url != null && descriptor != null && descriptor.isFuzzySearchEnabled())
+        {
+            url = String.format("%s&mode=%s", url, SEARCH_MODE_FUZZY);
+        }
+        if(url != null && !isChoiceListDeferred())
+        {
+            prepareSearch(getChoiceListSnapshot());
+        }
+        return url;
+    }
+    
+    /**
+     * Start building the index to search choices in background,
+     * not to build it in the first search.
+     * 
+     * @param snapshot choices to search.
+     */
+    private void prepareSearch(ChoiceListSnapshot snapshot)
+    {
+        if(!isEditable() || getChoicesPageSize() <= 0)
+        {
+            return;
+        }
+        DescriptorImpl descriptor = (DescriptorImpl)getDescriptor();
+        snapshot.prepareSearch(
+                descriptor != null && descriptor.isFuzzySearchEnabled(),
+                Computer.threadPoolForRemoting
+        );
+    }
+    
+    /**
+     * Returns the URL to watch changes of choices.
+     * 
+     * Used in the build page to reload choices when they change.
+     * The build page combines the URLs of all parameters in it
+     * and watches them with a single request.
+     * 
+     * Only for choices held in memory (providers without cache keys)
+     * or cached ones, as choices are retrieved again each time the watch returns.
+     * 
+     * @return the URL of {@link ExtensibleChoiceRootAction#doWatch(StaplerRequest, StaplerResponse)}
+     *         for this parameter. null if not enabled, or choices are embedded in the page.
+     */
+    public String getWatchUrl()
+    {
+        DescriptorImpl descriptor = (DescriptorImpl)getDescriptor();
+        if(descriptor == null || !descriptor.isWatchEnabled() || getChoicesPageSize() <= 0)
+        {
+            return null;
+        }
+        ChoiceListProvider provider = getChoiceListProvider();
+        if(provider == null
+                || (provider.getCacheKey() != null && !ChoiceListCache.getInstance().isCached(provider)))
+        {
+            // retrieving choices again each time is too expensive.
+            return null;
+        }
+        return getActionUrl("watch");
+    }
+    
+    /**
+     * Returns the URL of a method of {@link ExtensibleChoiceRootAction} for this parameter.
+     * 
+     * @param method the name of the method.
+     * @return the URL. null if not in a page of a job.
+     */
+    protected String getActionUrl(String method)
+    {
+        StaplerRequest req = Stapler.getCurrentRequest();
+        AbstractProject<?,?> project = (req != null)?req.findAncestorObject(AbstractProject.class):null;
+        if(project == null)
+        {
+            // not in a page of a job.
+            return null;
+        }
+        try
+        {
+            return String.format(
+                    "%s/%s/%s?job=%s&param=%s",
+                    req.getContextPath(),
+                    ExtensibleChoiceRootAction.URL_NAME,
+                    method,
+                    URLEncoder.encode(project.getFullName(), "UTF-8"),
+                    URLEncoder.encode(getName(), "UTF-8")
+            );
         }
+        catch(UnsupportedEncodingException e)
+        {
+            // never happen.
+            return null;
+        }
+    }
+    
+    /**
+     * Returns a part of choices in JSON.
+     * 
+     * Returns an object like:
+     * <pre>
+     * {"start": 0, "total": 20000, "fingerprint": "...", "choices": ["value1", "value2", ...]}
+     * </pre>
+     * fingerprint changes when choices are updated.
+     * 
+     * @param req
+     * @param rsp
+     * @param start the index of the first choice to return.
+     * @param count the number of choices to return. at most {@link #MAX_CHOICES_PAGE_SIZE}.
+     * @throws IOException
+     */
+    public void doChoices(
+            StaplerRequest req,
+            StaplerResponse rsp,
+            @QueryParameter String start,
+            @QueryParameter String count
+    ) throws IOException
+    {
+        ChoiceListSnapshot snapshot = getChoiceListSnapshot();
+        // choices deferred in the build page are searched after loaded.
+        prepareSearch(snapshot);
+        if(checkNotModified(req, rsp, snapshot.getFingerprint()))
+        {
+            return;
+        }
+        List<String> choiceList = snapshot.getChoiceList();
+        int from = Math.min(choiceList.size(), Math.max(0, NumberUtils.toInt(start, 0)));
+        int size = Math.min(MAX_CHOICES_PAGE_SIZE, Math.max(0, NumberUtils.toInt(count, MAX_CHOICES_PAGE_SIZE)));
+        int to = (int)Math.min(choiceList.size(), (long)from + size);
         
-        /**
-         * Returns all the available methods to provide choices.
-         * 
-         * Used for showing dropdown for users to select a choice provider.
-         * 
-         * @return DescriptorExtensionList of ChoiceListProvider subclasses.
-         */
-        public DescriptorExtensionList<ChoiceListProvider,Descriptor<ChoiceListProvider>> getChoiceListProviderList()
+        JSONObject json = new JSONObject();
+        json.put("start", from);
+        json.put("total", choiceList.size());
+        json.put("fingerprint", snapshot.getFingerprint().toString());
+        json.put("choices", JSONArray.fromObject(choiceList.subList(from, to)));
+        
+        writeJson(req, rsp, json, snapshot.getFingerprint());
+    }
+    
+    /**
+     * Returns choices matching a string in JSON.
+     * 
+     * Searched with the index of the current choices,
+     * case insensitively. Returns an object like:
+     * <pre>
+     * {"prefix": "val", "mode": "prefix", "total": 120, "choices": ["value1", "value2", ...]}
+     * </pre>
+     * total is the number of all matching choices,
+     * which can be larger than the number of returned choices.
+     * 
+     * With mode {@link #SEARCH_MODE_FUZZY}, choices containing the string
+     * or similar to it are returned, the best match first.
+     * See {@link ChoiceListTrigramIndex} for details.
+     * 
+     * @param req
+     * @param rsp
+     * @param prefix the string to search.
+     * @param count the number of choices to return. at most {@link #MAX_CHOICES_PAGE_SIZE}.
+     * @param mode {@link #SEARCH_MODE_FUZZY} to search by substrings. by prefixes if omitted.
+     * @throws IOException
+     */
+    public void doSearch(
+            StaplerRequest req,
+            StaplerResponse rsp,
+            @QueryParameter String prefix,
+            @QueryParameter String count,
+            @QueryParameter String mode
+    ) throws IOException
+    {
+        ChoiceListSnapshot snapshot = getChoiceListSnapshot();
+        if(checkNotModified(req, rsp, snapshot.getFingerprint()))
         {
-            return ChoiceListProvider.all();
+            return;
         }
+        int size = Math.min(MAX_CHOICES_PAGE_SIZE, Math.max(0, NumberUtils.toInt(count, DEFAULT_SEARCH_RESULTS)));
         
-        public FormValidation doCheckName(@QueryParameter String name){
-            if(StringUtils.isBlank(name))
+        JSONObject json = new JSONObject();
+        json.put("prefix", StringUtils.defaultString(prefix));
+        if(SEARCH_MODE_FUZZY.equals(mode))
+        {
+            ChoiceListTrigramIndex.Result result = snapshot.getTrigramIndex().search(prefix, size);
+            json.put("mode", SEARCH_MODE_FUZZY);
+            json.put("total", result.getTotal());
+            json.put("choices", JSONArray.fromObject(result.getChoiceList()));
+        }
+        else
+        {
+            ChoiceListPrefixIndex index = snapshot.getPrefixIndex();
+            json.put("mode", "prefix");
+            json.put("total", index.count(prefix));
+            json.put("choices", JSONArray.fromObject(index.search(prefix, size)));
+        }
+        
+        writeJson(req, rsp, json, snapshot.getFingerprint());
+    }
+    
+    /**
+     * Returns the list of choices shared with other lists with the same contents.
+     * 
+     * Stored in the compact form if configured with {@link DescriptorImpl#getCompactListThreshold()}.
+     * Used for lists held in configurations.
+     * 
+     * @param choiceList the list of choices. may be null.
+     * @return the shared list. must not be modified.
+     * @see ChoiceListInterner
+     */
+    public static List<String> internChoiceList(List<String> choiceList)
+    {
+        Jenkins jenkins = Jenkins.getInstance();
+        DescriptorImpl descriptor = (jenkins != null)?jenkins.getDescriptorByType(DescriptorImpl.class):null;
+        int threshold = (descriptor != null)?descriptor.getCompactListThreshold():0;
+        return ChoiceListInterner.getInstance().intern(
+                choiceList,
+                threshold > 0 && choiceList != null && choiceList.size() >= threshold
+        );
+    }
+    
+    /**
+     * Returns the key to notify changes of a parameter whose choices are not cached.
+     * 
+     * @param jobFullName the full name of the job.
+     * @param parameterName the name of the parameter.
+     * @return the key used with {@link ChoiceListChangeNotifier}.
+     */
+    public static String getWatchKey(String jobFullName, String parameterName)
+    {
+        return String.format("%s#%s", jobFullName, parameterName);
+    }
+    
+    /**
+     * Returns the key to notify changes of the choices of this parameter.
+     * 
+     * Changes are noticed when choices are retrieved again from the provider,
+     * e.g. when the cache expires or is invalidated,
+     * and notified with the cache key of the provider.
+     * Parameters whose choices are not cached are notified with {@link #getWatchKey(String, String)}
+     * (e.g. when the set of choices of {@link GlobalTextareaChoiceListProvider} is edited).
+     * 
+     * @param jobFullName the full name of the job this parameter is defined in.
+     * @return the key used with {@link ChoiceListChangeNotifier}.
+     * @see ExtensibleChoiceRootAction#doWatch(StaplerRequest, StaplerResponse)
+     */
+    public String getWatchKey(String jobFullName)
+    {
+        ChoiceListProvider provider = getChoiceListProvider();
+        String key = (provider != null)?provider.getCacheKey():null;
+        return (key != null)?key:getWatchKey(jobFullName, getName());
+    }
+    
+    /**
+     * Returns whether the client accepts gzip-compressed responses.
+     * 
+     * Codings with q=0 are not acceptable (e.g. "gzip;q=0").
+     * gzip is acceptable with "*" unless listed explicitly.
+     * 
+     * @param acceptEncoding the value of Accept-Encoding. may be null.
+     * @return true if the response can be compressed.
+     */
+    protected static boolean acceptsGzip(String acceptEncoding)
+    {
+        if(acceptEncoding == null)
+        {
+            return false;
+        }
+        Boolean gzip = null;
+        Boolean any = null;
+        for(String coding: acceptEncoding.split(","))
+        {
+            String[] params = coding.split(";");
+            String name = params[0].trim().toLowerCase(Locale.ENGLISH);
+            boolean acceptable = true;
+            for(int i = 1; i < params.length; ++i)
             {
-                return FormValidation.error(Messages.ExtensibleChoiceParameterDefinition_Name_empty());
+                String param = params[i].trim().toLowerCase(Locale.ENGLISH);
+                if(param.startsWith("q="))
+                {
+                    acceptable = NumberUtils.toDouble(param.substring(2).trim(), 0) > 0;
+                }
             }
-            
-            if(!getNamePattern().matcher(name.trim()).matches()){
-                return FormValidation.error(Messages.ExtensibleChoiceParameterDefinition_Name_invalid());
+            if("gzip".equals(name) || "x-gzip".equals(name))
+            {
+                gzip = acceptable;
+            }
+            else if("*".equals(name))
+            {
+                any = acceptable;
             }
-            
-            return FormValidation.ok();
         }
+        if(gzip != null)
+        {
+            return gzip;
+        }
+        return any != null && any;
     }
     
-    private boolean editable = false;
+    private static boolean acceptsGzip(StaplerRequest req)
+    {
+        return acceptsGzip(req.getHeader("Accept-Encoding"));
+    }
     
     /**
-     * Is this parameter value can be set to a value not in the choices?
+     * Returns the entity tag for a response derived from a list of choices.
      * 
-     * @return whether this parameter is editable.
+     * The response is determined by the URL and the contents of the list,
+     * so the fingerprint of the list is used as a strong entity tag.
+     * Compressed responses get a different tag, as their bytes differ.
+     * 
+     * @param fingerprint the fingerprint of the list of choices.
+     * @param compressed whether the response body is compressed.
+     * @return the entity tag, quoted.
      */
-    public boolean isEditable()
+    protected static String getEntityTag(ChoiceListFingerprint fingerprint, boolean compressed)
     {
-        return editable;
+        return String.format("\"%s%s\"", fingerprint.toString(), compressed?"-gzip":"");
     }
     
-    private ChoiceListProvider choiceListProvider = null;
+    /**
+     * Sets headers for revalidation, and responds 304 Not Modified
+     * if the client already has the same response.
+     * 
+     * The entity tag of a response is set when written with
+     * {@link #writeJson(StaplerRequest, StaplerResponse, JSONObject, ChoiceListFingerprint)},
+     * as it depends on whether the body is compressed.
+     * 
+     * @param req
+     * @param rsp
+     * @param fingerprint the fingerprint of the list of choices the response is derived from.
+     * @return true if responded with 304. Nothing should be written then.
+     */
+    protected static boolean checkNotModified(StaplerRequest req, StaplerResponse rsp, ChoiceListFingerprint fingerprint)
+    {
+        // clients can store responses, but must revalidate them each time.
+        rsp.setHeader("Cache-Control", "private, no-cache");
+        rsp.setHeader("Vary", "Accept-Encoding");
+        
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if(ifNoneMatch == null)
+        {
+            return false;
+        }
+        // the client has the compressed one only if it still accepts it.
+        String plainTag = getEntityTag(fingerprint, false);
+        String compressedTag = acceptsGzip(req)?getEntityTag(fingerprint, true):null;
+        for(String tag: ifNoneMatch.split(","))
+        {
+            tag = tag.trim();
+            if(tag.startsWith("W/"))
+            {
+                tag = tag.substring(2);
+            }
+            if(tag.equals(plainTag) || tag.equals(compressedTag) || tag.equals("*"))
+            {
+                if(!tag.equals("*"))
+                {
+                    rsp.setHeader("ETag", tag);
+                }
+                rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+        }
+        return false;
+    }
     
     /**
-     * The choice provider the user specified.
+     * Writes a JSON response, compressing it if large.
      * 
-     * @return choice provider.
+     * @param req
+     * @param rsp
+     * @param json
+     * @throws IOException
      */
-    public ChoiceListProvider getChoiceListProvider()
+    protected static void writeJson(StaplerRequest req, StaplerResponse rsp, JSONObject json) throws IOException
     {
-        return choiceListProvider;
+        writeJson(req, rsp, json, null);
     }
     
     /**
-     * Return choices available for this parameter.
+     * Writes a JSON response derived from a list of choices, compressing it if large.
      * 
-     * @return list of choices. never null.
+     * The entity tag is set with whether the body is actually compressed.
+     * 
+     * @param req
+     * @param rsp
+     * @param json
+     * @param fingerprint the fingerprint of the list of choices the response is derived from.
+     *        null not to set the entity tag.
+     * @throws IOException
+     * @see #checkNotModified(StaplerRequest, StaplerResponse, ChoiceListFingerprint)
      */
-    public List<String> getChoiceList()
+    protected static void writeJson(StaplerRequest req, StaplerResponse rsp, JSONObject json, ChoiceListFingerprint fingerprint) throws IOException
     {
-        ChoiceListProvider provider = getChoiceListProvider();
-        List<String> choiceList = (provider !=  null)?provider.getChoiceList():null;
-        return (choiceList !=  null)?choiceList:new ArrayList<String>(0);
+        String body = json.toString();
+        boolean compressed = (body.length() >= MIN_COMPRESSED_SIZE && acceptsGzip(req));
+        rsp.setContentType("application/json;charset=UTF-8");
+        if(fingerprint != null)
+        {
+            rsp.setHeader("ETag", getEntityTag(fingerprint, compressed));
+        }
+        Writer w;
+        if(compressed)
+        {
+            // not with StaplerResponse#getCompressedWriter, which parses Accept-Encoding differently.
+            rsp.setHeader("Content-Encoding", "gzip");
+            w = new OutputStreamWriter(new GZIPOutputStream(rsp.getOutputStream()), "UTF-8");
+        }
+        else
+        {
+            w = rsp.getWriter();
+        }
+        w.write(body);
+        w.close();
+    }
+    
+    /**
+     * Returns the time the choices of this parameter are cached.
+     * 
+     * Varies with how often the choices change.
+     * 
+     * @return the current time to live of the cached choices in seconds. 0 if not cached.
+     */
+    public long getEffectiveCacheTtl()
+    {
+        return ChoiceListCache.getInstance().getEffectiveTtl(getChoiceListProvider());
     }
     
     /**
@@ -186,7 +1543,37 @@ public class ExtensibleChoiceParameterDefinition extends SimpleParameterDefiniti
      */
     protected ParameterValue createValueCommon(StringParameterValue value)
     {
-        if(!isEditable() && !getChoiceList().contains(value.value))
+        return createValueCommon(value, null);
+    }
+    
+    /**
+     * Test passed ParameterValue and return.
+     * 
+     * Common processing of createValue.
+     * The value is first tested with the choices shown to the user,
+     * and then with the current choices.
+     * 
+     * @param value a value to test.
+     * @param choiceListToken the token of the choices shown to the user. may be null.
+     * @return a value tested. same with value.
+     * @see #getChoiceListToken()
+     */
+    protected ParameterValue createValueCommon(StringParameterValue value, String choiceListToken)
+    {
+        if(isEditable())
+        {
+            return value;
+        }
+        ChoiceListSnapshot shown = RenderedChoiceListStore.getInstance().get(
+                this,
+                choiceListToken,
+                System.currentTimeMillis()
+        );
+        if(shown != null && shown.contains(value.value))
+        {
+            return value;
+        }
+        if(!getChoiceListSnapshot().contains(value.value))
         {
             // Something strange!: Not editable and specified a value not in the choices.
             throw new IllegalArgumentException("Illegal choice: " + value.value);
@@ -208,7 +1595,7 @@ public class ExtensibleChoiceParameterDefinition extends SimpleParameterDefiniti
         StringParameterValue value = request.bindJSON(StringParameterValue.class, jo);
         value.setDescription(getDescription());
         
-        return createValueCommon(value);
+        return createValueCommon(value, jo.optString("choiceListToken", null));
     }
     
     /**
@@ -232,19 +1619,37 @@ public class ExtensibleChoiceParameterDefinition extends SimpleParameterDefiniti
      * the first value in the choice is used.
      * returns null if no choice list is defined.
      * 
+     * When serving the remote API, also exported,
+     * the provider is not run (see {@link #getExportedChoiceList()}):
+     * the default specified by the provider is returned without validation,
+     * or the first value of the cached choices.
+     * 
      * @return the default value of this parameter.
      * @see hudson.model.ParameterDefinition#getDefaultParameterValue()
      */
     @Override
     public ParameterValue getDefaultParameterValue()
     {
-        String defaultChoice = (getChoiceListProvider() != null)?getChoiceListProvider().getDefaultChoice():null;
+        ChoiceListProvider provider = getChoiceListProvider();
+        String defaultChoice = (provider != null)?provider.getDefaultChoice():null;
+        boolean retrievable = isChoiceListRetrievable();
         if(defaultChoice != null)
         {
-            return createValue(defaultChoice);
+            return retrievable
+                    ?createValue(defaultChoice)
+                    :new StringParameterValue(getName(), defaultChoice, getDescription());
         }
         
-        List<String> choiceList = getChoiceList();
+        List<String> choiceList;
+        if(retrievable)
+        {
+            choiceList = getChoiceList();
+        }
+        else
+        {
+            ChoiceListSnapshot cached = (provider != null)?ChoiceListCache.getInstance().getCachedSnapshot(provider):null;
+            choiceList = (cached != null)?cached.getChoiceList():Collections.<String>emptyList();
+        }
         return (choiceList.size() <= 0)?null:
             new StringParameterValue(
                     getName(),
@@ -0,0 +1,634 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Computer;
+import hudson.model.Item;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.RootAction;
+import hudson.util.DaemonThreadFactory;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.acegisecurity.AccessDeniedException;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Web methods of Extensible Choice Parameter not bound to a page of a job.
+ * 
+ * Available at JENKINS_URL/extensible-choice/.
+ * Intended to be called from scripts or other systems (e.g. webhooks),
+ * and not shown in the side panel.
+ */
+@Extension
+public class ExtensibleChoiceRootAction implements RootAction
+{
+    private static final Logger LOGGER = Logger.getLogger(ExtensibleChoiceRootAction.class.getName());
+    
+    /**
+     * The path of this action in the URL.
+     */
+    public static final String URL_NAME = "extensible-choice";
+    
+    /**
+     * Maximum number of parameters queried at once with {@link #doBulk(StaplerRequest, StaplerResponse)}.
+     */
+    public static final int MAX_BULK_TARGETS = 1000;
+    
+    /**
+     * Maximum number of parameters watched at once with {@link #doWatch(StaplerRequest, StaplerResponse)}.
+     */
+    public static final int MAX_WATCH_TARGETS = 100;
+    
+    /**
+     * Number of threads to retrieve choices for {@link #doBulk(StaplerRequest, StaplerResponse)}.
+     * Shared among all requests.
+     */
+    public static final int BULK_THREADS = 4;
+    
+    private static final ExecutorService bulkExecutor = Executors.newFixedThreadPool(
+            BULK_THREADS,
+            new DaemonThreadFactory()
+    );
+    
+    /**
+     * @return null not to be shown in the side panel.
+     * @see hudson.model.Action#getIconFileName()
+     */
+    @Override
+    public String getIconFileName()
+    {
+        return null;
+    }
+    
+    /**
+     * @return null not to be shown in the side panel.
+     * @see hudson.model.Action#getDisplayName()
+     */
+    @Override
+    public String getDisplayName()
+    {
+        return null;
+    }
+    
+    /**
+     * @return the path of this action in the URL.
+     * @see hudson.model.Action#getUrlName()
+     */
+    @Override
+    public String getUrlName()
+    {
+        return URL_NAME;
+    }
+    
+    /**
+     * Returns a job the current user can build.
+     * 
+     * Items the current user cannot read are treated as not existing.
+     * 
+     * @param job the full name of the job.
+     * @return the job. null if the job does not exist.
+     */
+    protected AbstractProject<?,?> getProject(String job)
+    {
+        Jenkins jenkins = Jenkins.getInstance();
+        AbstractProject<?,?> project = (jenkins != null && !StringUtils.isBlank(job))
+                ?jenkins.getItemByFullName(job.trim(), AbstractProject.class)
+                :null;
+        if(project == null)
+        {
+            return null;
+        }
+        project.checkPermission(Item.BUILD);
+        return project;
+    }
+    
+    /**
+     * Returns Extensible Choice parameters defined in a job.
+     * 
+     * Items the current user cannot read are treated as not existing.
+     * 
+     * @param job the full name of the job.
+     * @param param the name of the parameter. blank for all parameters of the job.
+     * @return the parameters. null if the job does not exist.
+     */
+    protected List<ExtensibleChoiceParameterDefinition> getParameterDefinitionList(String job, String param)
+    {
+        AbstractProject<?,?> project = getProject(job);
+        if(project == null)
+        {
+            return null;
+        }
+        
+        List<ExtensibleChoiceParameterDefinition> defList = new ArrayList<ExtensibleChoiceParameterDefinition>();
+        ParametersDefinitionProperty pp = project.getProperty(ParametersDefinitionProperty.class);
+        if(pp == null)
+        {
+            return defList;
+        }
+        for(ExtensibleChoiceParameterDefinition def:
+                Util.filter(pp.getParameterDefinitions(), ExtensibleChoiceParameterDefinition.class))
+        {
+            if(StringUtils.isBlank(param) || param.trim().equals(def.getName()))
+            {
+                defList.add(def);
+            }
+        }
+        return defList;
+    }
+    
+    /**
+     * Returns an Extensible Choice parameter defined in a job.
+     * 
+     * @param job the full name of the job.
+     * @param param the name of the parameter.
+     * @return the parameter. null if not found.
+     */
+    protected ExtensibleChoiceParameterDefinition getParameterDefinition(String job, String param)
+    {
+        if(StringUtils.isBlank(param))
+        {
+            return null;
+        }
+        List<ExtensibleChoiceParameterDefinition> defList = getParameterDefinitionList(job, param);
+        return (defList != null && !defList.isEmpty())?defList.get(0):null;
+    }
+    
+    /**
+     * Returns a part of choices of a parameter in JSON.
+     * 
+     * Used to load choices page by page in the build page.
+     * Requires the permission to build the job.
+     * 
+     * @param req
+     * @param rsp
+     * @param job the full name of the job.
+     * @param param the name of the parameter.
+     * @param start the index of the first choice to return.
+     * @param count the number of choices to return.
+     * @throws IOException
+     * @see ExtensibleChoiceParameterDefinition#doChoices(StaplerRequest, StaplerResponse, String, String)
+     */
+    public void doChoices(
+            StaplerRequest req,
+            StaplerResponse rsp,
+            @QueryParameter String job,
+            @QueryParameter String param,
+            @QueryParameter String start,
+            @QueryParameter String count
+    ) throws IOException
+    {
+        ExtensibleChoiceParameterDefinition def = getParameterDefinition(job, param);
+        if(def == null)
+        {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, String.format("No Extensible Choice parameter found for job=%s, param=%s", job, param));
+            return;
+        }
+        def.doChoices(req, rsp, start, count);
+    }
+    
+    /**
+     * Returns choices of a parameter matching a string in JSON.
+     * 
+     * Used for the typeahead of editable parameters in the build page.
+     * Requires the permission to build the job.
+     * 
+     * @param req
+     * @param rsp
+     * @param job the full name of the job.
+     * @param param the name of the parameter.
+     * @param prefix the string to search.
+     * @param count the number of choices to return.
+     * @param mode "fuzzy" to search by substrings. by prefixes if omitted.
+     * @throws IOException
+     * @see ExtensibleChoiceParameterDefinition#doSearch(StaplerRequest, StaplerResponse, String, String, String)
+     */
+    public void doSearch(
+            StaplerRequest req,
+            StaplerResponse rsp,
+            @QueryParameter String job,
+            @QueryParameter String param,
+            @QueryParameter String prefix,
+            @QueryParameter String count,
+            @QueryParameter String mode
+    ) throws IOException
+    {
+        ExtensibleChoiceParameterDefinition def = getParameterDefinition(job, param);
+        if(def == null)
+        {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, String.format("No Extensible Choice parameter found for job=%s, param=%s", job, param));
+            return;
+        }
+        def.doSearch(req, rsp, prefix, count, mode);
+    }
+    
+    /**
+     * A parameter watched with {@link ExtensibleChoiceRootAction#doWatch(StaplerRequest, StaplerResponse)}.
+     */
+    private static class WatchTarget
+    {
+        private final String job;
+        private final String param;
+        private final String fingerprint;
+        private ChoiceListProvider provider = null;
+        private ChoiceListSnapshot snapshot = null;
+        private String error = null;
+        
+        public WatchTarget(String job, String param, String fingerprint)
+        {
+            this.job = job;
+            this.param = param;
+            this.fingerprint = fingerprint;
+        }
+        
+        public boolean isChanged()
+        {
+            return error != null || !snapshot.getFingerprint().toString().equals(fingerprint);
+        }
+        
+        public JSONObject toJson()
+        {
+            JSONObject json = new JSONObject();
+            json.put("job", job);
+            json.put("param", param);
+            if(error != null)
+            {
+                json.put("error", error);
+                return json;
+            }
+            json.put("fingerprint", snapshot.getFingerprint().toString());
+            json.put("total", snapshot.getChoiceList().size());
+            json.put("changed", isChanged());
+            return json;
+        }
+    }
+    
+    /**
+     * Waits for choices of parameters to change, and returns the fingerprints of them in JSON.
+     * 
+     * Used to reload choices in the build page when they change.
+     * Parameters are specified with sets of job, param and fingerprint
+     * (the fingerprint of the choices the client knows),
+     * so that a page watches all of its parameters with a single request
+     * not to use up connections of the browser and threads of the server.
+     * Returns immediately if any of fingerprints differs from the current one,
+     * or waits for {@link ExtensibleChoiceParameterDefinition#WATCH_TIMEOUT} seconds at most
+     * for any of choices to change (long polling).
+     * Requires the permission to build each job.
+     * 
+     * e.g.
+     * <pre>
+     * JENKINS_URL/extensible-choice/watch?job=JOB&amp;param=PARAM1&amp;fingerprint=...&amp;job=JOB&amp;param=PARAM2&amp;fingerprint=...
+     * </pre>
+     * Returns results in the same order as specified, like:
+     * <pre>
+     * {"results": [
+     *   {"job": "JOB", "param": "PARAM1", "fingerprint": "...", "total": 20000, "changed": true},
+     *   {"job": "JOB", "param": "PARAM2", "error": "..."}
+     * ]}
+     * </pre>
+     * Clients should load choices again only when changed is true,
+     * and stop watching parameters with errors.
+     * 
+     * @param req
+     * @param rsp
+     * @throws IOException
+     * @see ExtensibleChoiceParameterDefinition#getWatchKey(String)
+     */
+    public void doWatch(StaplerRequest req, StaplerResponse rsp) throws IOException
+    {
+        String[] jobs = req.getParameterValues("job");
+        String[] params = req.getParameterValues("param");
+        String[] fingerprints = req.getParameterValues("fingerprint");
+        if(jobs == null || params == null || fingerprints == null
+                || jobs.length != params.length || jobs.length != fingerprints.length)
+        {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Specify sets of job, param and fingerprint");
+            return;
+        }
+        if(jobs.length > MAX_WATCH_TARGETS)
+        {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, String.format("Too many parameters: %d > %d", jobs.length, MAX_WATCH_TARGETS));
+            return;
+        }
+        
+        ChoiceListChangeNotifier notifier = ChoiceListCache.getInstance().getNotifier();
+        List<WatchTarget> targetList = new ArrayList<WatchTarget>();
+        Map<String, Long> versions = new HashMap<String, Long>();
+        boolean changed = false;
+        for(int i = 0; i < jobs.length; ++i)
+        {
+            WatchTarget target = new WatchTarget(jobs[i], params[i], fingerprints[i]);
+            targetList.add(target);
+            ExtensibleChoiceParameterDefinition def;
+            try
+            {
+                def = getParameterDefinition(jobs[i], params[i]);
+            }
+            catch(AccessDeniedException e)
+            {
+                target.error = e.getMessage();
+                changed = true;
+                continue;
+            }
+            if(def == null)
+            {
+                target.error = "No Extensible Choice parameter found";
+                changed = true;
+                continue;
+            }
+            target.provider = def.getChoiceListProvider();
+            // read the version first not to miss changes while retrieving choices.
+            String key = def.getWatchKey(getProject(jobs[i]).getFullName());
+            versions.put(key, notifier.getVersion(key));
+            target.snapshot = def.getChoiceListSnapshot();
+            changed = changed || target.isChanged();
+        }
+        
+        if(!changed && notifier.await(versions, TimeUnit.SECONDS.toMillis(ExtensibleChoiceParameterDefinition.WATCH_TIMEOUT)))
+        {
+            for(WatchTarget target: targetList)
+            {
+                if(target.provider != null)
+                {
+                    // not the one held in the request.
+                    target.snapshot = ChoiceListCache.getInstance().getSnapshot(target.provider);
+                }
+            }
+        }
+        
+        JSONArray results = new JSONArray();
+        for(WatchTarget target: targetList)
+        {
+            results.add(target.toJson());
+        }
+        JSONObject json = new JSONObject();
+        json.put("results", results);
+        rsp.setHeader("Cache-Control", "no-cache");
+        ExtensibleChoiceParameterDefinition.writeJson(req, rsp, json);
+    }
+    
+    /**
+     * A parameter queried with {@link ExtensibleChoiceRootAction#doBulk(StaplerRequest, StaplerResponse)}.
+     */
+    private static class BulkResult
+    {
+        private final String job;
+        private final String param;
+        private ChoiceListSnapshot snapshot = null;
+        private String error = null;
+        
+        public BulkResult(String job, String param)
+        {
+            this.job = job;
+            this.param = param;
+        }
+        
+        public JSONObject toJson()
+        {
+            JSONObject json = new JSONObject();
+            json.put("job", job);
+            json.put("param", param);
+            if(error != null)
+            {
+                json.put("error", error);
+                return json;
+            }
+            json.put("fingerprint", snapshot.getFingerprint().toString());
+            json.put("total", snapshot.getChoiceList().size());
+            json.put("choices", snapshot.getChoiceList());
+            return json;
+        }
+    }
+    
+    /**
+     * Returns choices of many parameters at once,
+     * in newline-delimited JSON, a line for each parameter.
+     * 
+     * Parameters are specified with pairs of job and param,
+     * and lines are written as soon as choices are retrieved,
+     * not in the specified order.
+     * Choices are retrieved in background with {@link #BULK_THREADS} threads at most,
+     * using the cache if available.
+     * Requires the permission to build each job.
+     * 
+     * Call with POST for many parameters, e.g.
+     * <pre>
+     * curl --user USER:APITOKEN --data "job=JOB1&amp;param=PARAM1&amp;job=JOB2&amp;param=PARAM2" "JENKINS_URL/extensible-choice/bulk"
+     * </pre>
+     * Each line is like:
+     * <pre>
+     * {"job": "JOB1", "param": "PARAM1", "fingerprint": "...", "total": 2, "choices": ["value1", "value2"]}
+     * {"job": "JOB2", "param": "PARAM2", "error": "..."}
+     * </pre>
+     * 
+     * @param req
+     * @param rsp
+     * @throws IOException
+     */
+    public void doBulk(StaplerRequest req, StaplerResponse rsp) throws IOException
+    {
+        String[] jobs = req.getParameterValues("job");
+        String[] params = req.getParameterValues("param");
+        if(jobs == null || params == null || jobs.length != params.length)
+        {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Specify pairs of job and param");
+            return;
+        }
+        if(jobs.length > MAX_BULK_TARGETS)
+        {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, String.format("Too many parameters: %d > %d", jobs.length, MAX_BULK_TARGETS));
+            return;
+        }
+        
+        // test permissions in this thread, which is authenticated.
+        CompletionService<BulkResult> completion = new ExecutorCompletionService<BulkResult>(bulkExecutor);
+        List<BulkResult> errorList = new ArrayList<BulkResult>();
+        Map<Future<BulkResult>, BulkResult> submitted = new HashMap<Future<BulkResult>, BulkResult>();
+        for(int i = 0; i < jobs.length; ++i)
+        {
+            final BulkResult result = new BulkResult(jobs[i], params[i]);
+            ExtensibleChoiceParameterDefinition def;
+            try
+            {
+                def = getParameterDefinition(jobs[i], params[i]);
+            }
+            catch(AccessDeniedException e)
+            {
+                result.error = e.getMessage();
+                errorList.add(result);
+                continue;
+            }
+            if(def == null)
+            {
+                result.error = "No Extensible Choice parameter found";
+                errorList.add(result);
+                continue;
+            }
+            final ChoiceListProvider provider = def.getChoiceListProvider();
+            Future<BulkResult> future = completion.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    // caught here to report with the job and the parameter.
+                    try
+                    {
+                        result.snapshot = (provider != null)
+                                ?ChoiceListCache.getInstance().getSnapshot(provider)
+                                :new ChoiceListSnapshot(null);
+                    }
+                    catch(RuntimeException e)
+                    {
+                        LOGGER.log(Level.WARNING, String.format("Failed to retrieve choices of %s in %s", result.param, result.job), e);
+                        result.error = String.valueOf(e);
+                    }
+                }
+            }, result);
+            submitted.put(future, result);
+        }
+        
+        rsp.setContentType("application/x-ndjson;charset=UTF-8");
+        PrintWriter w = rsp.getWriter();
+        for(BulkResult result: errorList)
+        {
+            w.println(result.toJson().toString());
+        }
+        w.flush();
+        for(int i = 0; i < submitted.size(); ++i)
+        {
+            Future<BulkResult> future = null;
+            try
+            {
+                future = completion.take();
+                w.println(future.get().toJson().toString());
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            catch(ExecutionException e)
+            {
+                // exceptions are reported in each result, and only Errors reach here.
+                BulkResult result = submitted.get(future);
+                LOGGER.log(Level.SEVERE, String.format("Failed to retrieve choices of %s in %s", result.param, result.job), e.getCause());
+                result.error = String.valueOf(e.getCause());
+                w.println(result.toJson().toString());
+            }
+            w.flush();
+        }
+    }
+    
+    /**
+     * Mark the cached choices of parameters stale.
+     * 
+     * Choices are retrieved again in background,
+     * so that the next page shows the new choices without waiting.
+     * Retrievals already running are shared,
+     * and the limits of evaluations apply as for other retrievals.
+     * Requires the permission to build the job.
+     * 
+     * Call with POST, e.g.
+     * <pre>
+     * curl -X POST --user USER:APITOKEN "JENKINS_URL/extensible-choice/invalidate?job=JOBNAME&amp;param=PARAMNAME"
+     * </pre>
+     * 
+     * @param req
+     * @param rsp
+     * @param job the full name of the job.
+     * @param param the name of the parameter. omit to invalidate all Extensible Choice parameters of the job.
+     * @throws IOException
+     */
+    public void doInvalidate(
+            StaplerRequest req,
+            StaplerResponse rsp,
+            @QueryParameter String job,
+            @QueryParameter String param
+    ) throws IOException
+    {
+        if(!"POST".equals(req.getMethod()))
+        {
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "POST is required");
+            return;
+        }
+        List<ExtensibleChoiceParameterDefinition> defList = getParameterDefinitionList(job, param);
+        if(defList == null || defList.isEmpty())
+        {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, String.format("No Extensible Choice parameter found for job=%s, param=%s", job, param));
+            return;
+        }
+        
+        ChoiceListCache cache = ChoiceListCache.getInstance();
+        rsp.setContentType("text/plain;charset=UTF-8");
+        PrintWriter w = rsp.getWriter();
+        for(ExtensibleChoiceParameterDefinition def: defList)
+        {
+            ChoiceListProvider provider = def.getChoiceListProvider();
+            if(provider == null || !cache.isCached(provider))
+            {
+                w.println(String.format("%s: not cached", def.getName()));
+                continue;
+            }
+            cache.invalidate(provider);
+            try
+            {
+                cache.getSnapshotAsync(provider, Computer.threadPoolForRemoting);
+            }
+            catch(RejectedExecutionException e)
+            {
+                // retrieved when shown next time.
+                LOGGER.log(Level.WARNING, "Failed to start retrieving choices", e);
+            }
+            w.println(String.format("%s: invalidated", def.getName()));
+        }
+        w.flush();
+    }
+}
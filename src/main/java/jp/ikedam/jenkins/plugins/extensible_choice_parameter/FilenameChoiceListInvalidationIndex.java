@@ -0,0 +1,263 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.listeners.ItemListener;
+import jenkins.model.Jenkins;
+
+/**
+ * Records which {@link FilenameChoiceListProvider}s are invalidated by builds of each job.
+ * 
+ * Built when Jenkins loads jobs, and updated job by job
+ * when jobs are created, updated, renamed, or deleted,
+ * so that no job configurations need to be scanned when a build completes.
+ * 
+ * @see FilenameChoiceListInvalidationRunListener
+ */
+public class FilenameChoiceListInvalidationIndex
+{
+    private static final FilenameChoiceListInvalidationIndex INSTANCE = new FilenameChoiceListInvalidationIndex();
+    
+    /**
+     * @return the instance shared in Jenkins.
+     */
+    public static FilenameChoiceListInvalidationIndex getInstance()
+    {
+        return INSTANCE;
+    }
+    
+    /**
+     * the full name of a job updating files to jobs having providers listing them.
+     */
+    private final Map<String, Set<String>> jobsByInvalidatingJob = new HashMap<String, Set<String>>();
+    
+    /**
+     * the full name of a job to providers in it invalidated by other jobs.
+     */
+    private final Map<String, List<FilenameChoiceListProvider>> providersByJob = new HashMap<String, List<FilenameChoiceListProvider>>();
+    
+    /**
+     * Replace the providers of a job.
+     * 
+     * @param jobFullName the full name of the job.
+     * @param providers providers used in the job.
+     */
+    public synchronized void update(String jobFullName, List<FilenameChoiceListProvider> providers)
+    {
+        remove(jobFullName);
+        List<FilenameChoiceListProvider> indexed = new ArrayList<FilenameChoiceListProvider>();
+        for(FilenameChoiceListProvider provider: providers)
+        {
+            if(provider.getInvalidatingJobNameList().isEmpty())
+            {
+                continue;
+            }
+            for(String name: provider.getInvalidatingJobNameList())
+            {
+                Set<String> jobs = jobsByInvalidatingJob.get(name);
+                if(jobs == null)
+                {
+                    jobs = new HashSet<String>();
+                    jobsByInvalidatingJob.put(name, jobs);
+                }
+                jobs.add(jobFullName);
+            }
+            indexed.add(provider);
+        }
+        if(!indexed.isEmpty())
+        {
+            providersByJob.put(jobFullName, indexed);
+        }
+    }
+    
+    /**
+     * Replace the providers of a job with its current configuration.
+     * 
+     * @param job
+     */
+    public void update(AbstractProject<?,?> job)
+    {
+        update(job.getFullName(), getProviders(job));
+    }
+    
+    /**
+     * Remove the providers of a job.
+     * 
+     * @param jobFullName the full name of the job.
+     */
+    public synchronized void remove(String jobFullName)
+    {
+        List<FilenameChoiceListProvider> providers = providersByJob.remove(jobFullName);
+        if(providers == null)
+        {
+            return;
+        }
+        for(FilenameChoiceListProvider provider: providers)
+        {
+            for(String name: provider.getInvalidatingJobNameList())
+            {
+                Set<String> jobs = jobsByInvalidatingJob.get(name);
+                if(jobs == null)
+                {
+                    continue;
+                }
+                jobs.remove(jobFullName);
+                if(jobs.isEmpty())
+                {
+                    jobsByInvalidatingJob.remove(name);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Rebuild the whole index.
+     * 
+     * @param jobs all jobs.
+     */
+    @SuppressWarnings("rawtypes") // for the result of Jenkins#getAllItems(AbstractProject.class)
+    public synchronized void rebuild(Iterable<AbstractProject> jobs)
+    {
+        jobsByInvalidatingJob.clear();
+        providersByJob.clear();
+        for(AbstractProject<?,?> job: jobs)
+        {
+            update(job);
+        }
+    }
+    
+    /**
+     * @param jobFullName the full name of a job updating files.
+     * @return providers whose cached lists should be discarded when a build of the job completes. never null.
+     */
+    public synchronized List<FilenameChoiceListProvider> getInvalidatedProviders(String jobFullName)
+    {
+        Set<String> jobs = jobsByInvalidatingJob.get(jobFullName);
+        if(jobs == null)
+        {
+            return Collections.emptyList();
+        }
+        List<FilenameChoiceListProvider> ret = new ArrayList<FilenameChoiceListProvider>();
+        for(String job: jobs)
+        {
+            for(FilenameChoiceListProvider provider: providersByJob.get(job))
+            {
+                if(provider.isInvalidatedBy(jobFullName))
+                {
+                    ret.add(provider);
+                }
+            }
+        }
+        return ret;
+    }
+    
+    /**
+     * @param job
+     * @return providers of Extensible Choice parameters in the job.
+     */
+    private static List<FilenameChoiceListProvider> getProviders(AbstractProject<?,?> job)
+    {
+        List<FilenameChoiceListProvider> ret = new ArrayList<FilenameChoiceListProvider>();
+        ParametersDefinitionProperty pp = job.getProperty(ParametersDefinitionProperty.class);
+        if(pp == null)
+        {
+            return ret;
+        }
+        for(ExtensibleChoiceParameterDefinition def:
+                Util.filter(pp.getParameterDefinitions(), ExtensibleChoiceParameterDefinition.class))
+        {
+            if(def.getChoiceListProvider() instanceof FilenameChoiceListProvider)
+            {
+                ret.add((FilenameChoiceListProvider)def.getChoiceListProvider());
+            }
+        }
+        return ret;
+    }
+    
+    /**
+     * Updates the index when jobs are loaded or changed.
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener
+    {
+        @Override
+        public void onLoaded()
+        {
+            Jenkins jenkins = Jenkins.getInstance();
+            if(jenkins == null)
+            {
+                return;
+            }
+            getInstance().rebuild(jenkins.getAllItems(AbstractProject.class));
+        }
+        
+        @Override
+        public void onCreated(Item item)
+        {
+            if(item instanceof AbstractProject)
+            {
+                getInstance().update((AbstractProject<?,?>)item);
+            }
+        }
+        
+        @Override
+        public void onCopied(Item src, Item item)
+        {
+            onCreated(item);
+        }
+        
+        @Override
+        public void onUpdated(Item item)
+        {
+            onCreated(item);
+        }
+        
+        @Override
+        public void onRenamed(Item item, String oldName, String newName)
+        {
+            String parentName = item.getParent().getFullName();
+            getInstance().remove((parentName.length() > 0)?String.format("%s/%s", parentName, oldName):oldName);
+            onCreated(item);
+        }
+        
+        @Override
+        public void onDeleted(Item item)
+        {
+            getInstance().remove(item.getFullName());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+/**
+ * Discards cached lists of {@link FilenameChoiceListProvider}
+ * when builds of jobs updating the files complete.
+ * 
+ * Providers to discard are looked up in {@link FilenameChoiceListInvalidationIndex}.
+ * 
+ * @see FilenameChoiceListProvider#getInvalidatingJobNames()
+ */
+@Extension
+public class FilenameChoiceListInvalidationRunListener extends RunListener<AbstractBuild<?,?>>
+{
+    @Override
+    public void onCompleted(AbstractBuild<?,?> build, TaskListener listener)
+    {
+        if(build.getProject() == null)
+        {
+            return;
+        }
+        ChoiceListCache cache = ChoiceListCache.getInstance();
+        for(FilenameChoiceListProvider provider:
+                FilenameChoiceListInvalidationIndex.getInstance().getInvalidatedProviders(build.getProject().getFullName()))
+        {
+            cache.invalidate(provider);
+        }
+    }
+}
@@ -35,6 +35,7 @@ import java.util.Collections;
 import java.util.List;
 
 import jenkins.model.Jenkins;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListFingerprint;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.tools.ant.DirectoryScanner;
@@ -159,6 +160,53 @@ public class FilenameChoiceListProvider extends ChoiceListProvider implements Se
     }
     
     
+    private String invalidatingJobNames;
+    
+    /**
+     * Returns names of jobs whose builds update files in the directory.
+     * 
+     * When a build of those jobs completes,
+     * the cached list of files is discarded and the directory is scanned again.
+     * 
+     * @return full names of jobs, separated with commas.
+     */
+    public String getInvalidatingJobNames()
+    {
+        return invalidatingJobNames;
+    }
+    
+    /**
+     * Returns whether builds of the job update files in the directory.
+     * 
+     * @param jobFullName the full name of the job.
+     * @return true if the cached list should be discarded when a build of the job completes.
+     */
+    public boolean isInvalidatedBy(String jobFullName)
+    {
+        return jobFullName != null && getInvalidatingJobNameList().contains(jobFullName);
+    }
+    
+    /**
+     * @return full names of jobs whose builds update files in the directory. never null.
+     * @see #getInvalidatingJobNames()
+     */
+    public List<String> getInvalidatingJobNameList()
+    {
+        if(StringUtils.isBlank(getInvalidatingJobNames()))
+        {
+            return Collections.emptyList();
+        }
+        List<String> ret = new ArrayList<String>();
+        for(String name: getInvalidatingJobNames().split(","))
+        {
+            if(!StringUtils.isBlank(name))
+            {
+                ret.add(name.trim());
+            }
+        }
+        return ret;
+    }
+    
     /**
      * The constructor called when a user posts a form.
      * 
@@ -166,14 +214,29 @@ public class FilenameChoiceListProvider extends ChoiceListProvider implements Se
      * @param includePattern a pattern of file names to include to the list.
      * @param excludePattern a pattern of file names to exclude from the list.
      * @param scanType a type of files to list.
+     * @param invalidatingJobNames full names of jobs updating files, separated with commas.
      */
     @DataBoundConstructor
-    public FilenameChoiceListProvider(String baseDirPath, String includePattern, String excludePattern, ScanType scanType)
+    public FilenameChoiceListProvider(String baseDirPath, String includePattern, String excludePattern, ScanType scanType, String invalidatingJobNames)
     {
         this.baseDirPath = StringUtils.trim(baseDirPath);
         this.includePattern = StringUtils.trim(includePattern);
         this.excludePattern = StringUtils.trim(excludePattern);
         this.scanType = scanType;
+        this.invalidatingJobNames = StringUtils.trim(invalidatingJobNames);
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param baseDirPath a path to the directory to scan.
+     * @param includePattern a pattern of file names to include to the list.
+     * @param excludePattern a pattern of file names to exclude from the list.
+     * @param scanType a type of files to list.
+     */
+    public FilenameChoiceListProvider(String baseDirPath, String includePattern, String excludePattern, ScanType scanType)
+    {
+        this(baseDirPath, includePattern, excludePattern, scanType, null);
     }
     
     
@@ -256,6 +319,29 @@ public class FilenameChoiceListProvider extends ChoiceListProvider implements Se
        );
     }
     
+    /**
+     * Returns a key to cache the choices.
+     * 
+     * Providers scanning the same directory in the same way share the cache.
+     * 
+     * @return the key to cache the choices.
+     * @see jp.ikedam.jenkins.plugins.extensible_choice_parameter.ChoiceListProvider#getCacheKey()
+     */
+    @Override
+    public String getCacheKey()
+    {
+        return String.format(
+                "%s:%s",
+                getClass().getName(),
+                ChoiceListFingerprint.fromStrings(
+                        getBaseDirPath(),
+                        getIncludePattern(),
+                        getExcludePattern(),
+                        (getScanType() != null)?getScanType().name():null
+                )
+        );
+    }
+    
     /**
      * Class for view.
      */
@@ -0,0 +1,349 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.listeners.ItemListener;
+import jenkins.model.Jenkins;
+
+/**
+ * Records which parameters of which jobs use each set of choices
+ * of {@link GlobalTextareaChoiceListProvider}.
+ * 
+ * Built when Jenkins loads jobs, and updated job by job
+ * when jobs are created, updated, renamed, or deleted,
+ * so that no job configurations need to be scanned to find the users of a set of choices.
+ */
+public class GlobalChoiceListReferenceIndex
+{
+    /**
+     * A parameter using a set of choices.
+     */
+    public static class Reference implements Comparable<Reference>
+    {
+        private final String jobFullName;
+        private final String parameterName;
+        
+        /**
+         * @param jobFullName the full name of the job.
+         * @param parameterName the name of the parameter.
+         */
+        public Reference(String jobFullName, String parameterName)
+        {
+            this.jobFullName = jobFullName;
+            this.parameterName = parameterName;
+        }
+        
+        /**
+         * @return the full name of the job.
+         */
+        public String getJobFullName()
+        {
+            return jobFullName;
+        }
+        
+        /**
+         * @return the name of the parameter.
+         */
+        public String getParameterName()
+        {
+            return parameterName;
+        }
+        
+        /**
+         * Used to link the job in views.
+         * 
+         * @return the job. null if not found or not readable.
+         */
+        public AbstractProject<?,?> getJob()
+        {
+            Jenkins jenkins = Jenkins.getInstance();
+            if(jenkins == null)
+            {
+                return null;
+            }
+            return jenkins.getItemByFullName(jobFullName, AbstractProject.class);
+        }
+        
+        @Override
+        public int compareTo(Reference o)
+        {
+            int ret = jobFullName.compareTo(o.jobFullName);
+            return (ret != 0)?ret:parameterName.compareTo(o.parameterName);
+        }
+        
+        @Override
+        public boolean equals(Object obj)
+        {
+            if(!(obj instanceof Reference))
+            {
+                return false;
+            }
+            Reference o = (Reference)obj;
+            return jobFullName.equals(o.jobFullName) && parameterName.equals(o.parameterName);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return jobFullName.hashCode() * 31 + parameterName.hashCode();
+        }
+        
+        @Override
+        public String toString()
+        {
+            return String.format("%s#%s", jobFullName, parameterName);
+        }
+    }
+    
+    private static final GlobalChoiceListReferenceIndex INSTANCE = new GlobalChoiceListReferenceIndex();
+    
+    /**
+     * @return the instance shared in Jenkins.
+     */
+    public static GlobalChoiceListReferenceIndex getInstance()
+    {
+        return INSTANCE;
+    }
+    
+    /**
+     * the name of a set of choices to parameters using it.
+     */
+    private final Map<String, Set<Reference>> referencesByName = new HashMap<String, Set<Reference>>();
+    
+    /**
+     * the full name of a job to the names of sets of choices used in it.
+     */
+    private final Map<String, Set<String>> namesByJob = new HashMap<String, Set<String>>();
+    
+    /**
+     * Replace the references from a job.
+     * 
+     * @param jobFullName the full name of the job.
+     * @param namesByParameter the name of each parameter to the name of the set of choices it uses.
+     */
+    public synchronized void update(String jobFullName, Map<String, String> namesByParameter)
+    {
+        remove(jobFullName);
+        if(namesByParameter.isEmpty())
+        {
+            return;
+        }
+        Set<String> names = new HashSet<String>();
+        for(Map.Entry<String, String> e: namesByParameter.entrySet())
+        {
+            Set<Reference> references = referencesByName.get(e.getValue());
+            if(references == null)
+            {
+                references = new HashSet<Reference>();
+                referencesByName.put(e.getValue(), references);
+            }
+            references.add(new Reference(jobFullName, e.getKey()));
+            names.add(e.getValue());
+        }
+        namesByJob.put(jobFullName, names);
+    }
+    
+    /**
+     * Replace the references from a job with its current configuration.
+     * 
+     * @param job
+     */
+    public void update(AbstractProject<?,?> job)
+    {
+        update(job.getFullName(), getNamesByParameter(job));
+    }
+    
+    /**
+     * Remove the references from a job.
+     * 
+     * @param jobFullName the full name of the job.
+     */
+    public synchronized void remove(String jobFullName)
+    {
+        Set<String> names = namesByJob.remove(jobFullName);
+        if(names == null)
+        {
+            return;
+        }
+        for(String name: names)
+        {
+            Set<Reference> references = referencesByName.get(name);
+            if(references == null)
+            {
+                continue;
+            }
+            for(Reference reference: new ArrayList<Reference>(references))
+            {
+                if(reference.getJobFullName().equals(jobFullName))
+                {
+                    references.remove(reference);
+                }
+            }
+            if(references.isEmpty())
+            {
+                referencesByName.remove(name);
+            }
+        }
+    }
+    
+    /**
+     * Rebuild the whole index.
+     * 
+     * @param jobs all jobs.
+     */
+    @SuppressWarnings("rawtypes") // for the result of Jenkins#getAllItems(AbstractProject.class)
+    public synchronized void rebuild(Iterable<AbstractProject> jobs)
+    {
+        referencesByName.clear();
+        namesByJob.clear();
+        for(AbstractProject<?,?> job: jobs)
+        {
+            update(job);
+        }
+    }
+    
+    /**
+     * @param name the name of a set of choices.
+     * @return parameters using the set of choices, sorted by jobs. never null.
+     */
+    public synchronized List<Reference> getReferences(String name)
+    {
+        Set<Reference> references = referencesByName.get(name);
+        if(references == null)
+        {
+            return Collections.emptyList();
+        }
+        return new ArrayList<Reference>(new TreeSet<Reference>(references));
+    }
+    
+    /**
+     * Notify parameters using a set of choices that it changed.
+     * 
+     * Only the parameters using it are notified.
+     * 
+     * @param name the name of the changed set of choices.
+     * @see ExtensibleChoiceParameterDefinition#getWatchKey(String, String)
+     */
+    public void notifyChanged(String name)
+    {
+        ChoiceListChangeNotifier notifier = ChoiceListCache.getInstance().getNotifier();
+        for(Reference reference: getReferences(name))
+        {
+            notifier.notifyChanged(ExtensibleChoiceParameterDefinition.getWatchKey(
+                    reference.getJobFullName(),
+                    reference.getParameterName()
+            ));
+        }
+    }
+    
+    /**
+     * @param job
+     * @return the name of each parameter using {@link GlobalTextareaChoiceListProvider} to the name of the set of choices.
+     */
+    private static Map<String, String> getNamesByParameter(AbstractProject<?,?> job)
+    {
+        Map<String, String> ret = new HashMap<String, String>();
+        ParametersDefinitionProperty pp = job.getProperty(ParametersDefinitionProperty.class);
+        if(pp == null)
+        {
+            return ret;
+        }
+        for(ExtensibleChoiceParameterDefinition def:
+                Util.filter(pp.getParameterDefinitions(), ExtensibleChoiceParameterDefinition.class))
+        {
+            if(def.getChoiceListProvider() instanceof GlobalTextareaChoiceListProvider)
+            {
+                ret.put(def.getName(), ((GlobalTextareaChoiceListProvider)def.getChoiceListProvider()).getName());
+            }
+        }
+        return ret;
+    }
+    
+    /**
+     * Updates the index when jobs are loaded or changed.
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener
+    {
+        @Override
+        public void onLoaded()
+        {
+            Jenkins jenkins = Jenkins.getInstance();
+            if(jenkins == null)
+            {
+                return;
+            }
+            getInstance().rebuild(jenkins.getAllItems(AbstractProject.class));
+        }
+        
+        @Override
+        public void onCreated(Item item)
+        {
+            if(item instanceof AbstractProject)
+            {
+                getInstance().update((AbstractProject<?,?>)item);
+            }
+        }
+        
+        @Override
+        public void onCopied(Item src, Item item)
+        {
+            onCreated(item);
+        }
+        
+        @Override
+        public void onUpdated(Item item)
+        {
+            onCreated(item);
+        }
+        
+        @Override
+        public void onRenamed(Item item, String oldName, String newName)
+        {
+            String parentName = item.getParent().getFullName();
+            getInstance().remove((parentName.length() > 0)?String.format("%s/%s", parentName, oldName):oldName);
+            onCreated(item);
+        }
+        
+        @Override
+        public void onDeleted(Item item)
+        {
+            getInstance().remove(item.getFullName());
+        }
+    }
+}
@@ -46,7 +46,7 @@ import org.kohsuke.stapler.QueryParameter;
  * Holds a name and a list of choices.
  * Added in the System Configuration page.
  */
-public class GlobalTextareaChoiceListEntry extends AbstractDescribableImpl<GlobalTextareaChoiceListEntry> implements Serializable
+public class GlobalTextareaChoiceListEntry extends AbstractDescribableImpl<GlobalTextareaChoiceListEntry> implements Serializable, Cloneable
 {
     private static final long serialVersionUID = 1L;
     
@@ -156,7 +156,68 @@ public class GlobalTextareaChoiceListEntry extends AbstractDescribableImpl<Globa
      */
     protected void setChoiceList(List<String> choiceList)
     {
-        this.choiceList = choiceList;
+        // lists with the same contents are shared, and large ones may be compacted.
+        this.choiceList = ExtensibleChoiceParameterDefinition.internChoiceList(choiceList);
+        this.snapshot = null;
+    }
+    
+    /**
+     * Share the list of choices loaded from the global configuration.
+     * 
+     * @return this object.
+     */
+    private Object readResolve()
+    {
+        setChoiceList(choiceList);
+        return this;
+    }
+    
+    /**
+     * Write a shared or compact list as a plain list,
+     * not to change the format of the global configuration.
+     * 
+     * @return the object to write instead of this.
+     */
+    private Object writeReplace()
+    {
+        if(choiceList == null || choiceList.getClass() == ArrayList.class)
+        {
+            return this;
+        }
+        try
+        {
+            GlobalTextareaChoiceListEntry replaced = (GlobalTextareaChoiceListEntry)clone();
+            replaced.choiceList = new ArrayList<String>(choiceList);
+            return replaced;
+        }
+        catch(CloneNotSupportedException e)
+        {
+            // never happens for this is Cloneable.
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private transient volatile ChoiceListSnapshot snapshot = null;
+    
+    /**
+     * Returns the snapshot of the choices, created at the first call.
+     * 
+     * Recreated only when the choices are changed.
+     * The fingerprint of the snapshot is used to compare entries.
+     * 
+     * @return the snapshot of the choices.
+     */
+    public ChoiceListSnapshot getChoiceListSnapshot()
+    {
+        ChoiceListSnapshot s = snapshot;
+        if(s == null)
+        {
+            // created multiple times in a race, but the results are same.
+            // the list is shared, and never modified.
+            s = ChoiceListSnapshot.fromUnmodifiableList(getChoiceList());
+            snapshot = s;
+        }
+        return s;
     }
     
     private boolean allowAddEditedValue;
@@ -186,7 +247,7 @@ public class GlobalTextareaChoiceListEntry extends AbstractDescribableImpl<Globa
     public GlobalTextareaChoiceListEntry(String name, String choiceListText, boolean allowAddEditedValue)
     {
         this.name = (name != null)?name.trim():"";
-        this.choiceList = TextareaStringListUtility.stringListFromTextarea(choiceListText);
+        setChoiceList(TextareaStringListUtility.stringListFromTextarea(choiceListText));
         this.allowAddEditedValue = allowAddEditedValue;
     }
     
@@ -252,13 +313,31 @@ public class GlobalTextareaChoiceListEntry extends AbstractDescribableImpl<Globa
             {
                 return false;
             }
-        }else if(!choiceList.equals(entry.choiceList)){
+        }else if(entry.choiceList == null){
+            return false;
+        }else if(!getChoiceListSnapshot().hasSameContents(entry.getChoiceListSnapshot())){
+            // compare fingerprints, not elements.
             return false;
         }
         
         return true;
     }
     
+    /**
+     * @return
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode()
+    {
+        int hash = (name != null)?name.hashCode():0;
+        if(choiceList != null)
+        {
+            hash = hash * 31 + getChoiceListSnapshot().getFingerprint().hashCode();
+        }
+        return hash;
+    }
+    
     /**
      * @return
      * @see java.lang.Object#toString()
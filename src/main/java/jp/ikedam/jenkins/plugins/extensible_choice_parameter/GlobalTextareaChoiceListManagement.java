@@ -0,0 +1,305 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * A page to manage sets of choices of {@link GlobalTextareaChoiceListProvider}.
+ * 
+ * Available at JENKINS_URL/extensible-choice-lists/, and linked from Manage Jenkins.
+ * Sets of choices are listed page by page, and edited one by one,
+ * so that a large number of them don't make the System Configuration page heavy.
+ * 
+ * The following files are used (put in main/resource directory in the source tree).
+ * <dl>
+ *     <dt>index.jelly</dt>
+ *         <dd>Lists sets of choices, with a search box.</dd>
+ *     <dt>edit.jelly</dt>
+ *         <dd>
+ *             Edits a set of choices specified with the "name" parameter, or a new one.
+ *             Also lists jobs using it.
+ *         </dd>
+ * </dl>
+ */
+@Extension
+public class GlobalTextareaChoiceListManagement extends ManagementLink
+{
+    /**
+     * The path of this page in the URL.
+     */
+    public static final String URL_NAME = "extensible-choice-lists";
+    
+    /**
+     * Number of sets of choices displayed in a page.
+     */
+    public static final int PAGE_SIZE = 50;
+    
+    /**
+     * @return the icon shown in Manage Jenkins.
+     * @see hudson.model.ManagementLink#getIconFileName()
+     */
+    @Override
+    public String getIconFileName()
+    {
+        return "notepad.png";
+    }
+    
+    /**
+     * @return the name shown in Manage Jenkins.
+     * @see hudson.model.Action#getDisplayName()
+     */
+    @Override
+    public String getDisplayName()
+    {
+        return Messages.GlobalTextareaChoiceListManagement_DisplayName();
+    }
+    
+    /**
+     * @return the description shown in Manage Jenkins.
+     * @see hudson.model.ManagementLink#getDescription()
+     */
+    @Override
+    public String getDescription()
+    {
+        return Messages.GlobalTextareaChoiceListManagement_Description();
+    }
+    
+    /**
+     * @return the path of this page in the URL.
+     * @see hudson.model.ManagementLink#getUrlName()
+     */
+    @Override
+    public String getUrlName()
+    {
+        return URL_NAME;
+    }
+    
+    /**
+     * @return the descriptor holding sets of choices.
+     */
+    protected GlobalTextareaChoiceListProvider.DescriptorImpl getProviderDescriptor()
+    {
+        return Jenkins.getInstance().getDescriptorByType(GlobalTextareaChoiceListProvider.DescriptorImpl.class);
+    }
+    
+    /**
+     * Used for the form in edit.jelly.
+     * 
+     * @return the descriptor of a set of choices.
+     */
+    public GlobalTextareaChoiceListEntry.DescriptorImpl getEntryDescriptor()
+    {
+        return Jenkins.getInstance().getDescriptorByType(GlobalTextareaChoiceListEntry.DescriptorImpl.class);
+    }
+    
+    /**
+     * Retrieve a set of choices by the name.
+     * 
+     * @param name
+     * @return the set of choices. null if not found.
+     */
+    public GlobalTextareaChoiceListEntry findChoiceListEntry(String name)
+    {
+        if(StringUtils.isEmpty(name))
+        {
+            return null;
+        }
+        return getProviderDescriptor().getChoiceListEntry(name);
+    }
+    
+    /**
+     * @param name the name of a set of choices.
+     * @return parameters using the set of choices.
+     * @see GlobalChoiceListReferenceIndex
+     */
+    public List<GlobalChoiceListReferenceIndex.Reference> getReferences(String name)
+    {
+        return GlobalChoiceListReferenceIndex.getInstance().getReferences(name);
+    }
+    
+    /**
+     * Search sets of choices whose names contain the query (case insensitive).
+     * 
+     * @param query null or empty for all sets of choices.
+     * @return the matched sets of choices. never null.
+     */
+    public List<GlobalTextareaChoiceListEntry> search(String query)
+    {
+        List<GlobalTextareaChoiceListEntry> entryList = getProviderDescriptor().getChoiceListEntryList();
+        if(entryList == null)
+        {
+            return new ArrayList<GlobalTextareaChoiceListEntry>(0);
+        }
+        if(StringUtils.isBlank(query))
+        {
+            return entryList;
+        }
+        String key = query.trim().toLowerCase(Locale.ENGLISH);
+        List<GlobalTextareaChoiceListEntry> ret = new ArrayList<GlobalTextareaChoiceListEntry>();
+        for(GlobalTextareaChoiceListEntry e: entryList)
+        {
+            if(e.getName().toLowerCase(Locale.ENGLISH).contains(key))
+            {
+                ret.add(e);
+            }
+        }
+        return ret;
+    }
+    
+    /**
+     * @param entryList
+     * @return the number of pages to display the sets of choices. at least 1.
+     */
+    public int getPageCount(List<GlobalTextareaChoiceListEntry> entryList)
+    {
+        return Math.max(1, (entryList.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+    
+    /**
+     * Parse the page number specified in the request.
+     * 
+     * @param page the page number starting with 1.
+     * @param entryList
+     * @return the page number in the range. 1 for invalid values.
+     */
+    public int toPageNumber(String page, List<GlobalTextareaChoiceListEntry> entryList)
+    {
+        int ret = 1;
+        try
+        {
+            ret = Integer.parseInt(StringUtils.trim(page));
+        }
+        catch(NumberFormatException e)
+        {
+            return 1;
+        }
+        return Math.max(1, Math.min(ret, getPageCount(entryList)));
+    }
+    
+    /**
+     * @param entryList
+     * @param page the page number starting with 1.
+     * @return sets of choices displayed in the page.
+     */
+    public List<GlobalTextareaChoiceListEntry> getPage(List<GlobalTextareaChoiceListEntry> entryList, int page)
+    {
+        int from = Math.min(Math.max(0, (page - 1) * PAGE_SIZE), entryList.size());
+        int to = Math.min(from + PAGE_SIZE, entryList.size());
+        return entryList.subList(from, to);
+    }
+    
+    /**
+     * Store a set of choices submitted from edit.jelly.
+     * 
+     * Only the submitted set of choices is replaced.
+     * Sets of choices used by jobs cannot be renamed,
+     * as the jobs would lose their choices.
+     * 
+     * @param req
+     * @param rsp
+     * @throws IOException
+     * @throws ServletException
+     */
+    public void doSubmit(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException
+    {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        if(!"POST".equals(req.getMethod()))
+        {
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "POST is required");
+            return;
+        }
+        
+        JSONObject formData = req.getSubmittedForm();
+        String originalName = StringUtils.trimToNull(formData.optString("originalName", null));
+        GlobalTextareaChoiceListEntry entry = req.bindJSON(GlobalTextareaChoiceListEntry.class, formData);
+        FormValidation v = getEntryDescriptor().doCheckName(entry.getName());
+        if(v.kind == FormValidation.Kind.ERROR)
+        {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, v.getMessage());
+            return;
+        }
+        if(originalName != null && !originalName.equals(entry.getName()))
+        {
+            List<GlobalChoiceListReferenceIndex.Reference> references = getReferences(originalName);
+            if(!references.isEmpty())
+            {
+                rsp.sendError(
+                        HttpServletResponse.SC_BAD_REQUEST,
+                        Messages.GlobalTextareaChoiceListManagement_Name_referenced(originalName, StringUtils.join(references, ", "))
+                );
+                return;
+            }
+        }
+        if(!getProviderDescriptor().putChoiceListEntry(originalName, entry))
+        {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, Messages.GlobalTextareaChoiceListManagement_Name_duplicated(entry.getName()));
+            return;
+        }
+        
+        rsp.sendRedirect(".");
+    }
+    
+    /**
+     * Remove a set of choices.
+     * 
+     * @param req
+     * @param rsp
+     * @param name the name of the set of choices to remove.
+     * @throws IOException
+     */
+    public void doDelete(StaplerRequest req, StaplerResponse rsp, @QueryParameter String name) throws IOException
+    {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        if(!"POST".equals(req.getMethod()))
+        {
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "POST is required");
+            return;
+        }
+        if(!getProviderDescriptor().removeChoiceListEntry(name))
+        {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, String.format("No set of choices named %s", name));
+            return;
+        }
+        
+        rsp.sendRedirect(".");
+    }
+}
@@ -23,6 +23,7 @@
  */
 package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.List;
 import java.util.ArrayList;
@@ -66,8 +67,8 @@ public class GlobalTextareaChoiceListProvider extends AddEditedChoiceListProvide
      *     <dt>global.jelly</dt>
      *         <dd>
      *              Shown as a part of the System Configuration page.
-     *              Call config.jelly of GlobalTextareaChoiceListEntry,
-     *              for each set of choices.
+     *              Only links to {@link GlobalTextareaChoiceListManagement},
+     *              where sets of choices are edited one by one.
      *         </dd>
      *     </dt>
      * </dl>
@@ -194,6 +195,92 @@ public class GlobalTextareaChoiceListProvider extends AddEditedChoiceListProvide
            return (e != null)?e.getChoiceList():new ArrayList<String>();
         }
         
+        /**
+         * Replace a set of choices, or add it if not exists.
+         * 
+         * Other sets of choices are left as they are.
+         * Nothing is changed if the new set is not valid.
+         * 
+         * @param originalName the name of the set to replace. null to add a new one.
+         * @param entry the new set of choices.
+         * @return false if the new set of choices is not valid,
+         *         or another set of choices already has the name of the new one.
+         * @throws IOException failed to save the configuration.
+         */
+        public synchronized boolean putChoiceListEntry(String originalName, GlobalTextareaChoiceListEntry entry) throws IOException
+        {
+            if(entry == null || !entry.isValid())
+            {
+                return false;
+            }
+            
+            List<GlobalTextareaChoiceListEntry> newList = new ArrayList<GlobalTextareaChoiceListEntry>();
+            if(getChoiceListEntryList() != null)
+            {
+                newList.addAll(getChoiceListEntryList());
+            }
+            
+            int index = -1;
+            for(int i = 0; i < newList.size(); ++i)
+            {
+                if(newList.get(i).getName().equals(originalName))
+                {
+                    index = i;
+                }
+                else if(newList.get(i).getName().equals(entry.getName()))
+                {
+                    // tested in this lock not to add the same name at the same time.
+                    return false;
+                }
+            }
+            if(index >= 0)
+            {
+                newList.set(index, entry);
+            }
+            else
+            {
+                newList.add(entry);
+            }
+            
+            // replace the whole list not to affect threads reading the current one.
+            setChoiceListEntryList(newList);
+            save();
+            
+            GlobalChoiceListReferenceIndex.getInstance().notifyChanged(entry.getName());
+            if(originalName != null && !originalName.equals(entry.getName()))
+            {
+                GlobalChoiceListReferenceIndex.getInstance().notifyChanged(originalName);
+            }
+            return true;
+        }
+        
+        /**
+         * Remove a set of choices.
+         * 
+         * @param name the name of the set to remove.
+         * @return false if no set of choices has the name.
+         * @throws IOException failed to save the configuration.
+         */
+        public synchronized boolean removeChoiceListEntry(String name) throws IOException
+        {
+            if(getChoiceListEntry(name) == null)
+            {
+                return false;
+            }
+            List<GlobalTextareaChoiceListEntry> newList = new ArrayList<GlobalTextareaChoiceListEntry>();
+            for(GlobalTextareaChoiceListEntry e: getChoiceListEntryList())
+            {
+                if(!e.getName().equals(name))
+                {
+                    newList.add(e);
+                }
+            }
+            setChoiceListEntryList(newList);
+            save();
+            GlobalChoiceListReferenceIndex.getInstance().notifyChanged(name);
+            return true;
+        }
+        
         /**
          * the display name shown in the dropdown to select a choice provider.
          * 
@@ -209,6 +296,10 @@ public class GlobalTextareaChoiceListProvider extends AddEditedChoiceListProvide
         /**
          * Store the parameters specified in the System Configuration page.
          * 
+         * Sets of choices are no longer submitted from the System Configuration page,
+         * as they are edited in {@link GlobalTextareaChoiceListManagement}.
+         * They are replaced only when explicitly submitted.
+         * 
          * @param req
          * @param formData
          * @return whether succeeded to store. 
@@ -218,6 +309,10 @@ public class GlobalTextareaChoiceListProvider extends AddEditedChoiceListProvide
         @Override
         public boolean configure(StaplerRequest req, JSONObject formData) throws FormException
         {
+            if(!formData.has("choiceListEntryList"))
+            {
+                return true;
+            }
             setChoiceListEntryList(req.bindJSONToList(GlobalTextareaChoiceListEntry.class, formData.get("choiceListEntryList")));
             
             save();
@@ -264,6 +359,19 @@ public class GlobalTextareaChoiceListProvider extends AddEditedChoiceListProvide
         return ((DescriptorImpl)getDescriptor()).getChoiceList(getName());
     }
     
+    /**
+     * Returns the snapshot held by the set of choices.
+     * 
+     * @return the snapshot of the choices.
+     * @see jp.ikedam.jenkins.plugins.extensible_choice_parameter.ChoiceListProvider#getChoiceListSnapshot()
+     */
+    @Override
+    public ChoiceListSnapshot getChoiceListSnapshot()
+    {
+        GlobalTextareaChoiceListEntry e = ((DescriptorImpl)getDescriptor()).getChoiceListEntry(getName());
+        return (e != null)?e.getChoiceListSnapshot():new ChoiceListSnapshot(null);
+    }
+    
     /**
      * Constructor instantiating with parameters in the configuration page.
      * 
@@ -326,5 +434,7 @@ public class GlobalTextareaChoiceListProvider extends AddEditedChoiceListProvide
         {
             LOGGER.log(Level.WARNING, "Failed to add choice value", e);
         }
+        
+        GlobalChoiceListReferenceIndex.getInstance().notifyChanged(getName());
     }
 }
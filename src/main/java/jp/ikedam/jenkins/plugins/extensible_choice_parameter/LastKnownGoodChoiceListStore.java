@@ -0,0 +1,233 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListFingerprint;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.MappedStringList;
+
+/**
+ * Stores the last choices successfully retrieved from providers,
+ * so that they can be used even after Jenkins restarts.
+ * 
+ * Each list is stored in JENKINS_HOME/extensible-choice-parameter/last-known-good/,
+ * named with the fingerprint of the cache key of the provider.
+ * Lists stored in memory-mapped files with {@link MappedChoiceListStore}
+ * are recorded only with their fingerprints, and are opened without parsing.
+ */
+public class LastKnownGoodChoiceListStore
+{
+    private static final Logger LOGGER = Logger.getLogger(LastKnownGoodChoiceListStore.class.getName());
+    
+    /**
+     * The contents of a stored file.
+     */
+    public static class Record
+    {
+        private String cacheKey;
+        private List<String> choiceList;
+        private String mappedFingerprint;
+        private long createdAt;
+        
+        /**
+         * @param cacheKey the cache key of the provider.
+         * @param snapshot choices retrieved from the provider.
+         */
+        public Record(String cacheKey, ChoiceListSnapshot snapshot)
+        {
+            this.cacheKey = cacheKey;
+            if(snapshot.getChoiceList() instanceof MappedStringList)
+            {
+                this.choiceList = null;
+                this.mappedFingerprint = snapshot.getFingerprint().toString();
+            }
+            else
+            {
+                this.choiceList = new ArrayList<String>(snapshot.getChoiceList());
+                this.mappedFingerprint = null;
+            }
+            this.createdAt = snapshot.getCreatedAt();
+        }
+        
+        /**
+         * @return the cache key of the provider.
+         */
+        public String getCacheKey()
+        {
+            return cacheKey;
+        }
+        
+        /**
+         * @return the fingerprint of choices stored in a memory-mapped file. null if stored in this record.
+         */
+        public String getMappedFingerprint()
+        {
+            return mappedFingerprint;
+        }
+        
+        /**
+         * @return the snapshot of the stored choices.
+         */
+        public ChoiceListSnapshot toSnapshot()
+        {
+            return new ChoiceListSnapshot(choiceList, createdAt);
+        }
+        
+        /**
+         * @param mappedList choices read from the memory-mapped file.
+         * @return the snapshot of the stored choices.
+         */
+        public ChoiceListSnapshot toSnapshot(MappedStringList mappedList)
+        {
+            return new ChoiceListSnapshot(
+                    mappedList,
+                    createdAt,
+                    ChoiceListFingerprint.fromString(mappedFingerprint)
+            );
+        }
+    }
+    
+    private final MappedChoiceListStore mappedStore;
+    
+    /**
+     * Constructor.
+     */
+    public LastKnownGoodChoiceListStore()
+    {
+        this(new MappedChoiceListStore());
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param mappedStore the store to open lists stored in memory-mapped files.
+     */
+    public LastKnownGoodChoiceListStore(MappedChoiceListStore mappedStore)
+    {
+        this.mappedStore = mappedStore;
+    }
+    
+    /**
+     * Returns the directory to store lists.
+     * 
+     * @return the directory. null if Jenkins is not running.
+     */
+    protected File getStoreDir()
+    {
+        Jenkins jenkins = Jenkins.getInstance();
+        if(jenkins == null)
+        {
+            return null;
+        }
+        return new File(new File(jenkins.getRootDir(), "extensible-choice-parameter"), "last-known-good");
+    }
+    
+    /**
+     * @param cacheKey
+     * @return the file to store the list for the cache key. null if Jenkins is not running.
+     */
+    protected XmlFile getFile(String cacheKey)
+    {
+        File dir = getStoreDir();
+        if(dir == null)
+        {
+            return null;
+        }
+        return new XmlFile(new File(dir, String.format("%s.xml", ChoiceListFingerprint.fromStrings(cacheKey))));
+    }
+    
+    /**
+     * Store a list.
+     * 
+     * Failures are only logged.
+     * 
+     * @param cacheKey the cache key of the provider.
+     * @param snapshot choices retrieved from the provider.
+     */
+    public void save(String cacheKey, ChoiceListSnapshot snapshot)
+    {
+        XmlFile file = getFile(cacheKey);
+        if(file == null)
+        {
+            return;
+        }
+        try
+        {
+            file.write(new Record(cacheKey, snapshot));
+        }
+        catch(IOException e)
+        {
+            LOGGER.log(Level.WARNING, String.format("Failed to save the last known good choices to %s", file), e);
+        }
+    }
+    
+    /**
+     * Load a list.
+     * 
+     * @param cacheKey the cache key of the provider.
+     * @return the stored choices. null if not stored or failed to load.
+     */
+    public ChoiceListSnapshot load(String cacheKey)
+    {
+        XmlFile file = getFile(cacheKey);
+        if(file == null || !file.exists())
+        {
+            return null;
+        }
+        try
+        {
+            Object o = file.read();
+            if(!(o instanceof Record) || !cacheKey.equals(((Record)o).getCacheKey()))
+            {
+                LOGGER.warning(String.format("%s is not the last known good choices for %s", file, cacheKey));
+                return null;
+            }
+            Record record = (Record)o;
+            if(record.getMappedFingerprint() != null)
+            {
+                MappedStringList mappedList = mappedStore.open(cacheKey, record.getMappedFingerprint());
+                if(mappedList == null)
+                {
+                    LOGGER.warning(String.format("The last known good choices for %s are lost", cacheKey));
+                    return null;
+                }
+                return record.toSnapshot(mappedList);
+            }
+            return record.toSnapshot();
+        }
+        catch(IOException e)
+        {
+            LOGGER.log(Level.WARNING, String.format("Failed to load the last known good choices from %s", file), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListFingerprint;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.MappedStringList;
+
+/**
+ * Stores large lists of choices in memory-mapped files,
+ * so that they are not held in the heap of Jenkins.
+ * 
+ * Each list is stored in JENKINS_HOME/extensible-choice-parameter/mapped/,
+ * named with the fingerprint of the cache key of the provider
+ * and the fingerprint of the contents.
+ * Files are reused as long as the contents are same,
+ * and ones with old contents are removed when a new one is written,
+ * together with indexes stored next to them.
+ * 
+ * @see MappedStringList
+ */
+public class MappedChoiceListStore
+{
+    private static final Logger LOGGER = Logger.getLogger(MappedChoiceListStore.class.getName());
+    
+    private static final String SUFFIX = ".list";
+    
+    /**
+     * Returns the directory to store lists.
+     * 
+     * @return the directory. null if Jenkins is not running.
+     */
+    protected File getStoreDir()
+    {
+        Jenkins jenkins = Jenkins.getInstance();
+        if(jenkins == null)
+        {
+            return null;
+        }
+        return new File(new File(jenkins.getRootDir(), "extensible-choice-parameter"), "mapped");
+    }
+    
+    private static String getPrefix(String cacheKey)
+    {
+        return String.format("%s-", ChoiceListFingerprint.fromStrings(cacheKey));
+    }
+    
+    /**
+     * @param cacheKey the cache key of the provider.
+     * @param fingerprint the fingerprint of the contents.
+     * @return the file to store the list. null if Jenkins is not running.
+     */
+    protected File getFile(String cacheKey, String fingerprint)
+    {
+        File dir = getStoreDir();
+        if(dir == null)
+        {
+            return null;
+        }
+        return new File(dir, String.format("%s%s%s", getPrefix(cacheKey), fingerprint, SUFFIX));
+    }
+    
+    /**
+     * Store a list in a file, and returns the snapshot reading the file.
+     * 
+     * Lists already stored are not written again.
+     * Failures are only logged, and the passed snapshot is returned.
+     * 
+     * @param cacheKey the cache key of the provider.
+     * @param snapshot choices retrieved from the provider.
+     * @return the snapshot reading the file.
+     */
+    public ChoiceListSnapshot map(String cacheKey, ChoiceListSnapshot snapshot)
+    {
+        if(snapshot.getChoiceList() instanceof MappedStringList)
+        {
+            return snapshot;
+        }
+        String fingerprint = snapshot.getFingerprint().toString();
+        File file = getFile(cacheKey, fingerprint);
+        if(file == null)
+        {
+            return snapshot;
+        }
+        try
+        {
+            if(!file.exists())
+            {
+                MappedStringList.write(file, snapshot.getChoiceList());
+                removeOthers(cacheKey, file);
+            }
+            return new ChoiceListSnapshot(
+                    MappedStringList.open(file),
+                    snapshot.getCreatedAt(),
+                    snapshot.getFingerprint()
+            );
+        }
+        catch(IOException e)
+        {
+            LOGGER.log(Level.WARNING, String.format("Failed to store choices to %s", file), e);
+            return snapshot;
+        }
+    }
+    
+    /**
+     * Open a stored list.
+     * 
+     * @param cacheKey the cache key of the provider.
+     * @param fingerprint the fingerprint of the contents.
+     * @return the list. null if not stored or failed to open.
+     */
+    public MappedStringList open(String cacheKey, String fingerprint)
+    {
+        if(ChoiceListFingerprint.fromString(fingerprint) == null)
+        {
+            return null;
+        }
+        File file = getFile(cacheKey, fingerprint);
+        if(file == null || !file.exists())
+        {
+            return null;
+        }
+        try
+        {
+            return MappedStringList.open(file);
+        }
+        catch(IOException e)
+        {
+            LOGGER.log(Level.WARNING, String.format("Failed to open choices stored in %s", file), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Remove files for the provider other than the current one.
+     * 
+     * Indexes of the current one are kept,
+     * as they are named after it.
+     * 
+     * Files still mapped cannot be removed in some platforms.
+     * They are tried again when the next file is written.
+     * 
+     * @param cacheKey the cache key of the provider.
+     * @param current the file to keep.
+     */
+    private void removeOthers(String cacheKey, File current)
+    {
+        File[] files = current.getParentFile().listFiles();
+        if(files == null)
+        {
+            return;
+        }
+        String prefix = getPrefix(cacheKey);
+        for(File file: files)
+        {
+            if(file.getName().startsWith(prefix) && !file.getName().startsWith(current.getName())
+                    && !file.delete())
+            {
+                LOGGER.fine(String.format("Failed to remove %s. Will retry later.", file));
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Retains choices shown in build pages for a while,
+ * so that submitted values can be validated against the choices the user saw.
+ * 
+ * Choices are identified with the parameter shown and a token
+ * (the fingerprint of the choices), which is embedded in the page.
+ * Entries expire after {@link #TTL} milliseconds,
+ * and the least recently used ones are dropped when the number of retained lists exceeds {@link #MAX_ENTRIES}
+ * or when the total number of retained choices exceeds {@link #MAX_RETAINED_CHOICES}.
+ * Parameters are held weakly, and entries of parameters no longer used
+ * (e.g. replaced by reconfiguring the job) are dropped without waiting for them to expire.
+ * Callers should fall back to retrieving choices again when an entry is not found.
+ */
+public class RenderedChoiceListStore
+{
+    /**
+     * Maximum number of lists of choices to retain.
+     * Each list shown for a parameter counts as one, whatever its size is.
+     */
+    public static final int MAX_ENTRIES = 256;
+    
+    /**
+     * Maximum number of choices to retain in total.
+     * Lists larger than this are not retained.
+     */
+    public static final long MAX_RETAINED_CHOICES = 1000000L;
+    
+    /**
+     * Time to retain choices after shown last, in milliseconds.
+     */
+    public static final long TTL = 60 * 60 * 1000L;
+    
+    private static final RenderedChoiceListStore INSTANCE = new RenderedChoiceListStore();
+    
+    /**
+     * @return the instance shared in Jenkins.
+     */
+    public static RenderedChoiceListStore getInstance()
+    {
+        return INSTANCE;
+    }
+    
+    /**
+     * Identifies choices shown for a parameter.
+     * 
+     * Parameters are compared by identity,
+     * so tokens are not valid any more after the job is reconfigured.
+     * Parameters are referred weakly, not to keep them for {@link #TTL}.
+     */
+    private static class Key extends WeakReference<Object>
+    {
+        private final String token;
+        private final int hash;
+        
+        public Key(Object owner, String token, ReferenceQueue<Object> queue)
+        {
+            super(owner, queue);
+            this.token = token;
+            this.hash = System.identityHashCode(owner) * 31 + token.hashCode();
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object obj)
+        {
+            if(this == obj)
+            {
+                // also for keys whose parameters are collected.
+                return true;
+            }
+            if(!(obj instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key)obj;
+            Object owner = get();
+            return owner != null && owner == other.get() && token.equals(other.token);
+        }
+    }
+    
+    private static class RetainedEntry
+    {
+        private final ChoiceListSnapshot snapshot;
+        private long expiresAt;
+        
+        public RetainedEntry(ChoiceListSnapshot snapshot, long expiresAt)
+        {
+            this.snapshot = snapshot;
+            this.expiresAt = expiresAt;
+        }
+    }
+    
+    private final Map<Key, RetainedEntry> entries = new LinkedHashMap<Key, RetainedEntry>(16, 0.75f, true);
+    
+    /**
+     * Keys whose parameters are collected.
+     */
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+    
+    private long retainedChoices = 0;
+    
+    /**
+     * Retain choices shown for a parameter.
+     * 
+     * @param owner the parameter showing the choices.
+     * @param snapshot the choices shown.
+     * @param now the current time in milliseconds.
+     * @return the token to embed in the page.
+     */
+    public String retain(Object owner, ChoiceListSnapshot snapshot, long now)
+    {
+        String token = snapshot.getFingerprint().toString();
+        Key key = new Key(owner, token, collected);
+        synchronized(entries)
+        {
+            removeCollectedEntries();
+            RetainedEntry entry = entries.get(key);
+            if(entry != null)
+            {
+                entry.expiresAt = now + TTL;
+            }
+            else if(snapshot.getChoiceList().size() <= MAX_RETAINED_CHOICES)
+            {
+                entries.put(key, new RetainedEntry(snapshot, now + TTL));
+                retainedChoices += snapshot.getChoiceList().size();
+                removeEldestEntries();
+            }
+        }
+        return token;
+    }
+    
+    /**
+     * Drop entries whose parameters are collected.
+     * 
+     * Must be called in the lock of entries.
+     */
+    private void removeCollectedEntries()
+    {
+        Reference<?> ref;
+        while((ref = collected.poll()) != null)
+        {
+            RetainedEntry entry = entries.remove(ref);
+            if(entry != null)
+            {
+                retainedChoices -= entry.snapshot.getChoiceList().size();
+            }
+        }
+    }
+    
+    /**
+     * Drop the least recently used entries while exceeding the limits.
+     * 
+     * Must be called in the lock of entries.
+     */
+    private void removeEldestEntries()
+    {
+        Iterator<RetainedEntry> it = entries.values().iterator();
+        while(it.hasNext() && (entries.size() > MAX_ENTRIES || retainedChoices > MAX_RETAINED_CHOICES))
+        {
+            retainedChoices -= it.next().snapshot.getChoiceList().size();
+            it.remove();
+        }
+    }
+    
+    /**
+     * @return the total number of retained choices.
+     */
+    public long getRetainedChoices()
+    {
+        synchronized(entries)
+        {
+            removeCollectedEntries();
+            return retainedChoices;
+        }
+    }
+    
+    /**
+     * Returns choices shown for a parameter.
+     * 
+     * @param owner the parameter showing the choices.
+     * @param token the token embedded in the page. may be null.
+     * @param now the current time in milliseconds.
+     * @return the choices. null if not retained or expired.
+     */
+    public ChoiceListSnapshot get(Object owner, String token, long now)
+    {
+        if(token == null)
+        {
+            return null;
+        }
+        // not registered to the queue, as only used to look up.
+        Key key = new Key(owner, token, null);
+        synchronized(entries)
+        {
+            removeCollectedEntries();
+            RetainedEntry entry = entries.get(key);
+            if(entry == null)
+            {
+                return null;
+            }
+            if(entry.expiresAt <= now)
+            {
+                entries.remove(key);
+                retainedChoices -= entry.snapshot.getChoiceList().size();
+                return null;
+            }
+            return entry.snapshot;
+        }
+    }
+    
+    /**
+     * Drop all retained choices.
+     */
+    public void clear()
+    {
+        synchronized(entries)
+        {
+            entries.clear();
+            retainedChoices = 0;
+            // keys in the queue are already removed.
+            removeCollectedEntries();
+        }
+    }
+}
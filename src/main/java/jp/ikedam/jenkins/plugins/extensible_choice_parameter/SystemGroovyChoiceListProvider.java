@@ -37,6 +37,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import jenkins.model.Jenkins;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListFingerprint;
 
 import org.apache.commons.lang.StringUtils;
 import org.codehaus.groovy.control.CompilerConfiguration;
@@ -144,7 +145,7 @@ public class SystemGroovyChoiceListProvider extends ChoiceListProvider implement
         List<String> ret = null;
         try
         {
-            ret = runScript(getScriptText());
+            ret = fetchChoiceList();
         }
         catch(Exception e)
         {
@@ -152,6 +153,38 @@ public class SystemGroovyChoiceListProvider extends ChoiceListProvider implement
         }
         return (ret != null)?ret:new ArrayList<String>(0);
     }
+    
+    /**
+     * Runs the script and returns the choices.
+     * 
+     * @return the list of choices. never null.
+     * @throws Exception the script failed.
+     * @see jp.ikedam.jenkins.plugins.extensible_choice_parameter.ChoiceListProvider#fetchChoiceList()
+     */
+    @Override
+    public List<String> fetchChoiceList() throws Exception
+    {
+        List<String> ret = runScript(getScriptText());
+        return (ret != null)?ret:new ArrayList<String>(0);
+    }
+    
+    /**
+     * Returns a key to cache the choices.
+     * 
+     * Scripts with the same text share the cache.
+     * 
+     * @return the key to cache the choices.
+     * @see jp.ikedam.jenkins.plugins.extensible_choice_parameter.ChoiceListProvider#getCacheKey()
+     */
+    @Override
+    public String getCacheKey()
+    {
+        return String.format(
+                "%s:%s",
+                getClass().getName(),
+                ChoiceListFingerprint.fromStrings(getScriptText())
+        );
+    }
 
     private static List<String> runScript(String scriptText) {
         CompilerConfiguration compilerConfig = new CompilerConfiguration();
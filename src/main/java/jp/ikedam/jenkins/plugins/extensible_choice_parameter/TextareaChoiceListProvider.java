@@ -43,7 +43,7 @@ import org.kohsuke.stapler.QueryParameter;
 /**
  * A choice provider whose choices are defined as a text, like the build-in choice parameter.
  */
-public class TextareaChoiceListProvider extends AddEditedChoiceListProvider implements Serializable
+public class TextareaChoiceListProvider extends AddEditedChoiceListProvider implements Serializable, Cloneable
 {
     private static final long serialVersionUID = 2L;
     private static final String NoDefaultChoice = "###NODEFAULTCHOICE###";
@@ -98,6 +98,8 @@ public class TextareaChoiceListProvider extends AddEditedChoiceListProvider impl
     
     private List<String> choiceList = null;
     
+    private transient volatile ChoiceListSnapshot snapshot = null;
+    
     /**
      * Returns the list of choices the user specified in the job configuration page.
      * 
@@ -111,11 +113,76 @@ public class TextareaChoiceListProvider extends AddEditedChoiceListProvider impl
     }
     
     /**
-     * @param choiceList the choiceList to set
+     * Set the list of choices.
+     * 
+     * Lists with the same contents are shared among jobs,
+     * and large lists are stored in the compact form if configured.
+     * 
+     * @param choiceList the choiceList to set. not modified after passed.
+     * @see ChoiceListInterner
      */
     protected void setChoiceList(List<String> choiceList)
     {
-        this.choiceList = choiceList;
+        this.choiceList = ExtensibleChoiceParameterDefinition.internChoiceList(choiceList);
+        this.snapshot = null;
+    }
+    
+    /**
+     * Share the list of choices loaded from the job configuration.
+     * 
+     * @return this object.
+     */
+    private Object readResolve()
+    {
+        setChoiceList(choiceList);
+        return this;
+    }
+    
+    /**
+     * Write a shared or compact list as a plain list,
+     * not to change the format of the job configuration.
+     * 
+     * @return the object to write instead of this.
+     */
+    private Object writeReplace()
+    {
+        if(choiceList == null || choiceList.getClass() == ArrayList.class)
+        {
+            return this;
+        }
+        try
+        {
+            TextareaChoiceListProvider replaced = (TextareaChoiceListProvider)clone();
+            replaced.choiceList = new ArrayList<String>(choiceList);
+            return replaced;
+        }
+        catch(CloneNotSupportedException e)
+        {
+            // never happens for this is Cloneable.
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Returns the snapshot of the choices, created at the first call.
+     * 
+     * Recreated only when the choices are changed.
+     * 
+     * @return the snapshot of the choices.
+     * @see jp.ikedam.jenkins.plugins.extensible_choice_parameter.ChoiceListProvider#getChoiceListSnapshot()
+     */
+    @Override
+    public ChoiceListSnapshot getChoiceListSnapshot()
+    {
+        ChoiceListSnapshot s = snapshot;
+        if(s == null)
+        {
+            // created multiple times in a race, but the results are same.
+            // the list is shared, and never modified.
+            s = ChoiceListSnapshot.fromUnmodifiableList(getChoiceList());
+            snapshot = s;
+        }
+        return s;
     }
     
     /**
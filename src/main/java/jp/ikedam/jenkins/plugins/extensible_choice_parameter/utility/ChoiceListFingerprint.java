@@ -0,0 +1,220 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A 128bit fingerprint of the contents of a list of strings.
+ * 
+ * Two independent 64bit hashes are computed in a single pass,
+ * so lists can be compared without comparing elements one by one.
+ * The order of elements and the boundaries of elements are considered:
+ * ["ab", "c"] and ["a", "bc"] have different fingerprints.
+ * 
+ * This is not a cryptographic hash.
+ */
+public class ChoiceListFingerprint implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long MIX_SEED = 0x9e3779b97f4a7c15L;
+    private static final long MIX_MULTIPLIER = 0xc6a4a7935bd1e995L;
+    
+    private final long high;
+    private final long low;
+    
+    /**
+     * Constructor.
+     * 
+     * @param high the upper 64bits.
+     * @param low the lower 64bits.
+     */
+    public ChoiceListFingerprint(long high, long low)
+    {
+        this.high = high;
+        this.low = low;
+    }
+    
+    /**
+     * @return the upper 64bits.
+     */
+    public long getHigh()
+    {
+        return high;
+    }
+    
+    /**
+     * @return the lower 64bits.
+     */
+    public long getLow()
+    {
+        return low;
+    }
+    
+    /**
+     * Calculate the fingerprint of a list of strings.
+     * 
+     * null is treated as an empty list.
+     * null elements are distinguished from empty strings.
+     * 
+     * @param stringList the list to calculate the fingerprint.
+     * @return the fingerprint. never null.
+     */
+    public static ChoiceListFingerprint fromStringList(List<String> stringList)
+    {
+        long h1 = FNV_OFFSET_BASIS;
+        long h2 = MIX_SEED;
+        int size = 0;
+        if(stringList != null)
+        {
+            for(String s: stringList)
+            {
+                if(s == null)
+                {
+                    h1 = (h1 ^ 0xffffL) * FNV_PRIME;
+                    h2 = mix(h2, 0xffffL);
+                }
+                else
+                {
+                    int length = s.length();
+                    for(int i = 0; i < length; ++i)
+                    {
+                        char c = s.charAt(i);
+                        h1 = (h1 ^ c) * FNV_PRIME;
+                        h2 = mix(h2, c);
+                    }
+                    // the length works as a separator of elements.
+                    h1 = (h1 ^ (0x10000L + length)) * FNV_PRIME;
+                    h2 = mix(h2, 0x10000L + length);
+                }
+                ++size;
+            }
+        }
+        h2 = mix(h2, size);
+        return new ChoiceListFingerprint(finish(h1 ^ size), finish(h2));
+    }
+    
+    /**
+     * Calculate the fingerprint of strings.
+     * 
+     * Useful to create a key from configurations.
+     * 
+     * @param strings strings to calculate the fingerprint.
+     * @return the fingerprint. never null.
+     */
+    public static ChoiceListFingerprint fromStrings(String... strings)
+    {
+        return fromStringList(Arrays.asList(strings));
+    }
+    
+    private static long mix(long h, long v)
+    {
+        h ^= v * MIX_MULTIPLIER;
+        h = Long.rotateLeft(h, 27);
+        return h * 5 + 0x52dce729L;
+    }
+    
+    private static long finish(long h)
+    {
+        // finalizer of MurmurHash3
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+    /**
+     * Parse a string returned from {@link #toString()}.
+     * 
+     * @param value a hex string of 32 letters.
+     * @return the fingerprint. null if the value is not a fingerprint.
+     */
+    public static ChoiceListFingerprint fromString(String value)
+    {
+        if(value == null || value.length() != 32)
+        {
+            return null;
+        }
+        try
+        {
+            return new ChoiceListFingerprint(
+                    parseHex(value.substring(0, 16)),
+                    parseHex(value.substring(16))
+            );
+        }
+        catch(NumberFormatException e)
+        {
+            return null;
+        }
+    }
+    
+    private static long parseHex(String value)
+    {
+        // Long.parseLong cannot parse values larger than Long.MAX_VALUE.
+        return (Long.parseLong(value.substring(0, 8), 16) << 32) | Long.parseLong(value.substring(8), 16);
+    }
+    
+    /**
+     * @return a hex string of 32 letters.
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("%016x%016x", high, low);
+    }
+    
+    /**
+     * @return
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode()
+    {
+        return (int)(low ^ (low >>> 32));
+    }
+    
+    /**
+     * @param o
+     * @return
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if(!(o instanceof ChoiceListFingerprint))
+        {
+            return false;
+        }
+        ChoiceListFingerprint fingerprint = (ChoiceListFingerprint)o;
+        return high == fingerprint.high && low == fingerprint.low;
+    }
+}
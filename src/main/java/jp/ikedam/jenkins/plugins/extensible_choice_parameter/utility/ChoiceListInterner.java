@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares one instance among lists of strings with the same contents.
+ * 
+ * Lists are identified with {@link ChoiceListFingerprint},
+ * and are not compared element by element.
+ * Lists are held with weak references,
+ * and dropped when no longer used anywhere else.
+ * 
+ * Lists returned from {@link #intern(List)} are shared,
+ * and cannot be modified. Copy them to make changes.
+ * Large lists can be stored in {@link FrontCodedStringList}
+ * with {@link #intern(List, boolean)}.
+ */
+public class ChoiceListInterner
+{
+    private static final ChoiceListInterner INSTANCE = new ChoiceListInterner();
+    
+    /**
+     * @return the instance shared in Jenkins.
+     */
+    public static ChoiceListInterner getInstance()
+    {
+        return INSTANCE;
+    }
+    
+    /**
+     * A weak reference to a list, remembering the key to remove it when collected.
+     */
+    private static class ListReference extends WeakReference<List<String>>
+    {
+        private final ChoiceListFingerprint fingerprint;
+        
+        public ListReference(List<String> list, ChoiceListFingerprint fingerprint, ReferenceQueue<List<String>> queue)
+        {
+            super(list, queue);
+            this.fingerprint = fingerprint;
+        }
+    }
+    
+    private final Map<ChoiceListFingerprint, ListReference> lists = new HashMap<ChoiceListFingerprint, ListReference>();
+    
+    private final ReferenceQueue<List<String>> queue = new ReferenceQueue<List<String>>();
+    
+    /**
+     * Returns the shared list with the same contents.
+     * 
+     * @param stringList the list to intern. may be null.
+     * @return the shared list. null if stringList is null.
+     */
+    public List<String> intern(List<String> stringList)
+    {
+        return intern(stringList, false);
+    }
+    
+    /**
+     * Returns the shared list with the same contents.
+     * 
+     * When the shared list is not stored in the specified way,
+     * a new one replaces it (lists already returned are left as they are).
+     * 
+     * @param stringList the list to intern. may be null.
+     * @param compact whether to store the list in {@link FrontCodedStringList}.
+     * @return the shared list. null if stringList is null.
+     */
+    public List<String> intern(List<String> stringList, boolean compact)
+    {
+        if(stringList == null)
+        {
+            return null;
+        }
+        // calculated outside the lock, for that can take a long time for a large list.
+        ChoiceListFingerprint fingerprint = ChoiceListFingerprint.fromStringList(stringList);
+        synchronized(this)
+        {
+            expunge();
+            ListReference reference = lists.get(fingerprint);
+            List<String> interned = (reference != null)?reference.get():null;
+            // the size is compared only to be safe:
+            // this relies on 128-bit fingerprints not colliding among different lists.
+            if(interned != null && interned.size() == stringList.size()
+                    && (interned instanceof FrontCodedStringList) == compact)
+            {
+                return interned;
+            }
+            interned = compact
+                    ?new FrontCodedStringList(stringList)
+                    :Collections.unmodifiableList(new ArrayList<String>(stringList));
+            lists.put(fingerprint, new ListReference(interned, fingerprint, queue));
+            return interned;
+        }
+    }
+    
+    /**
+     * @return the number of lists held now.
+     */
+    public synchronized int size()
+    {
+        expunge();
+        return lists.size();
+    }
+    
+    /**
+     * Remove entries of collected lists.
+     */
+    private void expunge()
+    {
+        Reference<? extends List<String>> reference;
+        while((reference = queue.poll()) != null)
+        {
+            ListReference listReference = (ListReference)reference;
+            // may be already replaced with a new one.
+            if(lists.get(listReference.fingerprint) == listReference)
+            {
+                lists.remove(listReference.fingerprint);
+            }
+        }
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An index to search a list of strings by prefixes.
+ * 
+ * Strings are sorted once when the index is built,
+ * and the index holds only the positions of strings in the sorted order.
+ * Strings are read only once in the order of the list to build the index,
+ * which decodes each string once for {@link FrontCodedStringList}.
+ * Each search is a binary search followed by reading matched strings,
+ * taking O(log n + k) time for n strings and k results.
+ * Searches are case insensitive.
+ * 
+ * The index of a {@link MappedStringList} is stored in a file next to the list
+ * with {@link #open(MappedStringList)}, and mapped in the same way,
+ * so that neither strings nor the index are held in the Java heap.
+ * 
+ * The index is immutable, and can be shared among threads.
+ */
+public class ChoiceListPrefixIndex
+{
+    /**
+     * The suffix of files storing indexes of {@link MappedStringList}.
+     */
+    public static final String SUFFIX = ".prefix";
+    
+    /**
+     * The first 4 bytes of files storing indexes ("ECPP").
+     */
+    public static final int MAGIC = 0x45435050;
+    
+    /**
+     * The version of the format.
+     */
+    public static final int VERSION = 1;
+    
+    private static final int HEADER_SIZE = 12;
+    
+    /**
+     * Normalized strings in a single array, used only while building the index.
+     * 
+     * Takes 2 bytes for each character and 4 bytes for each string,
+     * instead of a String object for each string.
+     */
+    private static class KeyTable
+    {
+        private char[] chars = new char[1024];
+        private final int[] ends;
+        private int length = 0;
+        
+        public KeyTable(List<String> choiceList)
+        {
+            ends = new int[choiceList.size()];
+            int index = 0;
+            for(String value: choiceList)
+            {
+                String key = normalize(value);
+                if(length + key.length() > chars.length)
+                {
+                    chars = Arrays.copyOf(chars, Math.max(length + key.length(), chars.length * 2));
+                }
+                key.getChars(0, key.length(), chars, length);
+                length += key.length();
+                ends[index++] = length;
+            }
+        }
+        
+        /**
+         * Compares keys in the same way as {@link String#compareTo(String)}.
+         * 
+         * @param i
+         * @param j
+         * @return negative if the key at i is smaller, 0 if same, positive if larger.
+         */
+        public int compare(int i, int j)
+        {
+            int start1 = (i > 0)?ends[i - 1]:0;
+            int start2 = (j > 0)?ends[j - 1]:0;
+            int length1 = ends[i] - start1;
+            int length2 = ends[j] - start2;
+            int max = Math.min(length1, length2);
+            for(int k = 0; k < max; ++k)
+            {
+                char c1 = chars[start1 + k];
+                char c2 = chars[start2 + k];
+                if(c1 != c2)
+                {
+                    return c1 - c2;
+                }
+            }
+            return length1 - length2;
+        }
+    }
+    
+    private final List<String> choiceList;
+    private final IntBuffer order;
+    
+    /**
+     * Build the index.
+     * 
+     * @param choiceList strings to search. must not be modified after passed.
+     */
+    public ChoiceListPrefixIndex(List<String> choiceList)
+    {
+        this.choiceList = (choiceList != null)?choiceList:new ArrayList<String>(0);
+        this.order = IntBuffer.wrap(sort(this.choiceList));
+    }
+    
+    private ChoiceListPrefixIndex(List<String> choiceList, IntBuffer order)
+    {
+        this.choiceList = choiceList;
+        this.order = order;
+    }
+    
+    /**
+     * Open the index of a list in a memory-mapped file.
+     * 
+     * The index is written to {@link MappedStringList#getSidecarFile(String)}
+     * at the first time, and the file is reused afterwards.
+     * The file consists of {@link #MAGIC}, {@link #VERSION}, the number of strings,
+     * and the positions of strings in the sorted order (4 bytes each, in big endian).
+     * 
+     * @param choiceList strings to search.
+     * @return the index.
+     * @throws IOException failed to write or to map the index.
+     */
+    public static ChoiceListPrefixIndex open(MappedStringList choiceList) throws IOException
+    {
+        File file = choiceList.getSidecarFile(SUFFIX);
+        IntBuffer order = read(file, choiceList.size());
+        if(order == null)
+        {
+            write(file, sort(choiceList));
+            order = read(file, choiceList.size());
+            if(order == null)
+            {
+                throw new IOException(String.format("%s is broken", file));
+            }
+        }
+        return new ChoiceListPrefixIndex(choiceList, order);
+    }
+    
+    /**
+     * @param file
+     * @param size the number of strings in the list.
+     * @return the mapped positions. null if the file does not exist or is not valid.
+     * @throws IOException
+     */
+    private static IntBuffer read(File file, int size) throws IOException
+    {
+        if(!file.exists())
+        {
+            return null;
+        }
+        ByteBuffer buffer = MappedStringList.map(file);
+        if(buffer.capacity() != HEADER_SIZE + 4L * size
+                || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION
+                || buffer.getInt(8) != size)
+        {
+            // broken or written in another format. written again.
+            return null;
+        }
+        buffer.position(HEADER_SIZE);
+        return buffer.slice().asIntBuffer();
+    }
+    
+    private static void write(File file, int[] order) throws IOException
+    {
+        File tmpFile = MappedStringList.createTempFile(file);
+        boolean succeeded = false;
+        try
+        {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(order.length);
+                for(int pos: order)
+                {
+                    out.writeInt(pos);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            MappedStringList.replace(tmpFile, file);
+            succeeded = true;
+        }
+        finally
+        {
+            if(!succeeded)
+            {
+                tmpFile.delete();
+            }
+        }
+    }
+    
+    /**
+     * @param choiceList
+     * @return positions of strings in the order of normalized strings.
+     */
+    private static int[] sort(List<String> choiceList)
+    {
+        KeyTable keys = new KeyTable(choiceList);
+        int size = choiceList.size();
+        int[] order = new int[size];
+        for(int i = 0; i < size; ++i)
+        {
+            order[i] = i;
+        }
+        // merge sort is stable, so strings with the same key are kept in the original order.
+        int[] src = order;
+        int[] dst = new int[size];
+        for(long width = 1; width < size; width *= 2)
+        {
+            for(long low = 0; low < size; low += 2 * width)
+            {
+                merge(keys, src, dst, (int)low, (int)Math.min(low + width, size), (int)Math.min(low + 2 * width, size));
+            }
+            int[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+        return src;
+    }
+    
+    /**
+     * Merge sorted runs src[low, mid) and src[mid, high) to dst[low, high).
+     */
+    private static void merge(KeyTable keys, int[] src, int[] dst, int low, int mid, int high)
+    {
+        int i = low;
+        int j = mid;
+        for(int k = low; k < high; ++k)
+        {
+            if(j >= high || (i < mid && keys.compare(src[i], src[j]) <= 0))
+            {
+                dst[k] = src[i++];
+            }
+            else
+            {
+                dst[k] = src[j++];
+            }
+        }
+    }
+    
+    private static String normalize(String value)
+    {
+        return (value != null)?value.toLowerCase(Locale.ENGLISH):"";
+    }
+    
+    /**
+     * @return the number of indexed strings.
+     */
+    public int size()
+    {
+        return choiceList.size();
+    }
+    
+    /**
+     * @param i the position in the sorted order.
+     * @return the normalized string.
+     */
+    private String getKey(int i)
+    {
+        return normalize(choiceList.get(order.get(i)));
+    }
+    
+    /**
+     * Returns the position of the first key not less than the value.
+     * 
+     * @param value
+     * @return the position in the sorted order.
+     */
+    private int lowerBound(String value)
+    {
+        int low = 0;
+        int high = order.limit();
+        while(low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if(getKey(mid).compareTo(value) < 0)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Search strings starting with the prefix.
+     * 
+     * Results are in the alphabetical order (case insensitive).
+     * 
+     * @param prefix the prefix to search. null or empty for all strings.
+     * @param limit the maximum number of results.
+     * @return strings starting with the prefix. never null.
+     */
+    public List<String> search(String prefix, int limit)
+    {
+        String key = normalize(prefix);
+        int size = order.limit();
+        List<String> ret = new ArrayList<String>(Math.max(0, Math.min(limit, size)));
+        for(int i = lowerBound(key); i < size && ret.size() < limit; ++i)
+        {
+            String value = choiceList.get(order.get(i));
+            if(!normalize(value).startsWith(key))
+            {
+                break;
+            }
+            ret.add(value);
+        }
+        return ret;
+    }
+    
+    /**
+     * Count strings starting with the prefix.
+     * 
+     * @param prefix the prefix to search. null or empty for all strings.
+     * @return the number of strings starting with the prefix.
+     */
+    public int count(String prefix)
+    {
+        String key = normalize(prefix);
+        int from = lowerBound(key);
+        // strings starting with the key come first, and then larger ones.
+        int low = from;
+        int high = order.limit();
+        while(low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if(getKey(mid).startsWith(key))
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low - from;
+    }
+}
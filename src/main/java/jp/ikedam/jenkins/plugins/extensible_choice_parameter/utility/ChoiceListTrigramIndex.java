@@ -0,0 +1,906 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * An index to search a list of strings by substrings, tolerating typos.
+ * 
+ * Each string is split into trigrams (sequences of 3 characters),
+ * and the index holds the list of strings containing each trigram.
+ * A search looks up only the lists for trigrams in the query,
+ * and never scans all strings.
+ * 
+ * Results are ranked as following:
+ * <ol>
+ *     <li>strings same to the query</li>
+ *     <li>strings starting with the query</li>
+ *     <li>strings containing the query at the beginning of a word</li>
+ *     <li>strings containing the query</li>
+ *     <li>strings sharing trigrams with the query (fuzzy matches), more shared first</li>
+ * </ol>
+ * Shorter strings come first in each rank, and then the original order.
+ * Searches are case insensitive.
+ * Only the best matches up to the limit are held while searching,
+ * and strings are read only when needed to rank them.
+ * 
+ * The index holds only trigrams and positions of strings in flat tables.
+ * Strings are read twice in the order of the list to build the index,
+ * which decodes each string sequentially for {@link FrontCodedStringList},
+ * and no strings are held while building.
+ * The index of a {@link MappedStringList} is stored in a file next to the list
+ * with {@link #open(MappedStringList)}, and mapped in the same way,
+ * so that neither strings nor the index are held in the Java heap.
+ * 
+ * The index is immutable, and can be shared among threads.
+ */
+public class ChoiceListTrigramIndex
+{
+    /**
+     * The least ratio of trigrams of the query to be shared for fuzzy matches.
+     */
+    public static final double MIN_SIMILARITY = 0.5;
+    
+    /**
+     * The suffix of files storing indexes of {@link MappedStringList}.
+     */
+    public static final String SUFFIX = ".trigram";
+    
+    /**
+     * The first 4 bytes of files storing indexes ("ECPT").
+     */
+    public static final int MAGIC = 0x45435054;
+    
+    /**
+     * The version of the format.
+     */
+    public static final int VERSION = 1;
+    
+    private static final int HEADER_SIZE = 24;
+    
+    private static final int RANK_EXACT = 0;
+    private static final int RANK_PREFIX = 1;
+    private static final int RANK_WORD = 2;
+    private static final int RANK_SUBSTRING = 3;
+    private static final int RANK_FUZZY = 4;
+    
+    /**
+     * Results of a search.
+     */
+    public static class Result
+    {
+        private final int total;
+        private final List<String> choiceList;
+        
+        private Result(int total, List<String> choiceList)
+        {
+            this.total = total;
+            this.choiceList = choiceList;
+        }
+        
+        /**
+         * @return the number of all matching strings.
+         */
+        public int getTotal()
+        {
+            return total;
+        }
+        
+        /**
+         * @return the matching strings, the best first. at most the limit of the search.
+         */
+        public List<String> getChoiceList()
+        {
+            return choiceList;
+        }
+    }
+    
+    /**
+     * Orders matches in {position, rank, score, length}, the best first.
+     */
+    private static final Comparator<int[]> MATCH_ORDER = new Comparator<int[]>()
+    {
+        @Override
+        public int compare(int[] o1, int[] o2)
+        {
+            if(o1[1] != o2[1])
+            {
+                return (o1[1] < o2[1])?-1:1;
+            }
+            if(o1[2] != o2[2])
+            {
+                return (o1[2] > o2[2])?-1:1;
+            }
+            if(o1[3] != o2[3])
+            {
+                return (o1[3] < o2[3])?-1:1;
+            }
+            return (o1[0] < o2[0])?-1:((o1[0] == o2[0])?0:1);
+        }
+    };
+    
+    /**
+     * The best matches up to the limit, and the number of all matches.
+     * 
+     * Matches are held in a heap with the worst one at the head,
+     * taking O(m log k) time for m matches and k results,
+     * instead of sorting all matches.
+     */
+    private static class TopMatches
+    {
+        private final int limit;
+        private final PriorityQueue<int[]> heap;
+        private int total = 0;
+        
+        public TopMatches(int limit)
+        {
+            this.limit = limit;
+            this.heap = new PriorityQueue<int[]>(Math.max(1, Math.min(limit, 1024)), Collections.reverseOrder(MATCH_ORDER));
+        }
+        
+        /**
+         * Returns whether a match can be in the results.
+         * 
+         * Used not to read strings for matches worse than all results.
+         * 
+         * @param rank
+         * @param score
+         * @return false if the match is worse than the results whatever its length is.
+         */
+        public boolean isCompetitive(int rank, int score)
+        {
+            if(heap.size() < limit)
+            {
+                return true;
+            }
+            int[] worst = heap.peek();
+            return worst != null && (rank < worst[1] || (rank == worst[1] && score >= worst[2]));
+        }
+        
+        /**
+         * Count a match not in the results.
+         */
+        public void skip()
+        {
+            ++total;
+        }
+        
+        /**
+         * @param match {position, rank, score, length}
+         */
+        public void add(int[] match)
+        {
+            ++total;
+            if(heap.size() < limit)
+            {
+                heap.add(match);
+            }
+            else if(limit > 0 && MATCH_ORDER.compare(match, heap.peek()) < 0)
+            {
+                heap.poll();
+                heap.add(match);
+            }
+        }
+        
+        public Result toResult(List<String> choiceList)
+        {
+            List<int[]> sorted = new ArrayList<int[]>(heap);
+            Collections.sort(sorted, MATCH_ORDER);
+            List<String> ret = new ArrayList<String>(sorted.size());
+            for(int[] match: sorted)
+            {
+                ret.add(choiceList.get(match[0]));
+            }
+            return new Result(total, ret);
+        }
+    }
+    
+    /**
+     * A growable list of int, used only while building the index.
+     */
+    private static class IntList
+    {
+        private int[] values = new int[4];
+        private int size = 0;
+        
+        public void add(int value)
+        {
+            if(size >= values.length)
+            {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = value;
+        }
+        
+        public int get(int index)
+        {
+            return values[index];
+        }
+        
+        public void set(int index, int value)
+        {
+            values[index] = value;
+        }
+        
+        public int[] toArray()
+        {
+            return Arrays.copyOf(values, size);
+        }
+    }
+    
+    /**
+     * A hash table from trigrams to int, used only while building the index.
+     * 
+     * Holds trigrams in an array with open addressing, not to box each of them.
+     */
+    private static class TrigramTable
+    {
+        private static final int EMPTY = -1;
+        
+        private long[] keys = new long[1024];
+        private int[] values = newValues(1024);
+        private int size = 0;
+        
+        private static int[] newValues(int capacity)
+        {
+            int[] values = new int[capacity];
+            Arrays.fill(values, EMPTY);
+            return values;
+        }
+        
+        private int find(long key)
+        {
+            int mask = keys.length - 1;
+            int i = (int)((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+            while(values[i] != EMPTY && keys[i] != key)
+            {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+        
+        /**
+         * @param key
+         * @return the value. -1 if not found.
+         */
+        public int get(long key)
+        {
+            return values[find(key)];
+        }
+        
+        /**
+         * @param key
+         * @param value not negative.
+         */
+        public void put(long key, int value)
+        {
+            int i = find(key);
+            if(values[i] == EMPTY)
+            {
+                if((size + 1) * 2 > keys.length)
+                {
+                    grow();
+                    i = find(key);
+                }
+                keys[i] = key;
+                ++size;
+            }
+            values[i] = value;
+        }
+        
+        private void grow()
+        {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = newValues(oldKeys.length * 2);
+            for(int i = 0; i < oldKeys.length; ++i)
+            {
+                if(oldValues[i] != EMPTY)
+                {
+                    int j = find(oldKeys[i]);
+                    keys[j] = oldKeys[i];
+                    values[j] = oldValues[i];
+                }
+            }
+        }
+        
+        public int size()
+        {
+            return size;
+        }
+        
+        /**
+         * @return all trigrams in the table.
+         */
+        public long[] keys()
+        {
+            long[] ret = new long[size];
+            int filled = 0;
+            for(int i = 0; i < keys.length; ++i)
+            {
+                if(values[i] != EMPTY)
+                {
+                    ret[filled++] = keys[i];
+                }
+            }
+            return ret;
+        }
+    }
+    
+    /**
+     * Extracts distinct trigrams of strings into a reused array.
+     */
+    private static class TrigramExtractor
+    {
+        public long[] trigrams = new long[64];
+        public int size = 0;
+        
+        /**
+         * @param key a normalized string.
+         */
+        public void extract(String key)
+        {
+            int count = key.length() - 2;
+            if(count > trigrams.length)
+            {
+                trigrams = new long[Math.max(count, trigrams.length * 2)];
+            }
+            for(int i = 0; i < count; ++i)
+            {
+                trigrams[i] = toTrigram(key, i);
+            }
+            Arrays.sort(trigrams, 0, count);
+            size = 0;
+            for(int i = 0; i < count; ++i)
+            {
+                if(i == 0 || trigrams[i] != trigrams[i - 1])
+                {
+                    trigrams[size++] = trigrams[i];
+                }
+            }
+        }
+    }
+    
+    /**
+     * Tables of the index built in the heap.
+     */
+    private static class Tables
+    {
+        public long[] trigrams;
+        public int[] offsets;
+        public int[] postings;
+        public int[] shortKeys;
+        
+        public static Tables build(List<String> choiceList)
+        {
+            TrigramExtractor extractor = new TrigramExtractor();
+            
+            // the first pass counts strings containing each trigram.
+            TrigramTable ids = new TrigramTable();
+            IntList counts = new IntList();
+            IntList shortKeyList = new IntList();
+            int pos = 0;
+            for(String value: choiceList)
+            {
+                String key = normalize(value);
+                if(key.length() < 3)
+                {
+                    shortKeyList.add(pos++);
+                    continue;
+                }
+                extractor.extract(key);
+                for(int i = 0; i < extractor.size; ++i)
+                {
+                    int id = ids.get(extractor.trigrams[i]);
+                    if(id < 0)
+                    {
+                        ids.put(extractor.trigrams[i], ids.size());
+                        counts.add(1);
+                    }
+                    else
+                    {
+                        counts.set(id, counts.get(id) + 1);
+                    }
+                }
+                ++pos;
+            }
+            
+            // sort trigrams, and replace ids with positions in the sorted order.
+            Tables tables = new Tables();
+            tables.trigrams = ids.keys();
+            Arrays.sort(tables.trigrams);
+            tables.offsets = new int[tables.trigrams.length + 1];
+            for(int t = 0; t < tables.trigrams.length; ++t)
+            {
+                tables.offsets[t + 1] = tables.offsets[t] + counts.get(ids.get(tables.trigrams[t]));
+                ids.put(tables.trigrams[t], t);
+            }
+            
+            // the second pass fills positions of strings, in the ascending order for each trigram.
+            tables.postings = new int[tables.offsets[tables.trigrams.length]];
+            int[] filled = Arrays.copyOf(tables.offsets, tables.trigrams.length);
+            pos = 0;
+            for(String value: choiceList)
+            {
+                String key = normalize(value);
+                if(key.length() >= 3)
+                {
+                    extractor.extract(key);
+                    for(int i = 0; i < extractor.size; ++i)
+                    {
+                        tables.postings[filled[ids.get(extractor.trigrams[i])]++] = pos;
+                    }
+                }
+                ++pos;
+            }
+            tables.shortKeys = shortKeyList.toArray();
+            return tables;
+        }
+        
+        /**
+         * Write to a file.
+         * 
+         * The file consists of:
+         * <ol>
+         *     <li>the header: {@link #MAGIC}, {@link #VERSION}, the number of strings,
+         *         the number of trigrams, the number of postings, and the number of short strings (4 bytes each)</li>
+         *     <li>trigrams in the ascending order (8 bytes each)</li>
+         *     <li>the start of postings of each trigram, and the end of postings (4 bytes each)</li>
+         *     <li>postings: positions of strings containing each trigram (4 bytes each)</li>
+         *     <li>positions of strings shorter than 3 characters (4 bytes each)</li>
+         * </ol>
+         * All integers are in big endian.
+         * 
+         * @param file
+         * @param size the number of strings.
+         * @throws IOException
+         */
+        public void write(File file, int size) throws IOException
+        {
+            File tmpFile = MappedStringList.createTempFile(file);
+            boolean succeeded = false;
+            try
+            {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+                try
+                {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeInt(size);
+                    out.writeInt(trigrams.length);
+                    out.writeInt(postings.length);
+                    out.writeInt(shortKeys.length);
+                    for(long trigram: trigrams)
+                    {
+                        out.writeLong(trigram);
+                    }
+                    for(int[] values: Arrays.asList(offsets, postings, shortKeys))
+                    {
+                        for(int value: values)
+                        {
+                            out.writeInt(value);
+                        }
+                    }
+                }
+                finally
+                {
+                    out.close();
+                }
+                MappedStringList.replace(tmpFile, file);
+                succeeded = true;
+            }
+            finally
+            {
+                if(!succeeded)
+                {
+                    tmpFile.delete();
+                }
+            }
+        }
+    }
+    
+    private final List<String> choiceList;
+    private final LongBuffer trigrams;
+    private final IntBuffer offsets;
+    private final IntBuffer postings;
+    private final IntBuffer shortKeys;
+    
+    /**
+     * Build the index.
+     * 
+     * @param choiceList strings to search. must not be modified after passed.
+     */
+    public ChoiceListTrigramIndex(List<String> choiceList)
+    {
+        this.choiceList = (choiceList != null)?choiceList:new ArrayList<String>(0);
+        Tables tables = Tables.build(this.choiceList);
+        trigrams = LongBuffer.wrap(tables.trigrams);
+        offsets = IntBuffer.wrap(tables.offsets);
+        postings = IntBuffer.wrap(tables.postings);
+        shortKeys = IntBuffer.wrap(tables.shortKeys);
+    }
+    
+    private ChoiceListTrigramIndex(List<String> choiceList, ByteBuffer buffer)
+    {
+        this.choiceList = choiceList;
+        int trigramCount = buffer.getInt(12);
+        int postingCount = buffer.getInt(16);
+        int shortCount = buffer.getInt(20);
+        int position = HEADER_SIZE;
+        trigrams = slice(buffer, position, 8 * trigramCount).asLongBuffer();
+        position += 8 * trigramCount;
+        offsets = slice(buffer, position, 4 * (trigramCount + 1)).asIntBuffer();
+        position += 4 * (trigramCount + 1);
+        postings = slice(buffer, position, 4 * postingCount).asIntBuffer();
+        position += 4 * postingCount;
+        shortKeys = slice(buffer, position, 4 * shortCount).asIntBuffer();
+    }
+    
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length)
+    {
+        ByteBuffer b = buffer.duplicate();
+        b.position(position);
+        b.limit(position + length);
+        return b.slice();
+    }
+    
+    /**
+     * Open the index of a list in a memory-mapped file.
+     * 
+     * The index is written to {@link MappedStringList#getSidecarFile(String)}
+     * at the first time, and the file is reused afterwards.
+     * 
+     * @param choiceList strings to search.
+     * @return the index.
+     * @throws IOException failed to write or to map the index.
+     */
+    public static ChoiceListTrigramIndex open(MappedStringList choiceList) throws IOException
+    {
+        File file = choiceList.getSidecarFile(SUFFIX);
+        ByteBuffer buffer = read(file, choiceList.size());
+        if(buffer == null)
+        {
+            Tables.build(choiceList).write(file, choiceList.size());
+            buffer = read(file, choiceList.size());
+            if(buffer == null)
+            {
+                throw new IOException(String.format("%s is broken", file));
+            }
+        }
+        return new ChoiceListTrigramIndex(choiceList, buffer);
+    }
+    
+    /**
+     * @param file
+     * @param size the number of strings in the list.
+     * @return the mapped file. null if the file does not exist or is not valid.
+     * @throws IOException
+     */
+    private static ByteBuffer read(File file, int size) throws IOException
+    {
+        if(!file.exists())
+        {
+            return null;
+        }
+        ByteBuffer buffer = MappedStringList.map(file);
+        if(buffer.capacity() < HEADER_SIZE
+                || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION
+                || buffer.getInt(8) != size)
+        {
+            // broken or written in another format. written again.
+            return null;
+        }
+        int trigramCount = buffer.getInt(12);
+        int postingCount = buffer.getInt(16);
+        int shortCount = buffer.getInt(20);
+        if(trigramCount < 0 || postingCount < 0 || shortCount < 0
+                || HEADER_SIZE + 8L * trigramCount + 4L * (trigramCount + 1) + 4L * postingCount + 4L * shortCount
+                        != buffer.capacity())
+        {
+            return null;
+        }
+        return buffer;
+    }
+    
+    private static String normalize(String value)
+    {
+        return (value != null)?value.toLowerCase(Locale.ENGLISH):"";
+    }
+    
+    private static long toTrigram(String value, int pos)
+    {
+        return ((long)value.charAt(pos) << 32)
+                | ((long)value.charAt(pos + 1) << 16)
+                | value.charAt(pos + 2);
+    }
+    
+    /**
+     * @param value a normalized string.
+     * @return distinct trigrams in the string, in the order of appearance.
+     */
+    private static Set<Long> getTrigrams(String value)
+    {
+        Set<Long> trigrams = new LinkedHashSet<Long>();
+        for(int i = 0; i + 3 <= value.length(); ++i)
+        {
+            trigrams.add(toTrigram(value, i));
+        }
+        return trigrams;
+    }
+    
+    /**
+     * @param trigram
+     * @return the position of the trigram in the index. -1 if not found.
+     */
+    private int findTrigram(long trigram)
+    {
+        int low = 0;
+        int high = trigrams.limit() - 1;
+        while(low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            long value = trigrams.get(mid);
+            if(value < trigram)
+            {
+                low = mid + 1;
+            }
+            else if(value > trigram)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * @return the number of indexed strings.
+     */
+    public int size()
+    {
+        return choiceList.size();
+    }
+    
+    /**
+     * @return the number of distinct trigrams in the index.
+     */
+    public int getTrigramCount()
+    {
+        return trigrams.limit();
+    }
+    
+    /**
+     * Search strings matching the query.
+     * 
+     * Queries shorter than 3 characters have no trigrams.
+     * Such queries are matched only as substrings,
+     * looking up trigrams containing the query.
+     * 
+     * @param query the string to search. null or empty for all strings.
+     * @param limit the maximum number of results.
+     * @return the matching strings, and the number of them.
+     */
+    public Result search(String query, int limit)
+    {
+        String key = normalize(query);
+        limit = Math.max(0, limit);
+        if(key.length() <= 0)
+        {
+            return new Result(
+                    choiceList.size(),
+                    new ArrayList<String>(choiceList.subList(0, Math.min(limit, choiceList.size())))
+            );
+        }
+        
+        TopMatches matches = new TopMatches(limit);
+        if(key.length() < 3)
+        {
+            searchShort(key, matches);
+        }
+        else
+        {
+            searchTrigrams(key, matches);
+        }
+        return matches.toResult(choiceList);
+    }
+    
+    /**
+     * Returns how the string contains the query.
+     * 
+     * @param value a normalized string.
+     * @param key a normalized query.
+     * @return the rank, or -1 if the string does not contain the query.
+     */
+    private static int getRank(String value, String key)
+    {
+        int pos = value.indexOf(key);
+        if(pos < 0)
+        {
+            return -1;
+        }
+        if(pos == 0)
+        {
+            return (value.length() == key.length())?RANK_EXACT:RANK_PREFIX;
+        }
+        for(; pos > 0; pos = value.indexOf(key, pos + 1))
+        {
+            if(!Character.isLetterOrDigit(value.charAt(pos - 1)))
+            {
+                return RANK_WORD;
+            }
+        }
+        return RANK_SUBSTRING;
+    }
+    
+    private void searchTrigrams(String key, TopMatches matches)
+    {
+        Set<Long> queryTrigrams = getTrigrams(key);
+        
+        // gather positions of strings sharing trigrams with the query.
+        // sized by the number of them, not by the number of all strings.
+        List<Integer> found = new ArrayList<Integer>(queryTrigrams.size());
+        int total = 0;
+        for(Long trigram: queryTrigrams)
+        {
+            int t = findTrigram(trigram);
+            if(t >= 0)
+            {
+                found.add(t);
+                total += offsets.get(t + 1) - offsets.get(t);
+            }
+        }
+        int[] candidates = new int[total];
+        int filled = 0;
+        for(int t: found)
+        {
+            for(int i = offsets.get(t); i < offsets.get(t + 1); ++i)
+            {
+                candidates[filled++] = postings.get(i);
+            }
+        }
+        // each string appears once in a posting list,
+        // so the number of the same positions is the number of shared trigrams.
+        Arrays.sort(candidates);
+        
+        int threshold = getThreshold(queryTrigrams.size());
+        for(int i = 0; i < candidates.length;)
+        {
+            int pos = candidates[i];
+            int count = 0;
+            for(; i < candidates.length && candidates[i] == pos; ++i)
+            {
+                ++count;
+            }
+            if(count < threshold)
+            {
+                continue;
+            }
+            // only strings with all the trigrams can contain the query.
+            boolean full = (count == queryTrigrams.size());
+            if(!full && !matches.isCompetitive(RANK_FUZZY, count))
+            {
+                matches.skip();
+                continue;
+            }
+            String value = normalize(choiceList.get(pos));
+            int rank = full?getRank(value, key):-1;
+            matches.add(new int[]{pos, (rank >= 0)?rank:RANK_FUZZY, count, value.length()});
+        }
+    }
+    
+    /**
+     * @param trigramCount the number of trigrams in the query.
+     * @return the least number of trigrams to be shared for fuzzy matches.
+     */
+    private static int getThreshold(int trigramCount)
+    {
+        return Math.max(1, (int)Math.ceil(trigramCount * MIN_SIMILARITY));
+    }
+    
+    /**
+     * @param trigram
+     * @param key a normalized query shorter than 3 characters.
+     * @return whether the trigram contains the query.
+     */
+    private static boolean contains(long trigram, String key)
+    {
+        char c0 = (char)(trigram >>> 32);
+        char c1 = (char)(trigram >>> 16);
+        char c2 = (char)trigram;
+        char k0 = key.charAt(0);
+        if(key.length() == 1)
+        {
+            return c0 == k0 || c1 == k0 || c2 == k0;
+        }
+        char k1 = key.charAt(1);
+        return (c0 == k0 && c1 == k1) || (c1 == k0 && c2 == k1);
+    }
+    
+    private void searchShort(String key, TopMatches matches)
+    {
+        // look up trigrams containing the query, instead of all strings.
+        IntList candidates = new IntList();
+        for(int t = 0; t < trigrams.limit(); ++t)
+        {
+            if(contains(trigrams.get(t), key))
+            {
+                for(int i = offsets.get(t); i < offsets.get(t + 1); ++i)
+                {
+                    candidates.add(postings.get(i));
+                }
+            }
+        }
+        
+        int[] positions = candidates.toArray();
+        Arrays.sort(positions);
+        for(int i = 0; i < positions.length; ++i)
+        {
+            int pos = positions[i];
+            if(i > 0 && positions[i - 1] == pos)
+            {
+                // appears in multiple trigrams.
+                continue;
+            }
+            addIfContains(matches, pos, key);
+        }
+        // strings shorter than 3 characters have no trigrams.
+        // there are few such strings, but they need be checked one by one.
+        for(int i = 0; i < shortKeys.limit(); ++i)
+        {
+            addIfContains(matches, shortKeys.get(i), key);
+        }
+    }
+    
+    private void addIfContains(TopMatches matches, int pos, String key)
+    {
+        String value = normalize(choiceList.get(pos));
+        int rank = getRank(value, key);
+        if(rank >= 0)
+        {
+            matches.add(new int[]{pos, rank, 0, value.length()});
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of strings stored in a compact byte array.
+ * 
+ * Strings are encoded in UTF-8, and each string is stored
+ * only with the part different from the previous one (front coding).
+ * Names of versions or artifacts often share long prefixes,
+ * and take much less memory than String objects.
+ * 
+ * Strings are divided into buckets of {@link #BUCKET_SIZE},
+ * and the first string of each bucket is stored as it is.
+ * {@link #get(int)} decodes at most {@link #BUCKET_SIZE} strings in the bucket,
+ * and iterating decodes each string only once.
+ * Strings are decoded each time they are read, and not held in the list.
+ * 
+ * Each string is stored as:
+ * <ol>
+ *     <li>the length of the prefix shared with the previous string in bytes (variable length integer)</li>
+ *     <li>the length of the rest in bytes plus 1, or 0 for null (variable length integer)</li>
+ *     <li>the rest in bytes</li>
+ * </ol>
+ */
+public class FrontCodedStringList extends AbstractList<String> implements RandomAccess, Serializable
+{
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Number of strings in a bucket.
+     */
+    public static final int BUCKET_SIZE = 16;
+    
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    private final int size;
+    private final byte[] data;
+    private final int[] bucketOffsets;
+    
+    /**
+     * Encode strings.
+     * 
+     * @param stringList strings to store. may contain null.
+     */
+    public FrontCodedStringList(List<String> stringList)
+    {
+        size = stringList.size();
+        bucketOffsets = new int[(size + BUCKET_SIZE - 1) / BUCKET_SIZE];
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] previous = new byte[0];
+        int index = 0;
+        for(String s: stringList)
+        {
+            if(index % BUCKET_SIZE == 0)
+            {
+                bucketOffsets[index / BUCKET_SIZE] = out.size();
+                previous = new byte[0];
+            }
+            if(s == null)
+            {
+                writeVInt(out, 0);
+                writeVInt(out, 0);
+                previous = new byte[0];
+            }
+            else
+            {
+                byte[] bytes = s.getBytes(UTF8);
+                int prefix = 0;
+                int max = Math.min(previous.length, bytes.length);
+                while(prefix < max && previous[prefix] == bytes[prefix])
+                {
+                    ++prefix;
+                }
+                writeVInt(out, prefix);
+                writeVInt(out, bytes.length - prefix + 1);
+                out.write(bytes, prefix, bytes.length - prefix);
+                previous = bytes;
+            }
+            ++index;
+        }
+        data = out.toByteArray();
+    }
+    
+    private static void writeVInt(ByteArrayOutputStream out, int value)
+    {
+        while((value & ~0x7f) != 0)
+        {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+    
+    /**
+     * Reads strings from a position.
+     * 
+     * Holds the bytes of the last string to decode the next one.
+     */
+    private class Decoder
+    {
+        private int position;
+        private byte[] buffer = new byte[64];
+        private int length = 0;
+        private boolean isNull = false;
+        
+        public Decoder(int position)
+        {
+            this.position = position;
+        }
+        
+        private int readVInt()
+        {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = data[position++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while((b & 0x80) != 0);
+            return value;
+        }
+        
+        /**
+         * Read the next string into the buffer.
+         */
+        public void next()
+        {
+            int prefix = readVInt();
+            int rest = readVInt();
+            if(rest == 0)
+            {
+                isNull = true;
+                length = 0;
+                return;
+            }
+            --rest;
+            isNull = false;
+            length = prefix + rest;
+            if(buffer.length < length)
+            {
+                byte[] newBuffer = new byte[Math.max(length, buffer.length * 2)];
+                System.arraycopy(buffer, 0, newBuffer, 0, prefix);
+                buffer = newBuffer;
+            }
+            System.arraycopy(data, position, buffer, prefix, rest);
+            position += rest;
+        }
+        
+        /**
+         * @return the string read last.
+         */
+        public String getString()
+        {
+            return isNull?null:new String(buffer, 0, length, UTF8);
+        }
+        
+        /**
+         * @param bytes
+         * @return whether the string read last is the same to the bytes.
+         */
+        public boolean matches(byte[] bytes)
+        {
+            if(bytes == null)
+            {
+                return isNull;
+            }
+            if(isNull || length != bytes.length)
+            {
+                return false;
+            }
+            for(int i = 0; i < length; ++i)
+            {
+                if(buffer[i] != bytes[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * @return the number of strings.
+     * @see java.util.AbstractCollection#size()
+     */
+    @Override
+    public int size()
+    {
+        return size;
+    }
+    
+    /**
+     * Decodes the string.
+     * 
+     * @param index
+     * @return the string at the index.
+     * @see java.util.AbstractList#get(int)
+     */
+    @Override
+    public String get(int index)
+    {
+        if(index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size));
+        }
+        Decoder decoder = new Decoder(bucketOffsets[index / BUCKET_SIZE]);
+        for(int i = index - index % BUCKET_SIZE; i <= index; ++i)
+        {
+            decoder.next();
+        }
+        return decoder.getString();
+    }
+    
+    /**
+     * Iterates strings decoding each of them once.
+     * 
+     * @return the iterator.
+     * @see java.util.AbstractList#iterator()
+     */
+    @Override
+    public Iterator<String> iterator()
+    {
+        return new Iterator<String>()
+        {
+            private final Decoder decoder = new Decoder(0);
+            private int index = 0;
+            
+            @Override
+            public boolean hasNext()
+            {
+                return index < size;
+            }
+            
+            @Override
+            public String next()
+            {
+                if(!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                decoder.next();
+                ++index;
+                return decoder.getString();
+            }
+            
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
+    /**
+     * Searches a string comparing encoded bytes, without creating strings.
+     * 
+     * @param o
+     * @return the index of the first occurrence. -1 if not found.
+     * @see java.util.AbstractList#indexOf(java.lang.Object)
+     */
+    @Override
+    public int indexOf(Object o)
+    {
+        if(o != null && !(o instanceof String))
+        {
+            return -1;
+        }
+        byte[] bytes = (o != null)?((String)o).getBytes(UTF8):null;
+        Decoder decoder = new Decoder(0);
+        for(int i = 0; i < size; ++i)
+        {
+            decoder.next();
+            if(decoder.matches(bytes))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * @param o
+     * @return whether the string is in this list.
+     * @see java.util.AbstractCollection#contains(java.lang.Object)
+     */
+    @Override
+    public boolean contains(Object o)
+    {
+        return indexOf(o) >= 0;
+    }
+    
+    /**
+     * Returns the approximate memory used for the contents.
+     * 
+     * @return the size of the encoded strings and the index of buckets in bytes.
+     */
+    public long getEncodedSize()
+    {
+        return data.length + 4L * bucketOffsets.length;
+    }
+}
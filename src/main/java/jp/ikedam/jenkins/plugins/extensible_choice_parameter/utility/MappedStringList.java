@@ -0,0 +1,404 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of strings read from a memory-mapped file.
+ * 
+ * Strings are not read when the list is opened,
+ * and each string is decoded from the mapped file each time it is read.
+ * The contents of the file are paged in by the operating system,
+ * and not held in the Java heap, which is useful for lists with millions of strings.
+ * 
+ * The file consists of:
+ * <ol>
+ *     <li>the header: {@link #MAGIC}, {@link #VERSION}, the number of strings, and the size of the data in bytes (4 bytes each)</li>
+ *     <li>the end offset of each string in the data (4 bytes each). The highest bit is set for null.</li>
+ *     <li>the data: strings encoded in UTF-8</li>
+ * </ol>
+ * All integers are in big endian.
+ * 
+ * The mapping is released when the list is garbage collected.
+ * Files must not be modified while mapped:
+ * write a new file with {@link #write(File, List)} instead.
+ */
+public class MappedStringList extends AbstractList<String> implements RandomAccess, Serializable
+{
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * The first 4 bytes of files ("ECPL").
+     */
+    public static final int MAGIC = 0x4543504C;
+    
+    /**
+     * The version of the format.
+     */
+    public static final int VERSION = 1;
+    
+    private static final int HEADER_SIZE = 16;
+    
+    private static final int NULL_FLAG = 0x80000000;
+    
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    private final File file;
+    private final int size;
+    private final int dataStart;
+    private final transient ByteBuffer buffer;
+    
+    private MappedStringList(File file, int size, ByteBuffer buffer)
+    {
+        this.file = file;
+        this.size = size;
+        this.dataStart = HEADER_SIZE + 4 * size;
+        this.buffer = buffer;
+    }
+    
+    /**
+     * Write strings to a file.
+     * 
+     * The file is written to a temporary file, and renamed to the file,
+     * so that lists already opened from the file are not affected.
+     * 
+     * @param file the file to write.
+     * @param stringList strings to write. may contain null.
+     * @throws IOException failed to write, or strings are too large for a file.
+     */
+    public static void write(File file, List<String> stringList) throws IOException
+    {
+        int size = stringList.size();
+        int dataStart = HEADER_SIZE + 4 * size;
+        if(size > (Integer.MAX_VALUE - HEADER_SIZE) / 4)
+        {
+            throw new IOException(String.format("Too many strings to write to %s: %d", file, size));
+        }
+        
+        File tmpFile = createTempFile(file);
+        boolean succeeded = false;
+        RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            
+            // write the data first, and then the header and offsets.
+            ByteBuffer header = ByteBuffer.allocate(dataStart);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(size);
+            header.putInt(0);
+            channel.position(dataStart);
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            long offset = 0;
+            for(String s: stringList)
+            {
+                if(s == null)
+                {
+                    header.putInt((int)offset | NULL_FLAG);
+                    continue;
+                }
+                byte[] bytes = s.getBytes(UTF8);
+                offset += bytes.length;
+                if(offset > Integer.MAX_VALUE - dataStart)
+                {
+                    throw new IOException(String.format("Too large strings to write to %s", file));
+                }
+                out.write(bytes);
+                header.putInt((int)offset);
+            }
+            out.flush();
+            header.putInt(12, (int)offset);
+            header.flip();
+            while(header.hasRemaining())
+            {
+                // the header starts at the beginning of the file.
+                channel.write(header, header.position());
+            }
+            channel.force(false);
+            raf.close();
+            raf = null;
+            
+            replace(tmpFile, file);
+            succeeded = true;
+        }
+        finally
+        {
+            if(raf != null)
+            {
+                raf.close();
+            }
+            if(!succeeded)
+            {
+                tmpFile.delete();
+            }
+        }
+    }
+    
+    /**
+     * Open a file written with {@link #write(File, List)}.
+     * 
+     * Only the header is read.
+     * 
+     * @param file the file to open.
+     * @return the list of strings in the file.
+     * @throws IOException failed to open, or the file is not a valid list.
+     */
+    public static MappedStringList open(File file) throws IOException
+    {
+        ByteBuffer buffer = map(file);
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+        {
+            throw new IOException(String.format("%s is not a list of strings", file));
+        }
+        int size = buffer.getInt(8);
+        int dataSize = buffer.getInt(12);
+        if(size < 0 || dataSize < 0 || HEADER_SIZE + 4L * size + dataSize != buffer.capacity())
+        {
+            throw new IOException(String.format("%s is broken", file));
+        }
+        return new MappedStringList(file, size, buffer);
+    }
+    
+    /**
+     * Create a temporary file to write a file.
+     * 
+     * Created in the same directory, to be renamed with {@link #replace(File, File)}.
+     * 
+     * @param file the file to write.
+     * @return the temporary file.
+     * @throws IOException
+     */
+    static File createTempFile(File file) throws IOException
+    {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if(dir != null && !dir.isDirectory() && !dir.mkdirs())
+        {
+            throw new IOException(String.format("Failed to create %s", dir));
+        }
+        return File.createTempFile("tmp", ".tmp", dir);
+    }
+    
+    /**
+     * Rename a temporary file to the file to write.
+     * 
+     * Files already mapped are not affected.
+     * 
+     * @param tmpFile the temporary file created with {@link #createTempFile(File)}.
+     * @param file the file to write.
+     * @throws IOException
+     */
+    static void replace(File tmpFile, File file) throws IOException
+    {
+        if(!tmpFile.renameTo(file))
+        {
+            // renameTo doesn't overwrite files in some platforms.
+            if(!file.delete() || !tmpFile.renameTo(file))
+            {
+                throw new IOException(String.format("Failed to rename %s to %s", tmpFile, file));
+            }
+        }
+    }
+    
+    /**
+     * Map a whole file read only.
+     * 
+     * @param file the file to map.
+     * @return the mapped contents, in big endian.
+     * @throws IOException failed to map, or the file is too large.
+     */
+    static ByteBuffer map(File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            long length = raf.length();
+            if(length > Integer.MAX_VALUE)
+            {
+                throw new IOException(String.format("%s is too large to map", file));
+            }
+            // the mapping stays valid after the file is closed.
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+    
+    /**
+     * @return the file this list is read from.
+     */
+    public File getFile()
+    {
+        return file;
+    }
+    
+    /**
+     * Returns a file to store data derived from this list, like indexes.
+     * 
+     * Named after the file of this list,
+     * so that it is removed together with the list.
+     * 
+     * @param suffix appended to the name of the file of this list.
+     * @return the file next to the file of this list.
+     */
+    public File getSidecarFile(String suffix)
+    {
+        return new File(file.getPath() + suffix);
+    }
+    
+    /**
+     * @return the number of strings.
+     * @see java.util.AbstractCollection#size()
+     */
+    @Override
+    public int size()
+    {
+        return size;
+    }
+    
+    private int getEndOffset(int index)
+    {
+        return buffer.getInt(HEADER_SIZE + 4 * index);
+    }
+    
+    private int getStartOffset(int index)
+    {
+        return (index > 0)?(getEndOffset(index - 1) & ~NULL_FLAG):0;
+    }
+    
+    /**
+     * Decodes the string from the mapped file.
+     * 
+     * @param index
+     * @return the string at the index.
+     * @see java.util.AbstractList#get(int)
+     */
+    @Override
+    public String get(int index)
+    {
+        if(index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size));
+        }
+        int end = getEndOffset(index);
+        if((end & NULL_FLAG) != 0)
+        {
+            return null;
+        }
+        int start = getStartOffset(index);
+        byte[] bytes = new byte[end - start];
+        // the position of the buffer is shared among threads.
+        ByteBuffer b = buffer.duplicate();
+        b.position(dataStart + start);
+        b.get(bytes);
+        return new String(bytes, UTF8);
+    }
+    
+    /**
+     * Searches a string comparing bytes in the mapped file, without creating strings.
+     * 
+     * @param o
+     * @return the index of the first occurrence. -1 if not found.
+     * @see java.util.AbstractList#indexOf(java.lang.Object)
+     */
+    @Override
+    public int indexOf(Object o)
+    {
+        if(o != null && !(o instanceof String))
+        {
+            return -1;
+        }
+        byte[] bytes = (o != null)?((String)o).getBytes(UTF8):null;
+        int start = 0;
+        for(int i = 0; i < size; ++i)
+        {
+            int end = getEndOffset(i);
+            if((end & NULL_FLAG) != 0)
+            {
+                if(bytes == null)
+                {
+                    return i;
+                }
+                continue;
+            }
+            if(bytes != null && end - start == bytes.length && matches(dataStart + start, bytes))
+            {
+                return i;
+            }
+            start = end;
+        }
+        return -1;
+    }
+    
+    private boolean matches(int position, byte[] bytes)
+    {
+        for(int i = 0; i < bytes.length; ++i)
+        {
+            if(buffer.get(position + i) != bytes[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @param o
+     * @return whether the string is in this list.
+     * @see java.util.AbstractCollection#contains(java.lang.Object)
+     */
+    @Override
+    public boolean contains(Object o)
+    {
+        return indexOf(o) >= 0;
+    }
+    
+    /**
+     * Serialized as an ordinary list, for the mapping cannot be serialized.
+     * 
+     * @return the list to serialize.
+     * @throws ObjectStreamException
+     */
+    private Object writeReplace() throws ObjectStreamException
+    {
+        return new ArrayList<String>(this);
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/**
+ * Watches changes of choices of all fields in the page with a single request.
+ * 
+ * A request for each field would use up connections of the browser
+ * (stalling requests to load choices) and threads of the server.
+ * Fields registered at the same time (e.g. when the page is loaded)
+ * are watched together, and ones registered while watching
+ * are watched from the next request.
+ */
+var staticSelectChoiceWatcher = {
+    /*
+     * the URL without the query to the group of fields watched with it.
+     */
+    groups: {},
+    
+    /**
+     * Watch changes of choices of a field.
+     * 
+     * @param watchUrl the URL to watch the field specified with "watchUrl" attribute,
+     *        with queries to specify the field.
+     * @param onChange called with the result for the field
+     *        ({fingerprint: ..., total: ..., changed: ...}) each time the watch returns.
+     */
+    add: function(watchUrl, onChange) {
+        var index = watchUrl.indexOf("?");
+        var url = (index < 0) ? watchUrl : watchUrl.substring(0, index);
+        var group = this.groups[url];
+        if (!group) {
+            group = {targets: [], watching: false};
+            this.groups[url] = group;
+        }
+        group.targets.push({
+            query: (index < 0) ? "" : watchUrl.substring(index + 1),
+            fingerprint: "",
+            onChange: onChange
+        });
+        if (!group.watching) {
+            group.watching = true;
+            // wait for other fields to be registered.
+            var self = this;
+            setTimeout(function() { self.watch(url, group); }, 0);
+        }
+    },
+    
+    watch: function(url, group) {
+        var self = this;
+        var targets = group.targets.slice(0);
+        if (targets.length <= 0) {
+            group.watching = false;
+            return;
+        }
+        var queries = [];
+        for (var i = 0; i < targets.length; ++i) {
+            queries.push(targets[i].query + "&fingerprint=" + encodeURIComponent(targets[i].fingerprint));
+        }
+        new Ajax.Request(url + "?" + queries.join("&"), {
+            method: "get",
+            onSuccess: function(rsp) {
+                var results = rsp.responseText.evalJSON().results;
+                for (var i = 0; i < targets.length && i < results.length; ++i) {
+                    if (results[i].error) {
+                        // no longer available.
+                        group.targets = group.targets.without(targets[i]);
+                        continue;
+                    }
+                    targets[i].fingerprint = results[i].fingerprint;
+                    targets[i].onChange(results[i]);
+                }
+                self.watch(url, group);
+            },
+            onFailure: function(rsp) {
+                // try again later not to flood the server.
+                setTimeout(function() { self.watch(url, group); }, 60000);
+            }
+        });
+    }
+};
+
+/**
+ * Creates a function to load choices page by page.
+ * 
+ * The URL and the number of choices in a page are specified
+ * with "choicesUrl" and "pageSize" attributes of the field.
+ * 
+ * @param e the field.
+ * @param onLoad called each time a page is loaded, with following arguments:
+ *        the array of all choices loaded so far,
+ *        whether all choices are loaded,
+ *        and whether the page is the first page (choices loaded before are discarded).
+ * @return the function to load the next page.
+ *         Calling it does nothing if a page is being loaded or all choices are loaded.
+ */
+function staticSelectChoiceLoader(e, onLoad) {
+    var url = e.getAttribute("choicesUrl");
+    var pageSize = parseInt(e.getAttribute("pageSize"), 10) || 100;
+    var choices = [];
+    var fingerprint = null;
+    var loading = false;
+    var done = false;
+    
+    var loadNext = function() {
+        if (loading || done) {
+            return;
+        }
+        loading = true;
+        new Ajax.Request(url, {
+            method: "get",
+            parameters: {start: choices.length, count: pageSize},
+            onSuccess: function(rsp) {
+                loading = false;
+                var json = rsp.responseText.evalJSON();
+                if (fingerprint != null && fingerprint != json.fingerprint) {
+                    // choices are updated in the server.
+                    // discard loaded choices and load from the first page.
+                    choices = [];
+                    fingerprint = null;
+                    loadNext();
+                    return;
+                }
+                var first = (fingerprint == null);
+                fingerprint = json.fingerprint;
+                choices = choices.concat(json.choices);
+                done = (choices.length >= json.total || json.choices.length <= 0);
+                onLoad(choices, done, first);
+            },
+            onFailure: function(rsp) {
+                loading = false;
+            }
+        });
+    };
+    
+    /*
+     * When "watchUrl" is specified, watch choices to change,
+     * and load them again when they changed.
+     * Choices partially loaded are reloaded with the next page,
+     * as the fingerprint of the page differs.
+     */
+    var watchUrl = e.getAttribute("watchUrl");
+    if (watchUrl) {
+        staticSelectChoiceWatcher.add(watchUrl, function(result) {
+            if (done && !loading && fingerprint != result.fingerprint) {
+                choices = [];
+                fingerprint = null;
+                done = false;
+                loadNext();
+            }
+        });
+    }
+    
+    return loadNext;
+}
+
+/*
+ * Not editable fields: load choices when the field gets focus.
+ * Options cannot be scrolled while a dropdown of SELECT is opened,
+ * so following pages are loaded one after another.
+ * Editable fields are handled in staticCombobox.js.
+ * 
+ * The selected value (the default value embedded in the page at first)
+ * is kept selected with a placeholder option until a page containing it is loaded.
+ */
+Behaviour.register({"SELECT.lazyChoices": function(e) {
+    if (Element.hasClassName(e, "staticCombobox")) {
+        return;
+    }
+    var selected = e.value;
+    var placeholder = null;
+    var appended = 0;
+    var removePlaceholder = function() {
+        if (placeholder != null) {
+            e.removeChild(placeholder);
+            placeholder = null;
+        }
+    };
+    var loadNext = staticSelectChoiceLoader(e, function(choices, done, first) {
+        var found = false;
+        if (first) {
+            // replace the option embedded in the page (the default value).
+            e.options.length = 0;
+            appended = 0;
+            placeholder = null;
+            if (selected) {
+                placeholder = new Option(selected, selected, false, true);
+                e.options[0] = placeholder;
+            }
+        }
+        for (; appended < choices.length; ++appended) {
+            var value = choices[appended];
+            e.options[e.options.length] = new Option(value, value, false, false);
+            if (value == selected && placeholder != null) {
+                found = true;
+            }
+        }
+        if (found || (done && placeholder != null)) {
+            // not a valid choice if not found in all pages.
+            removePlaceholder();
+            e.value = selected;
+            if (e.selectedIndex < 0 && e.options.length > 0) {
+                e.selectedIndex = 0;
+            }
+        }
+        if (!done) {
+            loadNext();
+        }
+    });
+    
+    var oldonchange = e.onchange;
+    e.onchange = function(ev) {
+        // selected by the user.
+        if (placeholder != null && e.options[e.selectedIndex] != placeholder) {
+            removePlaceholder();
+        }
+        selected = e.value;
+        if (oldonchange) {
+            return oldonchange.call(this, ev);
+        }
+    };
+    
+    var oldonfocus = e.onfocus;
+    e.onfocus = function(ev) {
+        loadNext();
+        if (oldonfocus) {
+            return oldonfocus.call(this, ev);
+        }
+    };
+    
+    if (e.getAttribute("preload") == "true") {
+        // choices are not embedded in the page, and needed to submit the form.
+        loadNext();
+    }
+}});
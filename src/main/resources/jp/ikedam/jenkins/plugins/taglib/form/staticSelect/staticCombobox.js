@@ -54,8 +54,11 @@ Behaviour.register({"SELECT.staticCombobox": function(e) {
      *   Original behavior: Show candidates that matches the current incomplete input.
      *   Changed behavior : Show all the candidates, not concerning with the current incomplete input.
      */
-    var c = new ComboBox(e,function(value) {
+    var populate = function(value) {
         return items;
+    };
+    var c = new ComboBox(e,function(value) {
+        return populate(value);
     }, {});
     
     /*
@@ -64,17 +67,221 @@ Behaviour.register({"SELECT.staticCombobox": function(e) {
      *   Changed behavior : The choice matching the current incomplete input is selected  when the dropdown is shown.
      */
     
+    var indexedItems = null;
+    var valueToIndex = {};
+    var indexOfValue = function(items, value) {
+        if (items != indexedItems) {
+            // built once for each list of candidates, not for each key input.
+            indexedItems = items;
+            valueToIndex = {};
+            for (var i = items.length - 1; i >= 0; --i) {
+                valueToIndex["_" + items[i]] = i;
+            }
+        }
+        var index = valueToIndex["_" + value];
+        return (index != null) ? index : -1;
+    };
+    
     c.oldPopulateDropdown = c.populateDropdown;
     c.populateDropdown = function(){
         this.oldPopulateDropdown();
-        this.selectedItemIndex = -1;
-        for(var i = 0; i < this.availableItems.length; ++i){
-            if(this.availableItems[i] == this.field.value){
-                this.selectedItemIndex = i;
-                break;
-            }
+        this.selectedItemIndex = indexOfValue(this.availableItems, this.field.value);
+        this.updateSelection();
+    }
+    
+    /*
+     * Changes from the original 8:
+     *   Original behavior: Creates elements for all candidates in the dropdown.
+     *   Changed behavior : When there are many candidates,
+     *                      creates elements only for candidates in the visible area of the dropdown,
+     *                      and replaces them when the dropdown is scrolled.
+     */
+    var VIRTUAL_THRESHOLD = 100;
+    var ROW_HEIGHT = 18;
+    var VISIBLE_ROWS = 20;
+    var OVERSCAN_ROWS = 10;
+    var virtual = false;
+    var renderedFrom = -1;
+    var renderedTo = -1;
+    var spacer = null;
+    
+    var renderRows = function(force) {
+        var dropdown = c.dropdown;
+        var height = dropdown.clientHeight > 0 ? dropdown.clientHeight : ROW_HEIGHT * VISIBLE_ROWS;
+        var from = Math.max(0, Math.floor(dropdown.scrollTop / ROW_HEIGHT) - OVERSCAN_ROWS);
+        var to = Math.min(
+            c.availableItems.length,
+            Math.ceil((dropdown.scrollTop + height) / ROW_HEIGHT) + OVERSCAN_ROWS
+        );
+        if (!force && from == renderedFrom && to == renderedTo) {
+            return;
+        }
+        renderedFrom = from;
+        renderedTo = to;
+        spacer.innerHTML = "";
+        for (var i = from; i < to; ++i) {
+            var item = document.createElement("div");
+            item.className = (i == c.selectedItemIndex) ? "comboBoxSelectedItem" : "comboBoxItem";
+            item.appendChild(document.createTextNode(c.availableItems[i]));
+            item.style.position = "absolute";
+            item.style.left = "0";
+            item.style.right = "0";
+            item.style.top = (i * ROW_HEIGHT) + "px";
+            item.style.height = ROW_HEIGHT + "px";
+            item.style.lineHeight = ROW_HEIGHT + "px";
+            item.style.overflow = "hidden";
+            item.style.whiteSpace = "nowrap";
+            item.comboBoxIndex = i;
+            item.onmousemove = function() {
+                if (c.selectedItemIndex != this.comboBoxIndex) {
+                    c.selectedItemIndex = this.comboBoxIndex;
+                    c.updateSelection();
+                }
+            };
+            item.onmousedown = function() {
+                c.field.value = c.availableItems[this.comboBoxIndex];
+                c.hideDropdown();
+            };
+            spacer.appendChild(item);
+        }
+    };
+    
+    c.plainPopulateDropdown = c.populateDropdown;
+    c.populateDropdown = function() {
+        virtual = (this.availableItems != null && this.availableItems.length > VIRTUAL_THRESHOLD);
+        if (!virtual) {
+            this.plainPopulateDropdown();
+            return;
         }
+        this.dropdown.innerHTML = "";
+        this.dropdown.style.maxHeight = (ROW_HEIGHT * VISIBLE_ROWS) + "px";
+        this.dropdown.style.overflowY = "auto";
+        spacer = document.createElement("div");
+        spacer.style.position = "relative";
+        spacer.style.height = (this.availableItems.length * ROW_HEIGHT) + "px";
+        this.dropdown.appendChild(spacer);
+        renderedFrom = renderedTo = -1;
+        this.selectedItemIndex = indexOfValue(this.availableItems, this.field.value);
         this.updateSelection();
+    };
+    
+    c.plainUpdateSelection = c.updateSelection;
+    c.updateSelection = function() {
+        if (!virtual) {
+            this.plainUpdateSelection();
+            return;
+        }
+        var dropdown = this.dropdown;
+        if (this.selectedItemIndex >= 0) {
+            // scroll to show the selected candidate.
+            var top = this.selectedItemIndex * ROW_HEIGHT;
+            var height = dropdown.clientHeight > 0 ? dropdown.clientHeight : ROW_HEIGHT * VISIBLE_ROWS;
+            if (top < dropdown.scrollTop) {
+                dropdown.scrollTop = top;
+            } else if (top + ROW_HEIGHT > dropdown.scrollTop + height) {
+                dropdown.scrollTop = top + ROW_HEIGHT - height;
+            }
+        }
+        renderRows(true);
+    };
+    
+    if (c.dropdown) {
+        Event.observe(c.dropdown, "scroll", function() {
+            if (virtual) {
+                renderRows(false);
+            }
+        });
+    }
+    
+    c.plainValueChanged = c.valueChanged;
+    c.valueChanged = function() {
+        this.plainValueChanged();
+        if (virtual && this.isDropdownShowing) {
+            // the dropdown may be hidden when rendered first.
+            this.updateSelection();
+        }
+    };
+    
+    /*
+     * Changes from the original 6:
+     *   Original behavior: All candidates are given when initializing.
+     *   Changed behavior : When "choicesUrl" is specified,
+     *                      candidates are loaded page by page from the server
+     *                      when the field gets focus and when the dropdown is scrolled to the end.
+     */
+    var loadNext = function() {};
+    if (e.getAttribute("choicesUrl")) {
+        loadNext = staticSelectChoiceLoader(e, function(choices, done, first) {
+            items = choices;
+            if (c.isDropdownShowing) {
+                c.valueChanged();
+            }
+        });
+        var isNearEnd = function(dropdown) {
+            return dropdown.scrollTop + dropdown.clientHeight >= dropdown.scrollHeight - 20;
+        };
+        if (c.dropdown) {
+            c.dropdown.style.maxHeight = "20em";
+            c.dropdown.style.overflowY = "auto";
+            c.dropdown.onscroll = function() {
+                if (isNearEnd(this)) {
+                    loadNext();
+                }
+            };
+        }
+        c.oldUpdateSelection = c.updateSelection;
+        c.updateSelection = function() {
+            this.oldUpdateSelection();
+            if (this.availableItems != null && this.selectedItemIndex >= this.availableItems.length - 1) {
+                // moved to the last candidate with keys.
+                loadNext();
+            }
+        }
+    }
+    
+    /*
+     * Changes from the original 7:
+     *   Original behavior: Candidates are given only from the client.
+     *   Changed behavior : When "searchUrl" is specified,
+     *                      candidates matching the typed value are searched in the server
+     *                      after the user stops typing for a while.
+     *                      All candidates are shown until the user edits the value.
+     */
+    var valueOnFocus = null;
+    var searchUrl = e.getAttribute("searchUrl");
+    if (searchUrl) {
+        var searchedPrefix = null;
+        var searchResults = null;
+        var searchTimer = null;
+        populate = function(value) {
+            if (value == "" || value == valueOnFocus) {
+                return items;
+            }
+            if (value == searchedPrefix) {
+                return searchResults;
+            }
+            if (searchTimer != null) {
+                clearTimeout(searchTimer);
+            }
+            searchTimer = setTimeout(function() {
+                searchTimer = null;
+                new Ajax.Request(searchUrl, {
+                    method: "get",
+                    parameters: {prefix: value},
+                    onSuccess: function(rsp) {
+                        if (c.field.value != value) {
+                            // the user typed further.
+                            return;
+                        }
+                        searchedPrefix = value;
+                        searchResults = rsp.responseText.evalJSON().choices;
+                        c.valueChanged();
+                    }
+                });
+            }, 300);
+            // show previous results until the search completes.
+            return (searchResults != null) ? searchResults : items;
+        };
     }
     
     /*
@@ -85,6 +292,7 @@ Behaviour.register({"SELECT.staticCombobox": function(e) {
     e.oldonfocus = e.onfocus;
     e.onfocus = function(e){
         var oldonsubmit = this.form.onsubmit;
+        valueOnFocus = this.value;
         this.oldonfocus(e);
         if(this.form.oldonsubmit != oldonsubmit){
             // Deal with the problem in some versions of Jenkins:
@@ -94,5 +302,6 @@ Behaviour.register({"SELECT.staticCombobox": function(e) {
             this.form.oldonsubmit = oldonsubmit;
         }
         this.comboBox.valueChanged();
+        loadNext();
     }
 }});
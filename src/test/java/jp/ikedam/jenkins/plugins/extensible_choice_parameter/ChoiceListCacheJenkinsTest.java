@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import jenkins.model.Jenkins;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Tests for ChoiceListCache, corresponding to Jenkins.
+ */
+public class ChoiceListCacheJenkinsTest
+{
+    @Rule
+    public ExtensibleChoiceParameterJenkinsRule j = new ExtensibleChoiceParameterJenkinsRule();
+    
+    private ExtensibleChoiceParameterDefinition.DescriptorImpl getDescriptor()
+    {
+        return (ExtensibleChoiceParameterDefinition.DescriptorImpl)Jenkins.getInstance().getDescriptor(ExtensibleChoiceParameterDefinition.class);
+    }
+    
+    @Test
+    public void testGetSnapshotAsyncRejected() throws Exception
+    {
+        getDescriptor().setCacheEnabled(true);
+        ChoiceListProvider provider = new SystemGroovyChoiceListProvider("return [\"value1\"]", null);
+        ChoiceListCache target = new ChoiceListCache();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        
+        try
+        {
+            target.getSnapshotAsync(provider, executor);
+            fail("retrievals cannot start in a shut down executor");
+        }
+        catch(RejectedExecutionException e)
+        {
+            // expected
+        }
+        
+        // not waiting for the retrieval never run.
+        long start = System.currentTimeMillis();
+        assertEquals(Arrays.asList("value1"), target.getSnapshot(provider).getChoiceList());
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(String.format("took %d ms", elapsed), elapsed < 30 * 1000);
+    }
+}
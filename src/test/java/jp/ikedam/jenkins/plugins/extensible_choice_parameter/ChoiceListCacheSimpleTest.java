@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Tests for ChoiceListCache, not corresponding to Jenkins.
+ */
+public class ChoiceListCacheSimpleTest
+{
+    @Test
+    public void testComputeTtl()
+    {
+        assertEquals("changes every time", 10, ChoiceListCache.computeTtl(1.0, 10, 1000));
+        assertEquals("never changes", 1000, ChoiceListCache.computeTtl(0.0, 10, 1000));
+        assertEquals("changes half", 100, ChoiceListCache.computeTtl(0.5, 10, 1000));
+        assertEquals("out of range", 10, ChoiceListCache.computeTtl(2.0, 10, 1000));
+        assertEquals("max less than min", 10, ChoiceListCache.computeTtl(0.0, 10, 5));
+        assertEquals("min is 0", 1000, ChoiceListCache.computeTtl(1.0, 0, 1000));
+    }
+    
+    @Test
+    public void testCacheEntryUpdate()
+    {
+        ChoiceListCache.CacheEntry entry = new ChoiceListCache.CacheEntry();
+        assertFalse("not retrieved yet", entry.isFresh(0));
+        
+        assertTrue("first retrieval", entry.update(new ChoiceListSnapshot(Arrays.asList("a", "b"), 0), 10, 1000));
+        assertEquals("starts with the minimum", 10, entry.getTtl());
+        assertTrue("fresh", entry.isFresh(9));
+        assertFalse("expired", entry.isFresh(10));
+        
+        // the time to live grows while the list does not change.
+        long ttl = entry.getTtl();
+        for(int i = 0; i < 5; ++i)
+        {
+            assertFalse("not changed", entry.update(new ChoiceListSnapshot(Arrays.asList("a", "b"), 0), 10, 1000));
+            assertTrue("time to live grows", entry.getTtl() > ttl);
+            ttl = entry.getTtl();
+        }
+        
+        // the time to live shrinks when the list changes.
+        assertTrue("changed", entry.update(new ChoiceListSnapshot(Arrays.asList("a", "b", "c"), 0), 10, 1000));
+        assertTrue("time to live shrinks", entry.getTtl() < ttl);
+        
+        entry.expire();
+        assertFalse("expired", entry.isFresh(0));
+        assertEquals("contents are preserved", Arrays.asList("a", "b", "c"), entry.getSnapshot().getChoiceList());
+    }
+    
+    @Test
+    public void testCacheEntryCircuitBreaker()
+    {
+        ChoiceListCache.CacheEntry entry = new ChoiceListCache.CacheEntry();
+        
+        assertFalse("first failure", entry.recordFailure(0, 3, 100));
+        assertFalse("second failure", entry.recordFailure(0, 3, 100));
+        assertFalse("not open yet", entry.isCircuitOpen(0));
+        assertTrue("third failure", entry.recordFailure(10, 3, 100));
+        assertEquals("failures", 3, entry.getFailures());
+        assertTrue("open", entry.isCircuitOpen(109));
+        assertFalse("cool-down passed", entry.isCircuitOpen(110));
+        
+        entry.recordSuccess();
+        assertEquals("reset with a success", 0, entry.getFailures());
+        assertFalse("closed with a success", entry.isCircuitOpen(10));
+        assertFalse("failures are counted again", entry.recordFailure(20, 3, 100));
+        
+        // threshold 0 never opens.
+        ChoiceListCache.CacheEntry disabled = new ChoiceListCache.CacheEntry();
+        for(int i = 0; i < 10; ++i)
+        {
+            assertFalse("disabled", disabled.recordFailure(0, 0, 100));
+        }
+        assertFalse("disabled", disabled.isCircuitOpen(0));
+    }
+    
+    @Test
+    public void testGetSnapshotAsync() throws Exception
+    {
+        ChoiceListProvider provider = new ChoiceListProvider()
+        {
+            @Override
+            public List<String> getChoiceList()
+            {
+                return Arrays.asList("a", "b", "c");
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<ChoiceListSnapshot> future = new ChoiceListCache().getSnapshotAsync(provider, executor);
+            ChoiceListSnapshot snapshot = future.get();
+            assertEquals(Arrays.asList("a", "b", "c"), snapshot.getChoiceList());
+            assertSame("same snapshot for each call", snapshot, future.get());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for ChoiceListChangeNotifier, not corresponding to Jenkins.
+ */
+public class ChoiceListChangeNotifierSimpleTest
+{
+    @Test
+    public void testVersion()
+    {
+        ChoiceListChangeNotifier target = new ChoiceListChangeNotifier();
+        long version = target.getVersion("key1");
+        assertEquals(version, target.getVersion("key1"));
+        
+        target.notifyChanged("key1");
+        assertTrue("incremented", version != target.getVersion("key1"));
+        assertEquals("another provider", version, target.getVersion("key2"));
+    }
+    
+    @Test
+    public void testAwaitTimeout()
+    {
+        ChoiceListChangeNotifier target = new ChoiceListChangeNotifier();
+        long version = target.getVersion("key1");
+        target.notifyChanged("key2");
+        
+        long start = System.currentTimeMillis();
+        assertFalse(target.await("key1", version, 100));
+        assertTrue(System.currentTimeMillis() - start >= 100);
+    }
+    
+    @Test
+    public void testAwaitAlreadyChanged()
+    {
+        ChoiceListChangeNotifier target = new ChoiceListChangeNotifier();
+        long version = target.getVersion("key1");
+        target.notifyChanged("key1");
+        
+        // changed between getVersion and await.
+        assertTrue(target.await("key1", version, 10000));
+    }
+    
+    @Test
+    public void testAwaitNotified() throws Exception
+    {
+        final ChoiceListChangeNotifier target = new ChoiceListChangeNotifier();
+        long version = target.getVersion("key1");
+        Thread t = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(100);
+                }
+                catch(InterruptedException e)
+                {
+                    return;
+                }
+                target.notifyChanged("key1");
+            }
+        };
+        t.start();
+        
+        long start = System.currentTimeMillis();
+        assertTrue(target.await("key1", version, 10000));
+        assertTrue("woke up before the timeout", System.currentTimeMillis() - start < 10000);
+        t.join();
+    }
+    
+    @Test
+    public void testAwaitAny() throws Exception
+    {
+        final ChoiceListChangeNotifier target = new ChoiceListChangeNotifier();
+        Map<String, Long> versions = new HashMap<String, Long>();
+        versions.put("key1", target.getVersion("key1"));
+        versions.put("key2", target.getVersion("key2"));
+        
+        target.notifyChanged("key3");
+        assertFalse("not watched", target.await(versions, 100));
+        
+        Thread t = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(100);
+                }
+                catch(InterruptedException e)
+                {
+                    return;
+                }
+                target.notifyChanged("key2");
+            }
+        };
+        t.start();
+        
+        long start = System.currentTimeMillis();
+        assertTrue(target.await(versions, 10000));
+        assertTrue("woke up before the timeout", System.currentTimeMillis() - start < 10000);
+        t.join();
+        
+        // returns immediately without providers.
+        start = System.currentTimeMillis();
+        assertFalse(target.await(Collections.<String, Long>emptyMap(), 10000));
+        assertTrue(System.currentTimeMillis() - start < 10000);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for ChoiceListEvaluationLimiter, not corresponding to Jenkins.
+ */
+public class ChoiceListEvaluationLimiterSimpleTest
+{
+    @Test
+    public void testUnlimited()
+    {
+        ChoiceListEvaluationLimiter target = new ChoiceListEvaluationLimiter();
+        for(int i = 0; i < 10; ++i)
+        {
+            assertNotNull("unlimited", target.acquire("type", "key", 0, 0, 0));
+        }
+    }
+    
+    @Test
+    public void testPerProvider()
+    {
+        ChoiceListEvaluationLimiter target = new ChoiceListEvaluationLimiter();
+        ChoiceListEvaluationLimiter.Permit permit1 = target.acquire("type", "key1", 0, 2, 0);
+        ChoiceListEvaluationLimiter.Permit permit2 = target.acquire("type", "key1", 0, 2, 0);
+        assertNotNull("first", permit1);
+        assertNotNull("second", permit2);
+        assertNull("exceeded", target.acquire("type", "key1", 0, 2, 10));
+        assertNotNull("another provider", target.acquire("type", "key2", 0, 2, 0));
+        
+        permit1.release();
+        assertNotNull("released", target.acquire("type", "key1", 0, 2, 0));
+    }
+    
+    @Test
+    public void testPerType()
+    {
+        ChoiceListEvaluationLimiter target = new ChoiceListEvaluationLimiter();
+        ChoiceListEvaluationLimiter.Permit permit = target.acquire("type1", "key1", 1, 0, 0);
+        assertNotNull("first", permit);
+        assertNull("exceeded", target.acquire("type1", "key2", 1, 0, 10));
+        assertNotNull("another type", target.acquire("type2", "key3", 1, 0, 0));
+        
+        permit.release();
+        assertNotNull("released", target.acquire("type1", "key2", 1, 0, 0));
+    }
+    
+    @Test
+    public void testFailedToAcquireType()
+    {
+        ChoiceListEvaluationLimiter target = new ChoiceListEvaluationLimiter();
+        assertNotNull("first", target.acquire("type", "key1", 1, 1, 0));
+        
+        // the permit for the provider must be released
+        // when failed to acquire the permit for the type.
+        assertNull("type exceeded", target.acquire("type", "key2", 1, 1, 0));
+        assertNull("type exceeded", target.acquire("type", "key2", 1, 1, 0));
+        assertNotNull("provider not leaked", target.acquire("type2", "key2", 1, 1, 0));
+    }
+    
+    @Test
+    public void testWait() throws Exception
+    {
+        final ChoiceListEvaluationLimiter target = new ChoiceListEvaluationLimiter();
+        final ChoiceListEvaluationLimiter.Permit permit = target.acquire("type", "key", 1, 1, 0);
+        Thread t = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(100);
+                }
+                catch(InterruptedException e)
+                {
+                    // ignore
+                }
+                permit.release();
+            }
+        };
+        t.start();
+        assertNotNull("acquired after released", target.acquire("type", "key", 1, 1, 5000));
+        t.join();
+    }
+    
+    @Test
+    public void testLimitChanged()
+    {
+        ChoiceListEvaluationLimiter target = new ChoiceListEvaluationLimiter();
+        ChoiceListEvaluationLimiter.Permit permit = target.acquire("type", "key", 0, 1, 0);
+        assertNull("exceeded", target.acquire("type", "key", 0, 1, 0));
+        assertNotNull("limit increased", target.acquire("type", "key", 0, 2, 0));
+        permit.release();
+    }
+}
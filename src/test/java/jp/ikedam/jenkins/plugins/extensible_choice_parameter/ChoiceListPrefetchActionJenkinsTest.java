@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import static org.junit.Assert.*;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersDefinitionProperty;
+
+import java.util.Arrays;
+
+import jenkins.model.Jenkins;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule.WebClient;
+
+/**
+ * Tests for ChoiceListPrefetchAction, corresponding to Jenkins.
+ */
+public class ChoiceListPrefetchActionJenkinsTest
+{
+    @Rule
+    public ExtensibleChoiceParameterJenkinsRule j = new ExtensibleChoiceParameterJenkinsRule();
+    
+    private static final String PROPERTY_NAME = "ChoiceListPrefetchActionJenkinsTest.value";
+    
+    private ExtensibleChoiceParameterDefinition.DescriptorImpl getDescriptor()
+    {
+        return (ExtensibleChoiceParameterDefinition.DescriptorImpl)Jenkins.getInstance().getDescriptor(ExtensibleChoiceParameterDefinition.class);
+    }
+    
+    @Before
+    public void setUp()
+    {
+        ExtensibleChoiceParameterDefinition.DescriptorImpl descriptor = getDescriptor();
+        descriptor.setCacheEnabled(true);
+        descriptor.setMinCacheTtl(3600);
+        descriptor.setMaxCacheTtl(3600);
+        descriptor.setPrefetchEnabled(true);
+        ChoiceListCache.getInstance().clear();
+    }
+    
+    @After
+    public void tearDown()
+    {
+        System.clearProperty(PROPERTY_NAME);
+        ChoiceListCache.getInstance().clear();
+    }
+    
+    private ChoiceListSnapshot waitForCache(ChoiceListProvider provider, String value) throws InterruptedException
+    {
+        for(int i = 0; i < 50; ++i)
+        {
+            ChoiceListSnapshot snapshot = ChoiceListCache.getInstance().getCachedSnapshot(provider);
+            if(snapshot != null && snapshot.getChoiceList().contains(value))
+            {
+                return snapshot;
+            }
+            Thread.sleep(100);
+        }
+        return ChoiceListCache.getInstance().getCachedSnapshot(provider);
+    }
+    
+    @Test
+    public void testPrefetch() throws Exception
+    {
+        ExtensibleChoiceParameterDefinition def = new ExtensibleChoiceParameterDefinition(
+                "test",
+                new SystemGroovyChoiceListProvider(
+                        String.format("return [System.getProperty(\"%s\")]", PROPERTY_NAME),
+                        null
+                ),
+                false,
+                "description"
+        );
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.addProperty(new ParametersDefinitionProperty(def));
+        assertNotNull(p.getAction(ChoiceListPrefetchAction.class));
+        assertNull(ChoiceListCache.getInstance().getCachedSnapshot(def.getChoiceListProvider()));
+        
+        System.setProperty(PROPERTY_NAME, "value1");
+        WebClient wc = j.createWebClient();
+        wc.getPage(p);
+        ChoiceListSnapshot snapshot = waitForCache(def.getChoiceListProvider(), "value1");
+        assertNotNull("retrieved in background", snapshot);
+        assertEquals(Arrays.asList("value1"), snapshot.getChoiceList());
+        
+        // not retrieved again in a while.
+        System.setProperty(PROPERTY_NAME, "value2");
+        ChoiceListCache.getInstance().invalidate(def.getChoiceListProvider());
+        wc.getPage(p);
+        Thread.sleep(1000);
+        assertEquals(Arrays.asList("value1"), ChoiceListCache.getInstance().getCachedSnapshot(def.getChoiceListProvider()).getChoiceList());
+    }
+    
+    @Test
+    public void testPrefetchDisabled() throws Exception
+    {
+        getDescriptor().setPrefetchEnabled(false);
+        ExtensibleChoiceParameterDefinition def = new ExtensibleChoiceParameterDefinition(
+                "test",
+                new SystemGroovyChoiceListProvider(
+                        String.format("return [System.getProperty(\"%s\")]", PROPERTY_NAME),
+                        null
+                ),
+                false,
+                "description"
+        );
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.addProperty(new ParametersDefinitionProperty(def));
+        
+        System.setProperty(PROPERTY_NAME, "value1");
+        WebClient wc = j.createWebClient();
+        wc.getPage(p);
+        Thread.sleep(1000);
+        assertNull(ChoiceListCache.getInstance().getCachedSnapshot(def.getChoiceListProvider()));
+    }
+}
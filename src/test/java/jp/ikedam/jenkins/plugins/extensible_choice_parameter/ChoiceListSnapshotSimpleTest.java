@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListTrigramIndex;
+
+import org.junit.Test;
+
+/**
+ * Tests for ChoiceListSnapshot, not corresponding to Jenkins.
+ */
+public class ChoiceListSnapshotSimpleTest
+{
+    private static class RecordingExecutor implements Executor
+    {
+        public final List<Runnable> tasks = new ArrayList<Runnable>();
+        
+        @Override
+        public void execute(Runnable command)
+        {
+            tasks.add(command);
+        }
+    }
+    
+    @Test
+    public void testPrepareSearch() throws Exception
+    {
+        ChoiceListSnapshot target = new ChoiceListSnapshot(Arrays.asList("abc", "abd", "xyz"));
+        RecordingExecutor executor = new RecordingExecutor();
+        
+        target.prepareSearch(true, executor);
+        assertEquals(1, executor.tasks.size());
+        Thread thread = new Thread(executor.tasks.get(0));
+        thread.start();
+        thread.join();
+        assertTrue("built in background", ((Future<?>)executor.tasks.get(0)).isDone());
+        
+        ChoiceListTrigramIndex index = target.getTrigramIndex();
+        assertSame(index, target.getTrigramIndex());
+        assertEquals(Arrays.asList("abc"), index.search("abc", 10).getChoiceList());
+        
+        target.prepareSearch(true, executor);
+        assertEquals("not built again", 1, executor.tasks.size());
+        
+        target.prepareSearch(false, executor);
+        assertEquals(2, executor.tasks.size());
+        assertEquals("built at the search if not run yet", Arrays.asList("abc", "abd"), target.getPrefixIndex().search("ab", 10));
+        executor.tasks.get(1).run();
+        assertEquals(Arrays.asList("abc", "abd"), target.getPrefixIndex().search("ab", 10));
+    }
+    
+    @Test
+    public void testPrepareSearchRejected()
+    {
+        ChoiceListSnapshot target = new ChoiceListSnapshot(Arrays.asList("abc", "abd", "xyz"));
+        target.prepareSearch(false, new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                throw new RejectedExecutionException();
+            }
+        });
+        assertEquals("built at the search", Arrays.asList("abc", "abd"), target.getPrefixIndex().search("ab", 10));
+    }
+}
@@ -40,6 +40,7 @@ import hudson.model.FreeStyleProject;
 import hudson.model.ParameterDefinition;
 import hudson.model.ParametersDefinitionProperty;
 import hudson.util.FormValidation;
+import net.sf.json.JSONObject;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -146,6 +147,58 @@ public class ExtensibleChoiceParameterDefinitionJenkinsTest
         }
     }
     
+    private static class CountingChoiceListProvider extends MockChoiceListProvider
+    {
+        private int count = 0;
+        public CountingChoiceListProvider(List<String> choiceList, String defaultChoice){
+            super(choiceList, defaultChoice);
+        }
+        @Override
+        public List<String> getChoiceList()
+        {
+            ++count;
+            return super.getChoiceList();
+        }
+        public int getCount()
+        {
+            return count;
+        }
+    }
+    
+    private static class SleepingChoiceListProvider extends MockChoiceListProvider
+    {
+        private final long sleep;
+        public SleepingChoiceListProvider(List<String> choiceList, long sleep){
+            super(choiceList, null);
+            this.sleep = sleep;
+        }
+        @Override
+        public List<String> getChoiceList()
+        {
+            try
+            {
+                Thread.sleep(sleep);
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return super.getChoiceList();
+        }
+    }
+    
+    private static class CachedSleepingChoiceListProvider extends SleepingChoiceListProvider
+    {
+        public CachedSleepingChoiceListProvider(List<String> choiceList, long sleep){
+            super(choiceList, sleep);
+        }
+        @Override
+        public String getCacheKey()
+        {
+            return String.format("%s:%d", getClass().getName(), System.identityHashCode(this));
+        }
+    }
+    
     /**
      * @param def
      * @param value
@@ -549,4 +602,277 @@ public class ExtensibleChoiceParameterDefinitionJenkinsTest
             }
         }
     }
+    
+    @Test
+    public void testChoiceListRetrievedOnceInRequest() throws Exception
+    {
+        CountingChoiceListProvider provider = new CountingChoiceListProvider(Arrays.asList("value1", "value2", "value3"), "value2");
+        ExtensibleChoiceParameterDefinition def = new ExtensibleChoiceParameterDefinition(
+                "test",
+                provider,
+                false,
+                "description"
+        );
+        FreeStyleProject job = j.createFreeStyleProject();
+        job.addProperty(new ParametersDefinitionProperty(def));
+        CaptureEnvironmentBuilder ceb = new CaptureEnvironmentBuilder();
+        job.getBuildersList().add(ceb);
+        
+        WebClient wc = j.createWebClient();
+        wc.setPrintContentOnFailingStatusCode(false);
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        HtmlPage page = wc.getPage(job, "build?delay=0sec");
+        wc.setThrowExceptionOnFailingStatusCode(true);
+        
+        // for the default value, and for the list of choices.
+        assertEquals("rendering", 1, provider.getCount());
+        
+        HtmlForm form = page.getFormByName("parameters");
+        form.getSelectByName("value").getOptionByText("value3").setSelected(true);
+        j.submit(form);
+        while(job.getLastBuild() == null || job.getLastBuild().isBuilding())
+        {
+            Thread.sleep(100);
+        }
+        
+        // validated with the choices shown.
+        assertEquals("submitting", 1, provider.getCount());
+        assertEquals("value3", ceb.getEnvVars().get("test"));
+        
+        assertEquals("outside requests", Arrays.asList("value1", "value2", "value3"), def.getChoiceList());
+        assertEquals("outside requests", 2, provider.getCount());
+    }
+    
+    @Test
+    public void testChoiceListsRetrievedInParallel() throws Exception
+    {
+        List<ParameterDefinition> defList = new ArrayList<ParameterDefinition>();
+        for(int i = 0; i < 4; ++i)
+        {
+            defList.add(new ExtensibleChoiceParameterDefinition(
+                    String.format("test%d", i),
+                    new SleepingChoiceListProvider(Arrays.asList("value1", "value2"), 2000),
+                    false,
+                    "description"
+            ));
+        }
+        FreeStyleProject job = j.createFreeStyleProject();
+        job.addProperty(new ParametersDefinitionProperty(defList));
+        
+        WebClient wc = j.createWebClient();
+        wc.setPrintContentOnFailingStatusCode(false);
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        long start = System.currentTimeMillis();
+        HtmlPage page = wc.getPage(job, "build?delay=0sec");
+        long elapsed = System.currentTimeMillis() - start;
+        
+        HtmlForm form = page.getFormByName("parameters");
+        for(int i = 0; i < 4; ++i)
+        {
+            assertNotNull(form.getInputByValue(String.format("test%d", i)));
+        }
+        // 8 seconds if retrieved one after another.
+        assertTrue(String.format("took %d ms", elapsed), elapsed < 6000);
+    }
+    
+    @Test
+    public void testExportedChoiceList() throws Exception
+    {
+        CountingChoiceListProvider provider = new CountingChoiceListProvider(Arrays.asList("value1", "value2"), null);
+        ExtensibleChoiceParameterDefinition def = new ExtensibleChoiceParameterDefinition(
+                "test",
+                provider,
+                false,
+                "description"
+        );
+        CountingChoiceListProvider providerWithDefault = new CountingChoiceListProvider(Arrays.asList("value3", "value4"), "value4");
+        ExtensibleChoiceParameterDefinition defWithDefault = new ExtensibleChoiceParameterDefinition(
+                "testWithDefault",
+                providerWithDefault,
+                false,
+                "description"
+        );
+        FreeStyleProject job = j.createFreeStyleProject();
+        job.addProperty(new ParametersDefinitionProperty(def, defWithDefault));
+        WebClient wc = j.createWebClient();
+        
+        // crawling with depth does not retrieve choices,
+        // even for default values (also exported).
+        String json = wc.goTo(String.format("%sapi/json?depth=2", job.getUrl()), "application/json").getWebResponse().getContentAsString();
+        assertTrue(json, json.contains("\"test\""));
+        assertTrue("declared default is exported", json.contains("\"value4\""));
+        assertEquals("not retrieved", 0, provider.getCount());
+        assertEquals("not retrieved", 0, providerWithDefault.getCount());
+        
+        JSONObject result = JSONObject.fromObject(wc.goTo(
+                String.format("%sapi/json?tree=property[parameterDefinitions[name,choices]]", job.getUrl()),
+                "application/json"
+        ).getWebResponse().getContentAsString());
+        JSONObject exported = result.getJSONArray("property").getJSONObject(0).getJSONArray("parameterDefinitions").getJSONObject(0);
+        assertEquals("test", exported.getString("name"));
+        assertEquals(Arrays.asList("value1", "value2"), exported.getJSONArray("choices"));
+        assertEquals("retrieved as specified", 1, provider.getCount());
+    }
+    
+    @Test
+    public void testRenderBudget() throws Exception
+    {
+        getDescriptor().setRenderBudget(500);
+        getDescriptor().setCacheEnabled(true);
+        FreeStyleProject job = j.createFreeStyleProject();
+        job.addProperty(new ParametersDefinitionProperty(
+                new ExtensibleChoiceParameterDefinition(
+                        "fast",
+                        new MockChoiceListProvider(Arrays.asList("value1", "value2"), null),
+                        false,
+                        "description"
+                ),
+                new ExtensibleChoiceParameterDefinition(
+                        "slow",
+                        new CachedSleepingChoiceListProvider(Arrays.asList("value3", "value4"), 5000),
+                        false,
+                        "description"
+                ),
+                new ExtensibleChoiceParameterDefinition(
+                        "uncached",
+                        new SleepingChoiceListProvider(Arrays.asList("value5", "value6"), 1000),
+                        false,
+                        "description"
+                )
+        ));
+        
+        WebClient wc = j.createWebClient();
+        wc.setPrintContentOnFailingStatusCode(false);
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        wc.setJavaScriptEnabled(false);
+        long start = System.currentTimeMillis();
+        HtmlPage page = wc.getPage(job, "build?delay=0sec");
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(String.format("took %d ms", elapsed), elapsed < 4000);
+        
+        List<HtmlSelect> selectList = page.getFormByName("parameters").getSelectsByName("value");
+        assertEquals(3, selectList.size());
+        
+        HtmlSelect fast = selectList.get(0);
+        assertEquals("false", fast.getAttribute("preload"));
+        assertEquals("embedded", 2, fast.getOptionSize());
+        
+        HtmlSelect slow = selectList.get(1);
+        assertEquals("true", slow.getAttribute("preload"));
+        assertEquals("not embedded", 0, slow.getOptionSize());
+        assertTrue("loaded after shown", slow.getAttribute("choicesUrl").contains("param=slow"));
+        
+        // would be retrieved again when loaded after shown.
+        HtmlSelect uncached = selectList.get(2);
+        assertEquals("false", uncached.getAttribute("preload"));
+        assertEquals("embedded", 2, uncached.getOptionSize());
+    }
+    
+    @Test
+    public void testValidatedWithChoicesShown() throws Exception
+    {
+        List<String> choiceList = new ArrayList<String>(Arrays.asList("value1", "value2", "value3"));
+        CountingChoiceListProvider provider = new CountingChoiceListProvider(choiceList, null);
+        ExtensibleChoiceParameterDefinition def = new ExtensibleChoiceParameterDefinition(
+                "test",
+                provider,
+                false,
+                "description"
+        );
+        FreeStyleProject job = j.createFreeStyleProject();
+        job.addProperty(new ParametersDefinitionProperty(def));
+        CaptureEnvironmentBuilder ceb = new CaptureEnvironmentBuilder();
+        job.getBuildersList().add(ceb);
+        
+        WebClient wc = j.createWebClient();
+        wc.setPrintContentOnFailingStatusCode(false);
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        HtmlPage page = wc.getPage(job, "build?delay=0sec");
+        wc.setThrowExceptionOnFailingStatusCode(true);
+        
+        // choices change after the page is shown.
+        choiceList.remove("value3");
+        choiceList.add("value4");
+        
+        HtmlForm form = page.getFormByName("parameters");
+        form.getSelectByName("value").getOptionByText("value3").setSelected(true);
+        j.submit(form);
+        long deadline = System.currentTimeMillis() + 30 * 1000;
+        while(job.getLastBuild() == null || job.getLastBuild().isBuilding())
+        {
+            assertTrue("build is not finished", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+        assertEquals("accepted as it was shown", "value3", ceb.getEnvVars().get("test"));
+        assertEquals("not retrieved again", 1, provider.getCount());
+        
+        // not shown, but in the current choices.
+        {
+            HtmlSelect select = form.getSelectByName("value");
+            DomElement newOpt = page.createElement("option");
+            newOpt.appendChild(page.createTextNode("value4"));
+            select.appendChild(newOpt);
+            HtmlOption opt = select.getOption(select.getOptionSize() - 1);
+            opt.setValueAttribute("value4");
+            opt.setSelected(true);
+            int lastBuildNumber = job.getLastBuild().getNumber();
+            j.submit(form);
+            deadline = System.currentTimeMillis() + 30 * 1000;
+            while(job.getLastBuild().getNumber() == lastBuildNumber || job.getLastBuild().isBuilding())
+            {
+                assertTrue("build is not finished", System.currentTimeMillis() < deadline);
+                Thread.sleep(100);
+            }
+            assertEquals("validated with the current choices", "value4", ceb.getEnvVars().get("test"));
+            assertEquals("retrieved again", 2, provider.getCount());
+        }
+    }
+    
+    @Test
+    public void testLazyChoicesKeepDefault() throws Exception
+    {
+        getDescriptor().setChoicesPageSize(2);
+        FreeStyleProject job = j.createFreeStyleProject();
+        job.addProperty(new ParametersDefinitionProperty(new ExtensibleChoiceParameterDefinition(
+                "test",
+                new MockChoiceListProvider(
+                        Arrays.asList("value1", "value2", "value3", "value4", "value5", "value6"),
+                        "value5"
+                ),
+                false,
+                "description"
+        )));
+        CaptureEnvironmentBuilder ceb = new CaptureEnvironmentBuilder();
+        job.getBuildersList().add(ceb);
+        
+        WebClient wc = j.createWebClient();
+        wc.setPrintContentOnFailingStatusCode(false);
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        HtmlPage page = wc.getPage(job, "build?delay=0sec");
+        wc.setThrowExceptionOnFailingStatusCode(true);
+        
+        HtmlForm form = page.getFormByName("parameters");
+        HtmlSelect select = form.getSelectByName("value");
+        assertEquals("only the default is embedded", 1, select.getOptionSize());
+        
+        // the default is in the third page.
+        select.focus();
+        long deadline = System.currentTimeMillis() + 10 * 1000;
+        while(select.getOptionSize() < 6)
+        {
+            assertTrue("choices are not loaded", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+        assertEquals(6, select.getOptionSize());
+        assertEquals("value5", select.getSelectedOptions().get(0).getValueAttribute());
+        
+        j.submit(form);
+        deadline = System.currentTimeMillis() + 30 * 1000;
+        while(job.getLastBuild() == null || job.getLastBuild().isBuilding())
+        {
+            assertTrue("build is not finished", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+        assertEquals("value5", ceb.getEnvVars().get("test"));
+    }
 }
@@ -29,7 +29,13 @@ import hudson.model.StringParameterValue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -627,4 +633,63 @@ public class ExtensibleChoiceParameterDefinitionSimpleTest
             assertEquals("no choice is provided and editable", null, target.getDefaultParameterValue());
         }
     }
+    
+    private static class NeverReturningChoiceListProvider extends ChoiceListProvider
+    {
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+        
+        @Override
+        public List<String> getChoiceList()
+        {
+            try
+            {
+                new CountDownLatch(1).await();
+            }
+            catch(InterruptedException e)
+            {
+                interrupted.countDown();
+            }
+            return Collections.emptyList();
+        }
+    }
+    
+    @Test
+    public void testAcceptsGzip()
+    {
+        assertTrue(ExtensibleChoiceParameterDefinition.acceptsGzip("gzip"));
+        assertTrue(ExtensibleChoiceParameterDefinition.acceptsGzip("gzip, deflate"));
+        assertTrue(ExtensibleChoiceParameterDefinition.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(ExtensibleChoiceParameterDefinition.acceptsGzip("x-gzip"));
+        assertTrue(ExtensibleChoiceParameterDefinition.acceptsGzip("*"));
+        assertTrue("explicitly accepted", ExtensibleChoiceParameterDefinition.acceptsGzip("gzip, *;q=0"));
+        
+        assertFalse(ExtensibleChoiceParameterDefinition.acceptsGzip(null));
+        assertFalse(ExtensibleChoiceParameterDefinition.acceptsGzip(""));
+        assertFalse(ExtensibleChoiceParameterDefinition.acceptsGzip("identity"));
+        assertFalse(ExtensibleChoiceParameterDefinition.acceptsGzip("gzip;q=0"));
+        assertFalse(ExtensibleChoiceParameterDefinition.acceptsGzip("gzip; Q=0.000, deflate"));
+        assertFalse(ExtensibleChoiceParameterDefinition.acceptsGzip("*;q=0"));
+        assertFalse("explicitly refused", ExtensibleChoiceParameterDefinition.acceptsGzip("gzip;q=0, *"));
+    }
+    
+    @Test
+    public void testWaitForSnapshotTimeout() throws Exception
+    {
+        NeverReturningChoiceListProvider provider = new NeverReturningChoiceListProvider();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<ChoiceListSnapshot> future = ChoiceListCache.getInstance().getSnapshotAsync(provider, executor);
+            long start = System.currentTimeMillis();
+            ChoiceListSnapshot snapshot = ExtensibleChoiceParameterDefinition.waitForSnapshot(provider, future, 100);
+            assertTrue("gave up waiting", System.currentTimeMillis() - start < 10000);
+            assertEquals("nothing retrieved before", Collections.<String>emptyList(), snapshot.getChoiceList());
+            assertTrue(future.isCancelled());
+            assertTrue("the provider is interrupted", provider.interrupted.await(10, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
 }
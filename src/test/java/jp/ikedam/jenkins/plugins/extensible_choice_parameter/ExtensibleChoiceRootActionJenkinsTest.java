@@ -0,0 +1,671 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import static org.junit.Assert.*;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersDefinitionProperty;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule.WebClient;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.WebRequestSettings;
+
+/**
+ * Tests for ExtensibleChoiceRootAction, corresponding to Jenkins.
+ */
+public class ExtensibleChoiceRootActionJenkinsTest
+{
+    @Rule
+    public ExtensibleChoiceParameterJenkinsRule j = new ExtensibleChoiceParameterJenkinsRule();
+    
+    private static final String PROPERTY_NAME = "ExtensibleChoiceRootActionJenkinsTest.value";
+    
+    private ExtensibleChoiceParameterDefinition.DescriptorImpl getDescriptor()
+    {
+        return (ExtensibleChoiceParameterDefinition.DescriptorImpl)Jenkins.getInstance().getDescriptor(ExtensibleChoiceParameterDefinition.class);
+    }
+    
+    @Before
+    public void setUp()
+    {
+        ExtensibleChoiceParameterDefinition.DescriptorImpl descriptor = getDescriptor();
+        descriptor.setCacheEnabled(true);
+        descriptor.setMinCacheTtl(3600);
+        descriptor.setMaxCacheTtl(3600);
+        ChoiceListCache.getInstance().clear();
+    }
+    
+    @After
+    public void tearDown()
+    {
+        System.clearProperty(PROPERTY_NAME);
+        ChoiceListCache.getInstance().clear();
+    }
+    
+    private Page post(WebClient wc, String path) throws Exception
+    {
+        return wc.getPage(new WebRequestSettings(new URL(j.getURL(), path), HttpMethod.POST));
+    }
+    
+    @Test
+    public void testInvalidate() throws Exception
+    {
+        ExtensibleChoiceParameterDefinition def = new ExtensibleChoiceParameterDefinition(
+                "test",
+                new SystemGroovyChoiceListProvider(
+                        String.format("return [System.getProperty(\"%s\")]", PROPERTY_NAME),
+                        null
+                ),
+                false,
+                "description"
+        );
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.addProperty(new ParametersDefinitionProperty(def));
+        
+        System.setProperty(PROPERTY_NAME, "value1");
+        assertEquals(Arrays.asList("value1"), def.getChoiceList());
+        
+        System.setProperty(PROPERTY_NAME, "value2");
+        assertEquals("cached", Arrays.asList("value1"), def.getChoiceList());
+        
+        WebClient wc = j.createWebClient();
+        Page page = post(wc, String.format("extensible-choice/invalidate?job=%s&param=test", p.getName()));
+        assertEquals(200, page.getWebResponse().getStatusCode());
+        
+        // retrieved again in background.
+        for(int i = 0; i < 50 && !ChoiceListCache.getInstance().getSnapshot(def.getChoiceListProvider()).getChoiceList().contains("value2"); ++i)
+        {
+            Thread.sleep(100);
+        }
+        assertEquals("invalidated", Arrays.asList("value2"), def.getChoiceList());
+    }
+    
+    @Test
+    public void testInvalidateErrors() throws Exception
+    {
+        ExtensibleChoiceParameterDefinition def = new ExtensibleChoiceParameterDefinition(
+                "test",
+                new SystemGroovyChoiceListProvider("return [\"value\"]", null),
+                false,
+                "description"
+        );
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.addProperty(new ParametersDefinitionProperty(def));
+        
+        WebClient wc = j.createWebClient();
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        
+        // GET is not allowed
+        {
+            Page page = wc.goTo(String.format("extensible-choice/invalidate?job=%s&param=test", p.getName()), null);
+            assertEquals(405, page.getWebResponse().getStatusCode());
+        }
+        
+        // no such job
+        {
+            Page page = post(wc, "extensible-choice/invalidate?job=nosuchjob&param=test");
+            assertEquals(404, page.getWebResponse().getStatusCode());
+        }
+        
+        // no such parameter
+        {
+            Page page = post(wc, String.format("extensible-choice/invalidate?job=%s&param=nosuchparam", p.getName()));
+            assertEquals(404, page.getWebResponse().getStatusCode());
+        }
+    }
+    
+    private JSONObject getJson(WebClient wc, String path) throws Exception
+    {
+        Page page = wc.goTo(path, "application/json");
+        return JSONObject.fromObject(page.getWebResponse().getContentAsString());
+    }
+    
+    @Test
+    public void testChoices() throws Exception
+    {
+        ExtensibleChoiceParameterDefinition def = new ExtensibleChoiceParameterDefinition(
+                "test",
+                new TextareaChoiceListProvider("value1\nvalue2\nvalue3\nvalue4\nvalue5\n", null, false, null),
+                false,
+                "description"
+        );
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.addProperty(new ParametersDefinitionProperty(def));
+        WebClient wc = j.createWebClient();
+        
+        // first page
+        {
+            JSONObject json = getJson(wc, String.format("extensible-choice/choices?job=%s&param=test&start=0&count=2", p.getName()));
+            assertEquals(0, json.getInt("start"));
+            assertEquals(5, json.getInt("total"));
+            assertEquals(def.getChoiceListSnapshot().getFingerprint().toString(), json.getString("fingerprint"));
+            assertEquals(Arrays.asList("value1", "value2"), json.getJSONArray("choices"));
+        }
+        
+        // last page
+        {
+            JSONObject json = getJson(wc, String.format("extensible-choice/choices?job=%s&param=test&start=4&count=2", p.getName()));
+            assertEquals(4, json.getInt("start"));
+            assertEquals(Arrays.asList("value5"), json.getJSONArray("choices"));
+        }
+        
+        // out of range
+        {
+            JSONObject json = getJson(wc, String.format("extensible-choice/choices?job=%s&param=test&start=10&count=2", p.getName()));
+            assertEquals(5, json.getInt("start"));
+            assertEquals(0, json.getJSONArray("choices").size());
+        }
+        
+        // all
+        {
+            JSONObject json = getJson(wc, String.format("extensible-choice/choices?job=%s&param=test", p.getName()));
+            assertEquals(def.getChoiceList(), json.getJSONArray("choices"));
+        }
+        
+        // no such parameter
+        {
+            wc.setThrowExceptionOnFailingStatusCode(false);
+            Page page = wc.goTo(String.format("extensible-choice/choices?job=%s&param=nosuchparam", p.getName()), null);
+            assertEquals(404, page.getWebResponse().getStatusCode());
+        }
+    }
+    
+    @Test
+    public void testSearch() throws Exception
+    {
+        ExtensibleChoiceParameterDefinition def = new ExtensibleChoiceParameterDefinition(
+                "test",
+                new TextareaChoiceListProvider("release-1.10\nrelease-1.2\nsnapshot-2.0\nRelease-1.1\n", null, false, null),
+                true,
+                "description"
+        );
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.addProperty(new ParametersDefinitionProperty(def));
+        WebClient wc = j.createWebClient();
+        
+        {
+            JSONObject json = getJson(wc, String.format("extensible-choice/search?job=%s&param=test&prefix=rel", p.getName()));
+            assertEquals("rel", json.getString("prefix"));
+            assertEquals(3, json.getInt("total"));
+            assertEquals(Arrays.asList("Release-1.1", "release-1.10", "release-1.2"), json.getJSONArray("choices"));
+        }
+        
+        {
+            JSONObject json = getJson(wc, String.format("extensible-choice/search?job=%s&param=test&prefix=rel&count=1", p.getName()));
+            assertEquals(3, json.getInt("total"));
+            assertEquals(Arrays.asList("Release-1.1"), json.getJSONArray("choices"));
+        }
+        
+        {
+            JSONObject json = getJson(wc, String.format("extensible-choice/search?job=%s&param=test&prefix=x", p.getName()));
+            assertEquals(0, json.getInt("total"));
+            assertEquals(0, json.getJSONArray("choices").size());
+        }
+        
+        {
+            JSONObject json = getJson(wc, String.format("extensible-choice/search?job=%s&param=test&prefix=1.1&mode=fuzzy", p.getName()));
+            assertEquals("fuzzy", json.getString("mode"));
+            assertEquals(2, json.getInt("total"));
+            assertEquals(Arrays.asList("Release-1.1", "release-1.10"), json.getJSONArray("choices"));
+        }
+    }
+    
+    private Page get(WebClient wc, String path, String headerName, String headerValue) throws Exception
+    {
+        WebRequestSettings settings = new WebRequestSettings(new URL(j.getURL(), path));
+        if(headerName != null)
+        {
+            settings.addAdditionalHeader(headerName, headerValue);
+        }
+        return wc.getPage(settings);
+    }
+    
+    @Test
+    public void testChoicesNotModified() throws Exception
+    {
+        ExtensibleChoiceParameterDefinition def = new ExtensibleChoiceParameterDefinition(
+                "test",
+                new TextareaChoiceListProvider("value1\nvalue2\nvalue3\n", null, false, null),
+                false,
+                "description"
+        );
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.addProperty(new ParametersDefinitionProperty(def));
+        WebClient wc = j.createWebClient();
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        String path = String.format("extensible-choice/choices?job=%s&param=test", p.getName());
+        
+        Page page = get(wc, path, null, null);
+        assertEquals(200, page.getWebResponse().getStatusCode());
+        String etag = page.getWebResponse().getResponseHeaderValue("ETag");
+        assertNotNull(etag);
+        assertTrue(etag, etag.contains(def.getChoiceListSnapshot().getFingerprint().toString()));
+        
+        // not modified
+        {
+            Page page2 = get(wc, path, "If-None-Match", etag);
+            assertEquals(304, page2.getWebResponse().getStatusCode());
+        }
+        
+        // weak comparison
+        {
+            Page page2 = get(wc, path, "If-None-Match", String.format("\"other\", W/%s", etag));
+            assertEquals(304, page2.getWebResponse().getStatusCode());
+        }
+        
+        // other contents
+        {
+            Page page2 = get(wc, path, "If-None-Match", "\"other\"");
+            assertEquals(200, page2.getWebResponse().getStatusCode());
+            assertEquals(etag, page2.getWebResponse().getResponseHeaderValue("ETag"));
+        }
+        
+        // choices are changed
+        {
+            ExtensibleChoiceParameterDefinition def2 = new ExtensibleChoiceParameterDefinition(
+                    "test",
+                    new TextareaChoiceListProvider("value1\nvalue2\nvalue4\n", null, false, null),
+                    false,
+                    "description"
+            );
+            p.removeProperty(ParametersDefinitionProperty.class);
+            p.addProperty(new ParametersDefinitionProperty(def2));
+            Page page2 = get(wc, path, "If-None-Match", etag);
+            assertEquals(200, page2.getWebResponse().getStatusCode());
+            assertFalse(etag.equals(page2.getWebResponse().getResponseHeaderValue("ETag")));
+        }
+    }
+    
+    @Test
+    public void testChoicesCompressed() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 1000; ++i)
+        {
+            sb.append(String.format("value%d\n", i));
+        }
+        ExtensibleChoiceParameterDefinition def = new ExtensibleChoiceParameterDefinition(
+                "test",
+                new TextareaChoiceListProvider(sb.toString(), null, false, null),
+                false,
+                "description"
+        );
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.addProperty(new ParametersDefinitionProperty(def));
+        WebClient wc = j.createWebClient();
+        
+        String path = String.format("extensible-choice/choices?job=%s&param=test", p.getName());
+        Page page = get(wc, path, "Accept-Encoding", "gzip");
+        assertEquals("gzip", page.getWebResponse().getResponseHeaderValue("Content-Encoding"));
+        String etag = page.getWebResponse().getResponseHeaderValue("ETag");
+        assertTrue(etag, etag.endsWith("-gzip\""));
+        
+        // small responses are not compressed
+        page = get(wc, String.format("extensible-choice/choices?job=%s&param=test&count=2", p.getName()), "Accept-Encoding", "gzip");
+        assertNull(page.getWebResponse().getResponseHeaderValue("Content-Encoding"));
+        assertFalse(
+                "tagged as not compressed",
+                page.getWebResponse().getResponseHeaderValue("ETag").endsWith("-gzip\"")
+        );
+        
+        // compressed responses have different entity tags.
+        page = get(wc, path, "Accept-Encoding", "identity");
+        assertNull(page.getWebResponse().getResponseHeaderValue("Content-Encoding"));
+        assertFalse(etag.equals(page.getWebResponse().getResponseHeaderValue("ETag")));
+        
+        // gzip is refused
+        page = get(wc, path, "Accept-Encoding", "gzip;q=0, identity");
+        assertNull(page.getWebResponse().getResponseHeaderValue("Content-Encoding"));
+        assertFalse(etag.equals(page.getWebResponse().getResponseHeaderValue("ETag")));
+        
+        // revalidated with the tag of the compressed one
+        {
+            wc.setThrowExceptionOnFailingStatusCode(false);
+            WebRequestSettings settings = new WebRequestSettings(new URL(j.getURL(), path));
+            settings.addAdditionalHeader("Accept-Encoding", "gzip");
+            settings.addAdditionalHeader("If-None-Match", etag);
+            page = wc.getPage(settings);
+            assertEquals(304, page.getWebResponse().getStatusCode());
+            assertEquals(etag, page.getWebResponse().getResponseHeaderValue("ETag"));
+            
+            settings = new WebRequestSettings(new URL(j.getURL(), path));
+            settings.addAdditionalHeader("Accept-Encoding", "identity");
+            settings.addAdditionalHeader("If-None-Match", etag);
+            page = wc.getPage(settings);
+            assertEquals("not accepting the compressed one any more", 200, page.getWebResponse().getStatusCode());
+        }
+    }
+    
+    @Test
+    public void testBulk() throws Exception
+    {
+        FreeStyleProject p1 = j.createFreeStyleProject();
+        p1.addProperty(new ParametersDefinitionProperty(new ExtensibleChoiceParameterDefinition(
+                "test",
+                new TextareaChoiceListProvider("value1\nvalue2\n", null, false, null),
+                false,
+                "description"
+        )));
+        FreeStyleProject p2 = j.createFreeStyleProject();
+        p2.addProperty(new ParametersDefinitionProperty(new ExtensibleChoiceParameterDefinition(
+                "test",
+                new TextareaChoiceListProvider("value3\n", null, false, null),
+                false,
+                "description"
+        )));
+        WebClient wc = j.createWebClient();
+        
+        Page page = wc.goTo(String.format(
+                "extensible-choice/bulk?job=%s&param=test&job=%s&param=test&job=nosuchjob&param=test",
+                p1.getName(),
+                p2.getName()
+        ), null);
+        assertEquals(200, page.getWebResponse().getStatusCode());
+        String[] lines = page.getWebResponse().getContentAsString().trim().split("\n");
+        assertEquals(3, lines.length);
+        
+        // lines are not in the specified order.
+        Map<String, JSONObject> results = new HashMap<String, JSONObject>();
+        for(String line: lines)
+        {
+            JSONObject json = JSONObject.fromObject(line);
+            assertEquals("test", json.getString("param"));
+            results.put(json.getString("job"), json);
+        }
+        assertEquals(Arrays.asList("value1", "value2"), results.get(p1.getName()).getJSONArray("choices"));
+        assertEquals(2, results.get(p1.getName()).getInt("total"));
+        assertEquals(Arrays.asList("value3"), results.get(p2.getName()).getJSONArray("choices"));
+        assertTrue(results.get("nosuchjob").has("error"));
+        
+        // not paired
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        page = wc.goTo(String.format("extensible-choice/bulk?job=%s", p1.getName()), null);
+        assertEquals(400, page.getWebResponse().getStatusCode());
+    }
+    
+    @Test
+    public void testWatch() throws Exception
+    {
+        final ExtensibleChoiceParameterDefinition def = new ExtensibleChoiceParameterDefinition(
+                "test",
+                new SystemGroovyChoiceListProvider(
+                        String.format("return [System.getProperty(\"%s\")]", PROPERTY_NAME),
+                        null
+                ),
+                false,
+                "description"
+        );
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.addProperty(new ParametersDefinitionProperty(def));
+        WebClient wc = j.createWebClient();
+        
+        System.setProperty(PROPERTY_NAME, "value1");
+        String fingerprint = def.getChoiceListSnapshot().getFingerprint().toString();
+        
+        // returns immediately for an unknown fingerprint.
+        {
+            JSONObject json = getJson(wc, String.format("extensible-choice/watch?job=%s&param=test&fingerprint=", p.getName())).getJSONArray("results").getJSONObject(0);
+            assertTrue(json.getBoolean("changed"));
+            assertEquals(fingerprint, json.getString("fingerprint"));
+            assertEquals(1, json.getInt("total"));
+        }
+        
+        // waits for changes.
+        {
+            Thread t = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        Thread.sleep(1000);
+                    }
+                    catch(InterruptedException e)
+                    {
+                        return;
+                    }
+                    System.setProperty(PROPERTY_NAME, "value2");
+                    ChoiceListCache.getInstance().invalidate(def.getChoiceListProvider());
+                    def.getChoiceListSnapshot();
+                }
+            };
+            t.start();
+            long start = System.currentTimeMillis();
+            JSONObject json = getJson(wc, String.format("extensible-choice/watch?job=%s&param=test&fingerprint=%s", p.getName(), fingerprint)).getJSONArray("results").getJSONObject(0);
+            assertTrue(
+                    "returned before the timeout",
+                    System.currentTimeMillis() - start < ExtensibleChoiceParameterDefinition.WATCH_TIMEOUT * 1000
+            );
+            assertTrue(json.getBoolean("changed"));
+            assertEquals(def.getChoiceListSnapshot().getFingerprint().toString(), json.getString("fingerprint"));
+            t.join();
+        }
+    }
+    
+    @Test
+    public void testWatchGlobalChoiceList() throws Exception
+    {
+        final GlobalTextareaChoiceListProvider.DescriptorImpl descriptor
+            = (GlobalTextareaChoiceListProvider.DescriptorImpl)j.jenkins.getDescriptor(GlobalTextareaChoiceListProvider.class);
+        descriptor.setChoiceListEntryList(Arrays.asList(
+                new GlobalTextareaChoiceListEntry("list", "value1\n", false)
+        ));
+        final ExtensibleChoiceParameterDefinition def = new ExtensibleChoiceParameterDefinition(
+                "test",
+                new GlobalTextareaChoiceListProvider("list", null, false, null),
+                false,
+                "description"
+        );
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.addProperty(new ParametersDefinitionProperty(def));
+        GlobalChoiceListReferenceIndex.getInstance().update(p);
+        WebClient wc = j.createWebClient();
+        
+        String fingerprint = def.getChoiceListSnapshot().getFingerprint().toString();
+        
+        // notified with the key of the job and the parameter
+        // though the request is not bound to the job.
+        Thread t = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(1000);
+                }
+                catch(InterruptedException e)
+                {
+                    return;
+                }
+                descriptor.putChoiceListEntry("list", new GlobalTextareaChoiceListEntry("list", "value2\n", false));
+            }
+        };
+        t.start();
+        long start = System.currentTimeMillis();
+        JSONObject json = getJson(wc, String.format("extensible-choice/watch?job=%s&param=test&fingerprint=%s", p.getName(), fingerprint)).getJSONArray("results").getJSONObject(0);
+        assertTrue(
+                "returned before the timeout",
+                System.currentTimeMillis() - start < ExtensibleChoiceParameterDefinition.WATCH_TIMEOUT * 1000
+        );
+        assertTrue(json.getBoolean("changed"));
+        assertEquals(def.getChoiceListSnapshot().getFingerprint().toString(), json.getString("fingerprint"));
+        t.join();
+    }
+    
+    @Test
+    public void testWatchMultipleParameters() throws Exception
+    {
+        final GlobalTextareaChoiceListProvider.DescriptorImpl descriptor
+            = (GlobalTextareaChoiceListProvider.DescriptorImpl)j.jenkins.getDescriptor(GlobalTextareaChoiceListProvider.class);
+        descriptor.setChoiceListEntryList(Arrays.asList(
+                new GlobalTextareaChoiceListEntry("list1", "value1\n", false),
+                new GlobalTextareaChoiceListEntry("list2", "value2\n", false)
+        ));
+        ExtensibleChoiceParameterDefinition def1 = new ExtensibleChoiceParameterDefinition(
+                "test1",
+                new GlobalTextareaChoiceListProvider("list1", null, false, null),
+                false,
+                "description"
+        );
+        ExtensibleChoiceParameterDefinition def2 = new ExtensibleChoiceParameterDefinition(
+                "test2",
+                new GlobalTextareaChoiceListProvider("list2", null, false, null),
+                false,
+                "description"
+        );
+        FreeStyleProject p = j.createFreeStyleProject();
+        p.addProperty(new ParametersDefinitionProperty(def1, def2));
+        GlobalChoiceListReferenceIndex.getInstance().update(p);
+        WebClient wc = j.createWebClient();
+        
+        String fingerprint1 = def1.getChoiceListSnapshot().getFingerprint().toString();
+        String fingerprint2 = def2.getChoiceListSnapshot().getFingerprint().toString();
+        String path = String.format(
+                "extensible-choice/watch?job=%s&param=test1&fingerprint=%s&job=%s&param=test2&fingerprint=%s&job=%s&param=nosuchparam&fingerprint=",
+                p.getName(), fingerprint1,
+                p.getName(), fingerprint2,
+                p.getName()
+        );
+        
+        // returns immediately for a parameter not found.
+        {
+            JSONArray results = getJson(wc, path).getJSONArray("results");
+            assertEquals(3, results.size());
+            assertEquals("test1", results.getJSONObject(0).getString("param"));
+            assertFalse(results.getJSONObject(0).getBoolean("changed"));
+            assertFalse(results.getJSONObject(1).getBoolean("changed"));
+            assertTrue(results.getJSONObject(2).has("error"));
+        }
+        
+        // a single request waits for changes of any of parameters.
+        path = String.format(
+                "extensible-choice/watch?job=%s&param=test1&fingerprint=%s&job=%s&param=test2&fingerprint=%s",
+                p.getName(), fingerprint1,
+                p.getName(), fingerprint2
+        );
+        Thread t = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(1000);
+                }
+                catch(InterruptedException e)
+                {
+                    return;
+                }
+                descriptor.putChoiceListEntry("list2", new GlobalTextareaChoiceListEntry("list2", "value3\n", false));
+            }
+        };
+        t.start();
+        long start = System.currentTimeMillis();
+        JSONArray results = getJson(wc, path).getJSONArray("results");
+        assertTrue(
+                "returned before the timeout",
+                System.currentTimeMillis() - start < ExtensibleChoiceParameterDefinition.WATCH_TIMEOUT * 1000
+        );
+        assertEquals(2, results.size());
+        assertFalse(results.getJSONObject(0).getBoolean("changed"));
+        assertEquals(fingerprint1, results.getJSONObject(0).getString("fingerprint"));
+        assertTrue(results.getJSONObject(1).getBoolean("changed"));
+        assertEquals(def2.getChoiceListSnapshot().getFingerprint().toString(), results.getJSONObject(1).getString("fingerprint"));
+        t.join();
+        
+        // not paired
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        Page page = wc.goTo(String.format("extensible-choice/watch?job=%s&param=test1", p.getName()), null);
+        assertEquals(400, page.getWebResponse().getStatusCode());
+    }
+
+    private static class FailingChoiceListProvider extends ChoiceListProvider
+    {
+        @Override
+        public List<String> getChoiceList()
+        {
+            throw new IllegalStateException("failing provider");
+        }
+    }
+    
+    @Test
+    public void testBulkError() throws Exception
+    {
+        FreeStyleProject p1 = j.createFreeStyleProject();
+        p1.addProperty(new ParametersDefinitionProperty(new ExtensibleChoiceParameterDefinition(
+                "test",
+                new TextareaChoiceListProvider("value1\nvalue2\n", null, false, null),
+                false,
+                "description"
+        )));
+        FreeStyleProject p2 = j.createFreeStyleProject();
+        p2.addProperty(new ParametersDefinitionProperty(new ExtensibleChoiceParameterDefinition(
+                "test",
+                new FailingChoiceListProvider(),
+                false,
+                "description"
+        )));
+        WebClient wc = j.createWebClient();
+        
+        Page page = wc.goTo(String.format(
+                "extensible-choice/bulk?job=%s&param=test&job=%s&param=test",
+                p1.getName(),
+                p2.getName()
+        ), null);
+        assertEquals(200, page.getWebResponse().getStatusCode());
+        String[] lines = page.getWebResponse().getContentAsString().trim().split("\n");
+        assertEquals(2, lines.length);
+        
+        // every line tells the pair even if the provider fails.
+        Map<String, JSONObject> results = new HashMap<String, JSONObject>();
+        for(String line: lines)
+        {
+            JSONObject json = JSONObject.fromObject(line);
+            assertEquals("test", json.getString("param"));
+            results.put(json.getString("job"), json);
+        }
+        assertEquals(Arrays.asList("value1", "value2"), results.get(p1.getName()).getJSONArray("choices"));
+        assertFalse(results.get(p1.getName()).has("error"));
+        assertTrue(results.get(p2.getName()).getString("error").contains("failing provider"));
+    }
+}
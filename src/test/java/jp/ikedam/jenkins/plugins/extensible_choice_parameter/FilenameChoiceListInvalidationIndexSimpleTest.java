@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests for FilenameChoiceListInvalidationIndex, not corresponding to Jenkins.
+ */
+public class FilenameChoiceListInvalidationIndexSimpleTest
+{
+    private static FilenameChoiceListProvider provider(String invalidatingJobNames)
+    {
+        return new FilenameChoiceListProvider("/tmp", "*", null, FilenameChoiceListProvider.ScanType.File, invalidatingJobNames);
+    }
+    
+    @Test
+    public void testUpdate()
+    {
+        FilenameChoiceListInvalidationIndex target = new FilenameChoiceListInvalidationIndex();
+        FilenameChoiceListProvider provider1 = provider("upstream1, folder/upstream2");
+        FilenameChoiceListProvider provider2 = provider("upstream1");
+        FilenameChoiceListProvider provider3 = provider(null);
+        
+        assertEquals("empty", 0, target.getInvalidatedProviders("upstream1").size());
+        
+        target.update("job1", Arrays.asList(provider1, provider3));
+        target.update("job2", Arrays.asList(provider2));
+        assertEquals(2, target.getInvalidatedProviders("upstream1").size());
+        assertTrue(target.getInvalidatedProviders("upstream1").contains(provider1));
+        assertTrue(target.getInvalidatedProviders("upstream1").contains(provider2));
+        assertEquals(Arrays.asList(provider1), target.getInvalidatedProviders("folder/upstream2"));
+        assertEquals("not specified", 0, target.getInvalidatedProviders("job1").size());
+        
+        // providers are replaced job by job.
+        FilenameChoiceListProvider provider4 = provider("upstream3");
+        target.update("job1", Arrays.asList(provider4));
+        assertEquals(Arrays.asList(provider2), target.getInvalidatedProviders("upstream1"));
+        assertEquals(0, target.getInvalidatedProviders("folder/upstream2").size());
+        assertEquals(Arrays.asList(provider4), target.getInvalidatedProviders("upstream3"));
+        
+        target.update("job1", Collections.<FilenameChoiceListProvider>emptyList());
+        assertEquals(0, target.getInvalidatedProviders("upstream3").size());
+        assertEquals(Arrays.asList(provider2), target.getInvalidatedProviders("upstream1"));
+    }
+    
+    @Test
+    public void testRemove()
+    {
+        FilenameChoiceListInvalidationIndex target = new FilenameChoiceListInvalidationIndex();
+        FilenameChoiceListProvider provider1 = provider("upstream1");
+        FilenameChoiceListProvider provider2 = provider("upstream1");
+        
+        target.update("job1", Arrays.asList(provider1));
+        target.update("job2", Arrays.asList(provider2));
+        
+        target.remove("nosuchjob");
+        assertEquals(2, target.getInvalidatedProviders("upstream1").size());
+        
+        target.remove("job1");
+        assertEquals(Arrays.asList(provider2), target.getInvalidatedProviders("upstream1"));
+        
+        target.remove("job2");
+        assertEquals(0, target.getInvalidatedProviders("upstream1").size());
+    }
+}
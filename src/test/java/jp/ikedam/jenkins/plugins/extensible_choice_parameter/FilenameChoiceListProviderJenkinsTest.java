@@ -25,10 +25,16 @@ package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
 
 import static org.junit.Assert.*;
 
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersDefinitionProperty;
 import hudson.util.FormValidation;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import jenkins.model.Jenkins;
 
@@ -231,4 +237,51 @@ public class FilenameChoiceListProviderJenkinsTest
             );
         }
     }
+    
+    @Test
+    public void testInvalidatedByBuild() throws Exception
+    {
+        ExtensibleChoiceParameterDefinition.DescriptorImpl descriptor =
+                (ExtensibleChoiceParameterDefinition.DescriptorImpl)Jenkins.getInstance().getDescriptor(ExtensibleChoiceParameterDefinition.class);
+        descriptor.setCacheEnabled(true);
+        descriptor.setMinCacheTtl(3600);
+        descriptor.setMaxCacheTtl(3600);
+        ChoiceListCache.getInstance().clear();
+        
+        File tempDir = j.createTmpDir();
+        FreeStyleProject upstream = j.createFreeStyleProject();
+        FreeStyleProject other = j.createFreeStyleProject();
+        ExtensibleChoiceParameterDefinition def = new ExtensibleChoiceParameterDefinition(
+                "test",
+                new FilenameChoiceListProvider(
+                        tempDir.getAbsolutePath(),
+                        "*.txt",
+                        null,
+                        FilenameChoiceListProvider.ScanType.File,
+                        upstream.getFullName()
+                ),
+                false,
+                "description"
+        );
+        FreeStyleProject job = j.createFreeStyleProject();
+        job.addProperty(new ParametersDefinitionProperty(def));
+        // adding a property doesn't notify ItemListener.
+        FilenameChoiceListInvalidationIndex.getInstance().update(job);
+        
+        FileUtils.writeStringToFile(new File(tempDir, "file1.txt"), "test");
+        assertEquals(Arrays.asList("file1.txt"), def.getChoiceList());
+        
+        FileUtils.writeStringToFile(new File(tempDir, "file2.txt"), "test");
+        assertEquals("cached", Arrays.asList("file1.txt"), def.getChoiceList());
+        
+        j.assertBuildStatusSuccess(other.scheduleBuild2(0));
+        assertEquals("not invalidated by other jobs", Arrays.asList("file1.txt"), def.getChoiceList());
+        
+        j.assertBuildStatusSuccess(upstream.scheduleBuild2(0));
+        List<String> choiceList = new ArrayList<String>(def.getChoiceList());
+        Collections.sort(choiceList);
+        assertEquals("invalidated", Arrays.asList("file1.txt", "file2.txt"), choiceList);
+        
+        ChoiceListCache.getInstance().clear();
+    }
 }
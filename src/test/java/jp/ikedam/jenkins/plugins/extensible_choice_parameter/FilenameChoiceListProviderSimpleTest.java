@@ -143,6 +143,36 @@ public class FilenameChoiceListProviderSimpleTest
         }
     }
     
+    @Test
+    public void testIsInvalidatedBy()
+    {
+        // not specified
+        {
+            FilenameChoiceListProvider target = new FilenameChoiceListProvider("dir", "*", null, ScanType.File);
+            assertNull("not specified", target.getInvalidatingJobNames());
+            assertFalse("not specified", target.isInvalidatedBy("job1"));
+        }
+        
+        // single job
+        {
+            FilenameChoiceListProvider target = new FilenameChoiceListProvider("dir", "*", null, ScanType.File, " job1 ");
+            assertEquals("must be trimmed", "job1", target.getInvalidatingJobNames());
+            assertTrue("single job", target.isInvalidatedBy("job1"));
+            assertFalse("another job", target.isInvalidatedBy("job2"));
+            assertFalse("partial match", target.isInvalidatedBy("job"));
+            assertFalse("null", target.isInvalidatedBy(null));
+        }
+        
+        // multiple jobs
+        {
+            FilenameChoiceListProvider target = new FilenameChoiceListProvider("dir", "*", null, ScanType.File, "job1, folder/job2 ,job3");
+            assertTrue("first", target.isInvalidatedBy("job1"));
+            assertTrue("in a folder", target.isInvalidatedBy("folder/job2"));
+            assertTrue("last", target.isInvalidatedBy("job3"));
+            assertFalse("not in folder", target.isInvalidatedBy("job2"));
+        }
+    }
+    
     static private class FilenameChoiceListProviderForTest extends FilenameChoiceListProvider
     {
         private static final long serialVersionUID = 5830671030985340194L;
@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import static org.junit.Assert.*;
+
+import hudson.model.AbstractProject;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersDefinitionProperty;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.AddEditedChoiceListProvider.WhenToAdd;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule.WebClient;
+
+/**
+ * Tests for GlobalChoiceListReferenceIndex, corresponding to Jenkins.
+ */
+public class GlobalChoiceListReferenceIndexJenkinsTest
+{
+    @Rule
+    public ExtensibleChoiceParameterJenkinsRule j = new ExtensibleChoiceParameterJenkinsRule();
+    
+    private static GlobalChoiceListReferenceIndex.Reference ref(String jobFullName, String parameterName)
+    {
+        return new GlobalChoiceListReferenceIndex.Reference(jobFullName, parameterName);
+    }
+    
+    private static ExtensibleChoiceParameterDefinition createDefinition(String name, String listName)
+    {
+        return new ExtensibleChoiceParameterDefinition(
+                name,
+                new GlobalTextareaChoiceListProvider(listName, null, false, WhenToAdd.Triggered),
+                false,
+                "description"
+        );
+    }
+    
+    @Test
+    public void testItemListener() throws Exception
+    {
+        GlobalChoiceListReferenceIndex index = GlobalChoiceListReferenceIndex.getInstance();
+        
+        FreeStyleProject p = j.createFreeStyleProject("job1");
+        p.addProperty(new ParametersDefinitionProperty(
+                createDefinition("param1", "list1"),
+                createDefinition("param2", "list2")
+        ));
+        assertEquals("not indexed until updated", 0, index.getReferences("list1").size());
+        
+        // updated with the configuration page.
+        WebClient wc = j.createWebClient();
+        j.submit(wc.getPage(p, "configure").getFormByName("config"));
+        assertEquals(Arrays.asList(ref("job1", "param1")), index.getReferences("list1"));
+        assertEquals(Arrays.asList(ref("job1", "param2")), index.getReferences("list2"));
+        
+        // renamed
+        p.renameTo("job2");
+        assertEquals(Arrays.asList(ref("job2", "param1")), index.getReferences("list1"));
+        
+        // copied
+        j.jenkins.copy(p, "job3");
+        assertEquals(Arrays.asList(ref("job2", "param1"), ref("job3", "param1")), index.getReferences("list1"));
+        
+        // deleted
+        p.delete();
+        assertEquals(Arrays.asList(ref("job3", "param1")), index.getReferences("list1"));
+        assertEquals(Arrays.asList(ref("job3", "param2")), index.getReferences("list2"));
+        
+        // rebuilt
+        index.remove("job3");
+        assertEquals(0, index.getReferences("list1").size());
+        index.rebuild(j.jenkins.getAllItems(AbstractProject.class));
+        assertEquals(Arrays.asList(ref("job3", "param1")), index.getReferences("list1"));
+    }
+    
+    @Test
+    public void testNotifiedOnlyDependents() throws Exception
+    {
+        GlobalTextareaChoiceListProvider.DescriptorImpl descriptor
+            = (GlobalTextareaChoiceListProvider.DescriptorImpl)j.jenkins.getDescriptor(GlobalTextareaChoiceListProvider.class);
+        descriptor.setChoiceListEntryList(Arrays.asList(
+                new GlobalTextareaChoiceListEntry("listA", "value1\n", false),
+                new GlobalTextareaChoiceListEntry("listB", "value1\n", false)
+        ));
+        GlobalChoiceListReferenceIndex.getInstance().update("jobA", Collections.singletonMap("param1", "listA"));
+        GlobalChoiceListReferenceIndex.getInstance().update("jobB", Collections.singletonMap("param1", "listB"));
+        
+        ChoiceListChangeNotifier notifier = ChoiceListCache.getInstance().getNotifier();
+        String key1 = ExtensibleChoiceParameterDefinition.getWatchKey("jobA", "param1");
+        String key2 = ExtensibleChoiceParameterDefinition.getWatchKey("jobB", "param1");
+        long version1 = notifier.getVersion(key1);
+        long version2 = notifier.getVersion(key2);
+        
+        descriptor.putChoiceListEntry("listA", new GlobalTextareaChoiceListEntry("listA", "value2\n", false));
+        
+        assertTrue("dependent", notifier.getVersion(key1) > version1);
+        assertEquals("not dependent", version2, notifier.getVersion(key2));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for GlobalChoiceListReferenceIndex, not corresponding to Jenkins.
+ */
+public class GlobalChoiceListReferenceIndexSimpleTest
+{
+    private static Map<String, String> map(String... keyValues)
+    {
+        Map<String, String> ret = new HashMap<String, String>();
+        for(int i = 0; i + 1 < keyValues.length; i += 2)
+        {
+            ret.put(keyValues[i], keyValues[i + 1]);
+        }
+        return ret;
+    }
+    
+    private static GlobalChoiceListReferenceIndex.Reference ref(String jobFullName, String parameterName)
+    {
+        return new GlobalChoiceListReferenceIndex.Reference(jobFullName, parameterName);
+    }
+    
+    @Test
+    public void testUpdate()
+    {
+        GlobalChoiceListReferenceIndex target = new GlobalChoiceListReferenceIndex();
+        
+        assertEquals("empty", 0, target.getReferences("list1").size());
+        
+        target.update("job2", map("param1", "list1"));
+        target.update("job1", map("param1", "list1", "param2", "list2", "param3", "list1"));
+        assertEquals(
+                "sorted by jobs and parameters",
+                Arrays.asList(ref("job1", "param1"), ref("job1", "param3"), ref("job2", "param1")),
+                target.getReferences("list1")
+        );
+        assertEquals(Arrays.asList(ref("job1", "param2")), target.getReferences("list2"));
+        
+        // references are replaced job by job.
+        target.update("job1", map("param1", "list2"));
+        assertEquals(Arrays.asList(ref("job2", "param1")), target.getReferences("list1"));
+        assertEquals(Arrays.asList(ref("job1", "param1")), target.getReferences("list2"));
+        
+        target.update("job1", map());
+        assertEquals(0, target.getReferences("list2").size());
+        assertEquals(Arrays.asList(ref("job2", "param1")), target.getReferences("list1"));
+    }
+    
+    @Test
+    public void testRemove()
+    {
+        GlobalChoiceListReferenceIndex target = new GlobalChoiceListReferenceIndex();
+        
+        target.update("job1", map("param1", "list1"));
+        target.update("job2", map("param1", "list1"));
+        
+        target.remove("nosuchjob");
+        assertEquals(2, target.getReferences("list1").size());
+        
+        target.remove("job1");
+        assertEquals(Arrays.asList(ref("job2", "param1")), target.getReferences("list1"));
+        
+        target.remove("job2");
+        assertEquals(0, target.getReferences("list1").size());
+    }
+    
+    @Test
+    public void testNotifyChanged()
+    {
+        GlobalChoiceListReferenceIndex target = new GlobalChoiceListReferenceIndex();
+        ChoiceListChangeNotifier notifier = ChoiceListCache.getInstance().getNotifier();
+        String key1 = ExtensibleChoiceParameterDefinition.getWatchKey("GlobalChoiceListReferenceIndexSimpleTest1", "param1");
+        String key2 = ExtensibleChoiceParameterDefinition.getWatchKey("GlobalChoiceListReferenceIndexSimpleTest2", "param1");
+        
+        target.update("GlobalChoiceListReferenceIndexSimpleTest1", map("param1", "list1"));
+        target.update("GlobalChoiceListReferenceIndexSimpleTest2", map("param1", "list2"));
+        
+        long version1 = notifier.getVersion(key1);
+        long version2 = notifier.getVersion(key2);
+        
+        target.notifyChanged("list1");
+        
+        assertEquals("dependent", version1 + 1, notifier.getVersion(key1));
+        assertEquals("not dependent", version2, notifier.getVersion(key2));
+    }
+}
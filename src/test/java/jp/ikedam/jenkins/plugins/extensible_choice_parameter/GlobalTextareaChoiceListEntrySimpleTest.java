@@ -29,6 +29,10 @@ import java.util.Arrays;
 
 import org.junit.Test;
 
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.converters.reflection.Sun14ReflectionProvider;
+import com.thoughtworks.xstream.io.xml.DomDriver;
+
 /**
  * Tests for GlobalTextareaChoiceListEntry, not corresponding to Jenkins.
  *
@@ -153,4 +157,51 @@ public class GlobalTextareaChoiceListEntrySimpleTest
                 entry.getChoiceListText()
         );
     }
+    
+    @Test
+    public void testEqualsAndHashCode()
+    {
+        GlobalTextareaChoiceListEntry entry = new GlobalTextareaChoiceListEntry("test", "a\nb\nc\n", false);
+        GlobalTextareaChoiceListEntry same = new GlobalTextareaChoiceListEntry("test", "a\nb\nc\n", true);
+        GlobalTextareaChoiceListEntry anotherName = new GlobalTextareaChoiceListEntry("test2", "a\nb\nc\n", false);
+        GlobalTextareaChoiceListEntry anotherList = new GlobalTextareaChoiceListEntry("test", "a\nbc\n", false);
+        
+        assertEquals(entry, same);
+        assertEquals(entry.hashCode(), same.hashCode());
+        assertFalse(entry.equals(anotherName));
+        assertFalse(entry.equals(anotherList));
+        assertFalse(entry.equals(null));
+        
+        // changed with an edited value.
+        same.addEditedValue("d");
+        assertFalse(entry.equals(same));
+        entry.addEditedValue("d");
+        assertEquals(entry, same);
+        assertEquals(entry.hashCode(), same.hashCode());
+    }
+    
+    @Test
+    public void testGetChoiceListSnapshot()
+    {
+        GlobalTextareaChoiceListEntry entry = new GlobalTextareaChoiceListEntry("test", "a\nb\nc\n", false);
+        ChoiceListSnapshot snapshot = entry.getChoiceListSnapshot();
+        assertEquals(Arrays.asList("a", "b", "c"), snapshot.getChoiceList());
+        assertSame("shared while not changed", snapshot, entry.getChoiceListSnapshot());
+        
+        entry.addEditedValue("d");
+        assertEquals(Arrays.asList("a", "b", "c", "d"), entry.getChoiceListSnapshot().getChoiceList());
+    }
+    
+    @Test
+    public void testWriteReplace()
+    {
+        GlobalTextareaChoiceListEntry entry = new GlobalTextareaChoiceListEntry("test", "a\nb\nc\n", false);
+        XStream xstream = new XStream(new Sun14ReflectionProvider(), new DomDriver());
+        String xml = xstream.toXML(entry);
+        assertTrue(xml, xml.matches("(?s).*<choiceList>\\s*<string>a</string>\\s*<string>b</string>\\s*<string>c</string>\\s*</choiceList>.*"));
+        
+        GlobalTextareaChoiceListEntry loaded = (GlobalTextareaChoiceListEntry)xstream.fromXML(xml);
+        assertEquals(entry, loaded);
+        assertSame("shared when loaded", entry.getChoiceList(), loaded.getChoiceList());
+    }
 }
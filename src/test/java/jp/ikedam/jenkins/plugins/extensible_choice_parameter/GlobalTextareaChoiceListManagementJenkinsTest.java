@@ -0,0 +1,225 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import jenkins.model.Jenkins;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule.WebClient;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.WebRequestSettings;
+import com.gargoylesoftware.htmlunit.html.HtmlForm;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.html.HtmlTextArea;
+import com.gargoylesoftware.htmlunit.html.HtmlTextInput;
+
+/**
+ * Tests for GlobalTextareaChoiceListManagement, corresponding to Jenkins.
+ */
+public class GlobalTextareaChoiceListManagementJenkinsTest
+{
+    @Rule
+    public ExtensibleChoiceParameterJenkinsRule j = new ExtensibleChoiceParameterJenkinsRule();
+    
+    private GlobalTextareaChoiceListProvider.DescriptorImpl getDescriptor()
+    {
+        return (GlobalTextareaChoiceListProvider.DescriptorImpl)Jenkins.getInstance().getDescriptor(GlobalTextareaChoiceListProvider.class);
+    }
+    
+    private GlobalTextareaChoiceListManagement getManagement()
+    {
+        return Jenkins.getInstance().getExtensionList(GlobalTextareaChoiceListManagement.class).get(0);
+    }
+    
+    private Page post(WebClient wc, String path) throws Exception
+    {
+        return wc.getPage(new WebRequestSettings(new URL(j.getURL(), path), HttpMethod.POST));
+    }
+    
+    @Test
+    public void testEdit() throws Exception
+    {
+        GlobalTextareaChoiceListProvider.DescriptorImpl descriptor = getDescriptor();
+        GlobalTextareaChoiceListEntry entry1 = new GlobalTextareaChoiceListEntry("entry1", "value1\nvalue2\n", false);
+        GlobalTextareaChoiceListEntry entry2 = new GlobalTextareaChoiceListEntry("entry2", "value1\nvalue2\n", false);
+        GlobalTextareaChoiceListEntry entry3 = new GlobalTextareaChoiceListEntry("entry3", "value1\nvalue2\n", false);
+        descriptor.setChoiceListEntryList(Arrays.asList(entry1, entry2, entry3));
+        
+        WebClient wc = j.createWebClient();
+        
+        // edit entry2
+        {
+            HtmlForm form = wc.goTo(String.format("%s/edit?name=entry2", GlobalTextareaChoiceListManagement.URL_NAME)).getFormByName("config");
+            ((HtmlTextInput)form.getInputByName("_.name")).setValueAttribute("entry2a");
+            ((HtmlTextArea)form.getTextAreaByName("_.choiceListText")).setText("value3\nvalue4\n");
+            j.submit(form);
+            
+            List<GlobalTextareaChoiceListEntry> entryList = descriptor.getChoiceListEntryList();
+            assertEquals(3, entryList.size());
+            // other entries are left as they are.
+            assertSame(entry1, entryList.get(0));
+            assertEquals("entry2a", entryList.get(1).getName());
+            assertEquals(Arrays.asList("value3", "value4"), entryList.get(1).getChoiceList());
+            assertSame(entry3, entryList.get(2));
+            
+            GlobalTextareaChoiceListProvider.DescriptorImpl newDescriptor
+                = new GlobalTextareaChoiceListProvider.DescriptorImpl();
+            assertEquals(entryList, newDescriptor.getChoiceListEntryList());
+        }
+        
+        // add a new entry
+        {
+            HtmlForm form = wc.goTo(String.format("%s/edit", GlobalTextareaChoiceListManagement.URL_NAME)).getFormByName("config");
+            ((HtmlTextInput)form.getInputByName("_.name")).setValueAttribute("entry4");
+            ((HtmlTextArea)form.getTextAreaByName("_.choiceListText")).setText("value5\n");
+            j.submit(form);
+            
+            List<GlobalTextareaChoiceListEntry> entryList = descriptor.getChoiceListEntryList();
+            assertEquals(4, entryList.size());
+            assertEquals("entry4", entryList.get(3).getName());
+            assertEquals(Arrays.asList("value5"), entryList.get(3).getChoiceList());
+        }
+        
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        
+        // invalid name
+        {
+            HtmlForm form = wc.goTo(String.format("%s/edit?name=entry1", GlobalTextareaChoiceListManagement.URL_NAME)).getFormByName("config");
+            ((HtmlTextInput)form.getInputByName("_.name")).setValueAttribute("!invalid");
+            Page page = j.submit(form);
+            assertEquals(400, page.getWebResponse().getStatusCode());
+            assertSame(entry1, descriptor.getChoiceListEntry("entry1"));
+        }
+        
+        // duplicated name
+        {
+            HtmlForm form = wc.goTo(String.format("%s/edit?name=entry1", GlobalTextareaChoiceListManagement.URL_NAME)).getFormByName("config");
+            ((HtmlTextInput)form.getInputByName("_.name")).setValueAttribute("entry3");
+            Page page = j.submit(form);
+            assertEquals(400, page.getWebResponse().getStatusCode());
+            assertSame(entry1, descriptor.getChoiceListEntry("entry1"));
+        }
+        
+        // used by jobs
+        GlobalChoiceListReferenceIndex.getInstance().update("job1", Collections.singletonMap("param1", "entry1"));
+        try
+        {
+            HtmlForm form = wc.goTo(String.format("%s/edit?name=entry1", GlobalTextareaChoiceListManagement.URL_NAME)).getFormByName("config");
+            ((HtmlTextInput)form.getInputByName("_.name")).setValueAttribute("entry1a");
+            Page page = j.submit(form);
+            assertEquals("cannot be renamed", 400, page.getWebResponse().getStatusCode());
+            assertSame(entry1, descriptor.getChoiceListEntry("entry1"));
+            
+            form = wc.goTo(String.format("%s/edit?name=entry1", GlobalTextareaChoiceListManagement.URL_NAME)).getFormByName("config");
+            ((HtmlTextArea)form.getTextAreaByName("_.choiceListText")).setText("value6\n");
+            page = j.submit(form);
+            assertEquals("can be edited", 200, page.getWebResponse().getStatusCode());
+            assertEquals(Arrays.asList("value6"), descriptor.getChoiceListEntry("entry1").getChoiceList());
+        }
+        finally
+        {
+            GlobalChoiceListReferenceIndex.getInstance().remove("job1");
+        }
+    }
+    
+    @Test
+    public void testDelete() throws Exception
+    {
+        GlobalTextareaChoiceListProvider.DescriptorImpl descriptor = getDescriptor();
+        GlobalTextareaChoiceListEntry entry1 = new GlobalTextareaChoiceListEntry("entry1", "value1\nvalue2\n", false);
+        GlobalTextareaChoiceListEntry entry2 = new GlobalTextareaChoiceListEntry("entry2", "value1\nvalue2\n", false);
+        descriptor.setChoiceListEntryList(Arrays.asList(entry1, entry2));
+        
+        WebClient wc = j.createWebClient();
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        
+        // GET is not allowed
+        {
+            Page page = wc.goTo(String.format("%s/delete?name=entry1", GlobalTextareaChoiceListManagement.URL_NAME), null);
+            assertEquals(405, page.getWebResponse().getStatusCode());
+        }
+        
+        // no such entry
+        {
+            Page page = post(wc, String.format("%s/delete?name=nosuchentry", GlobalTextareaChoiceListManagement.URL_NAME));
+            assertEquals(404, page.getWebResponse().getStatusCode());
+        }
+        
+        assertEquals(Arrays.asList(entry1, entry2), descriptor.getChoiceListEntryList());
+        
+        post(wc, String.format("%s/delete?name=entry1", GlobalTextareaChoiceListManagement.URL_NAME));
+        assertEquals(Arrays.asList(entry2), descriptor.getChoiceListEntryList());
+    }
+    
+    @Test
+    public void testSearchAndPage() throws Exception
+    {
+        List<GlobalTextareaChoiceListEntry> entryList = new ArrayList<GlobalTextareaChoiceListEntry>();
+        for(int i = 0; i < GlobalTextareaChoiceListManagement.PAGE_SIZE * 2 + 1; ++i)
+        {
+            entryList.add(new GlobalTextareaChoiceListEntry(String.format("entry%03d", i), "value\n", false));
+        }
+        entryList.add(new GlobalTextareaChoiceListEntry("Another", "value\n", false));
+        getDescriptor().setChoiceListEntryList(entryList);
+        
+        GlobalTextareaChoiceListManagement management = getManagement();
+        
+        // search
+        assertEquals(entryList.size(), management.search(null).size());
+        assertEquals(entryList.size(), management.search("  ").size());
+        assertEquals(Arrays.asList(entryList.get(entryList.size() - 1)), management.search("anoTHER"));
+        assertEquals(GlobalTextareaChoiceListManagement.PAGE_SIZE * 2 + 1, management.search("ENTRY").size());
+        assertEquals(0, management.search("nosuchentry").size());
+        
+        // pages
+        List<GlobalTextareaChoiceListEntry> found = management.search("entry");
+        assertEquals(3, management.getPageCount(found));
+        assertEquals(1, management.getPageCount(management.search("nosuchentry")));
+        assertEquals(1, management.toPageNumber(null, found));
+        assertEquals(1, management.toPageNumber("x", found));
+        assertEquals(1, management.toPageNumber("-1", found));
+        assertEquals(2, management.toPageNumber("2", found));
+        assertEquals(3, management.toPageNumber("100", found));
+        assertEquals(entryList.subList(0, GlobalTextareaChoiceListManagement.PAGE_SIZE), management.getPage(found, 1));
+        assertEquals(Arrays.asList(entryList.get(GlobalTextareaChoiceListManagement.PAGE_SIZE * 2)), management.getPage(found, 3));
+        
+        // the page lists only entries in the page.
+        WebClient wc = j.createWebClient();
+        HtmlPage page = wc.goTo(String.format("%s/?q=entry&page=3", GlobalTextareaChoiceListManagement.URL_NAME));
+        assertNotNull(page.getAnchorByText(String.format("entry%03d", GlobalTextareaChoiceListManagement.PAGE_SIZE * 2)));
+        assertFalse(page.asText().contains("entry000"));
+        assertFalse(page.asText().contains("Another"));
+    }
+}
@@ -346,16 +346,9 @@ public class GlobalTextareaChoiceListProviderJenkinsTest
     }
     
     /**
-     * Tests the submitted form is saved correctly,
-     * and can be loaded correctly.
+     * Tests the System Configuration page does not change sets of choices.
      * 
-     * This is performed in following steps.
-     * 1. update the descriptor to the state to be submitted.
-     * 2. show form.
-     * 3. submit the form.
-     * 4. update the descriptor to another state.
-     * 5. Re-construct the descriptor
-     * 6. assert if the new created descriptor is in the state of 1.
+     * Sets of choices are edited in GlobalTextareaChoiceListManagement.
      * @throws Exception 
      */
     @Test
@@ -365,95 +358,91 @@ public class GlobalTextareaChoiceListProviderJenkinsTest
         GlobalTextareaChoiceListProvider.DescriptorImpl descriptor = getDescriptor();
         GlobalTextareaChoiceListEntry validEntry1 = new GlobalTextareaChoiceListEntry("entry1", "value1\nvalue2\n", false);
         GlobalTextareaChoiceListEntry validEntry2 = new GlobalTextareaChoiceListEntry("entry2", "value1\nvalue2\n", false);
+        
+        descriptor.setChoiceListEntryList(Arrays.asList(validEntry1, validEntry2));
+        descriptor.save();
+        
+        HtmlForm configForm = wc.goTo("/configure").getFormByName("config");
+        j.submit(configForm);
+        
+        assertEquals("descriptor after submission", 
+                Arrays.asList(validEntry1, validEntry2),
+                descriptor.getChoiceListEntryList()
+        );
+        
+        GlobalTextareaChoiceListProvider.DescriptorImpl newDescriptor
+            = new GlobalTextareaChoiceListProvider.DescriptorImpl();
+        
+        assertEquals("descriptor serialized from config.xml",
+                Arrays.asList(validEntry1, validEntry2),
+                newDescriptor.getChoiceListEntryList()
+        );
+    }
+    
+    /**
+     * Tests a set of choices can be replaced, added, and removed
+     * without affecting others.
+     * @throws Exception 
+     */
+    @Test
+    public void testPutAndRemoveChoiceListEntry() throws Exception
+    {
+        GlobalTextareaChoiceListProvider.DescriptorImpl descriptor = getDescriptor();
+        GlobalTextareaChoiceListEntry validEntry1 = new GlobalTextareaChoiceListEntry("entry1", "value1\nvalue2\n", false);
+        GlobalTextareaChoiceListEntry validEntry2 = new GlobalTextareaChoiceListEntry("entry2", "value1\nvalue2\n", false);
         GlobalTextareaChoiceListEntry validEntry3 = new GlobalTextareaChoiceListEntry("entry3", "value1\nvalue2\n", false);
+        GlobalTextareaChoiceListEntry renamedEntry2 = new GlobalTextareaChoiceListEntry("entry2a", "value3\n", true);
         GlobalTextareaChoiceListEntry invalidEntry1 = new GlobalTextareaChoiceListEntry("!invalid1", "value1\nvalue2\n", false);
         
-        // Simple submission
-        {
-            // update the descriptor to the state I want to submit.
-            descriptor.setChoiceListEntryList(Arrays.asList(validEntry1, validEntry2, validEntry3));
-            
-            HtmlForm configForm = wc.goTo("/configure").getFormByName("config");
-            
-            // update the descriptor to the another state.
-            descriptor.setChoiceListEntryList(null);
-            
-            j.submit(configForm);
-            
-            assertEquals("Simple submission: descriptor after submission", 
-                    Arrays.asList(validEntry1, validEntry2, validEntry3),
-                    descriptor.getChoiceListEntryList()
-            );
-            
-            // update the descriptor to the another state.
-            descriptor.setChoiceListEntryList(null);
-            
-            GlobalTextareaChoiceListProvider.DescriptorImpl newDescriptor
-                = new GlobalTextareaChoiceListProvider.DescriptorImpl();
-            
-            assertEquals("Simple submission: descriptor serialized from config.xml",
-                    Arrays.asList(validEntry1, validEntry2, validEntry3),
-                    newDescriptor.getChoiceListEntryList()
-            );
-        }
+        descriptor.setChoiceListEntryList(Arrays.asList(validEntry1, validEntry2));
         
-        // Submission with invalid entry.
-        {
-            // update the descriptor to the state I want to submit.
-            descriptor.setChoiceListEntryList(Arrays.asList(invalidEntry1, validEntry2, validEntry3));
-            
-            HtmlForm configForm = wc.goTo("/configure").getFormByName("config");
-            
-            // update the descriptor to the another state.
-            descriptor.setChoiceListEntryList(null);
-            
-            j.submit(configForm);
-            
-            assertEquals("Submission with invalid entry: descriptor after submission", 
-                    Arrays.asList(validEntry2, validEntry3),
-                    descriptor.getChoiceListEntryList()
-            );
-            
-            // update the descriptor to the another state.
-            descriptor.setChoiceListEntryList(null);
-            
-            GlobalTextareaChoiceListProvider.DescriptorImpl newDescriptor
-                = new GlobalTextareaChoiceListProvider.DescriptorImpl();
-            
-            assertEquals("Submission with invalid entry: descriptor serialized from config.xml",
-                    Arrays.asList(validEntry2, validEntry3),
-                    newDescriptor.getChoiceListEntryList()
-            );
-        }
+        // replace
+        assertTrue(descriptor.putChoiceListEntry("entry2", renamedEntry2));
+        assertEquals("replace",
+                Arrays.asList(validEntry1, renamedEntry2),
+                descriptor.getChoiceListEntryList()
+        );
         
-        // Empty submission
-        {
-            // update the descriptor to the state I want to submit.
-            descriptor.setChoiceListEntryList(null);
-            
-            HtmlForm configForm = wc.goTo("/configure").getFormByName("config");
-            
-            // update the descriptor to the another state.
-            descriptor.setChoiceListEntryList(Arrays.asList(validEntry1, validEntry2));
-            
-            j.submit(configForm);
-            
-            assertEquals("Empty submission: descriptor after submission", 
-                    new ArrayList<GlobalTextareaChoiceListEntry>(0),
-                    descriptor.getChoiceListEntryList()
-            );
-            
-            // update the descriptor to the another state.
-            descriptor.setChoiceListEntryList(Arrays.asList(validEntry1, validEntry2));
-            
-            GlobalTextareaChoiceListProvider.DescriptorImpl newDescriptor
-                = new GlobalTextareaChoiceListProvider.DescriptorImpl();
-            
-            assertEquals("Empty submission: descriptor serialized from config.xml",
-                    new ArrayList<GlobalTextareaChoiceListEntry>(0),
-                    newDescriptor.getChoiceListEntryList()
-            );
-        }
+        // add
+        assertTrue(descriptor.putChoiceListEntry(null, validEntry3));
+        assertEquals("add",
+                Arrays.asList(validEntry1, renamedEntry2, validEntry3),
+                descriptor.getChoiceListEntryList()
+        );
+        
+        // names are not duplicated
+        assertFalse("add duplicated", descriptor.putChoiceListEntry(null, new GlobalTextareaChoiceListEntry("entry3", "value4\n", false)));
+        assertFalse("rename to duplicated", descriptor.putChoiceListEntry("entry1", new GlobalTextareaChoiceListEntry("entry3", "value4\n", false)));
+        assertEquals("duplicated",
+                Arrays.asList(validEntry1, renamedEntry2, validEntry3),
+                descriptor.getChoiceListEntryList()
+        );
+        
+        // invalid entries are not added
+        assertFalse("add invalid", descriptor.putChoiceListEntry(null, invalidEntry1));
+        assertFalse("replace with invalid", descriptor.putChoiceListEntry("entry1", invalidEntry1));
+        assertFalse("add null", descriptor.putChoiceListEntry(null, null));
+        assertEquals("invalid",
+                Arrays.asList(validEntry1, renamedEntry2, validEntry3),
+                descriptor.getChoiceListEntryList()
+        );
+        assertSame("the original entry survives", validEntry1, descriptor.getChoiceListEntry("entry1"));
+        
+        // remove
+        assertTrue("remove", descriptor.removeChoiceListEntry("entry1"));
+        assertFalse("remove not existing", descriptor.removeChoiceListEntry("entry1"));
+        assertEquals("remove",
+                Arrays.asList(renamedEntry2, validEntry3),
+                descriptor.getChoiceListEntryList()
+        );
+        
+        GlobalTextareaChoiceListProvider.DescriptorImpl newDescriptor
+            = new GlobalTextareaChoiceListProvider.DescriptorImpl();
+        
+        assertEquals("descriptor serialized from config.xml",
+                Arrays.asList(renamedEntry2, validEntry3),
+                newDescriptor.getChoiceListEntryList()
+        );
     }
     
     public static class SleepBuilder extends Builder
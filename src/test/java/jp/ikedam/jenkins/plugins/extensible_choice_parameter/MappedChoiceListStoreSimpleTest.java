@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListPrefixIndex;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.ChoiceListTrigramIndex;
+import jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.MappedStringList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for MappedChoiceListStore, not corresponding to Jenkins.
+ */
+public class MappedChoiceListStoreSimpleTest
+{
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    
+    private MappedChoiceListStore createStore()
+    {
+        return new MappedChoiceListStore()
+        {
+            @Override
+            protected File getStoreDir()
+            {
+                return new File(tmp.getRoot(), "mapped");
+            }
+        };
+    }
+    
+    @Test
+    public void testMap()
+    {
+        MappedChoiceListStore target = createStore();
+        ChoiceListSnapshot snapshot = new ChoiceListSnapshot(Arrays.asList("a", "b", "c"), 10);
+        
+        ChoiceListSnapshot mapped = target.map("key", snapshot);
+        assertTrue("stored in a file", mapped.getChoiceList() instanceof MappedStringList);
+        assertEquals(snapshot.getChoiceList(), mapped.getChoiceList());
+        assertEquals(10, mapped.getCreatedAt());
+        assertTrue(snapshot.hasSameContents(mapped));
+        assertTrue(mapped.contains("b"));
+        assertFalse(mapped.contains("d"));
+        assertSame("mapped again", mapped, target.map("key", mapped));
+        
+        MappedStringList opened = target.open("key", snapshot.getFingerprint().toString());
+        assertEquals(snapshot.getChoiceList(), opened);
+        assertNull("other key", target.open("other", snapshot.getFingerprint().toString()));
+        assertNull("not a fingerprint", target.open("key", "../key"));
+    }
+    
+    @Test
+    public void testMapRemovesOldLists()
+    {
+        MappedChoiceListStore target = createStore();
+        ChoiceListSnapshot snapshot1 = new ChoiceListSnapshot(Arrays.asList("a", "b"));
+        ChoiceListSnapshot snapshot2 = new ChoiceListSnapshot(Arrays.asList("c", "d"));
+        ChoiceListSnapshot other = new ChoiceListSnapshot(Arrays.asList("e"));
+        
+        target.map("key", snapshot1).getPrefixIndex();
+        target.map("other", other);
+        ChoiceListSnapshot mapped = target.map("key", snapshot2);
+        assertEquals(Arrays.asList("c", "d"), mapped.getChoiceList());
+        
+        File dir = new File(tmp.getRoot(), "mapped");
+        if(!System.getProperty("os.name").startsWith("Windows"))
+        {
+            // mapped files cannot be removed in Windows.
+            assertNull("old list is removed", target.open("key", snapshot1.getFingerprint().toString()));
+            assertEquals("index of the old list is removed", 2, dir.list().length);
+        }
+        assertNotNull("list for other keys is kept", target.open("other", other.getFingerprint().toString()));
+        
+        mapped.getPrefixIndex();
+        mapped.getTrigramIndex();
+        MappedStringList list = (MappedStringList)mapped.getChoiceList();
+        assertTrue(list.getSidecarFile(ChoiceListPrefixIndex.SUFFIX).exists());
+        assertTrue(list.getSidecarFile(ChoiceListTrigramIndex.SUFFIX).exists());
+        
+        if(!System.getProperty("os.name").startsWith("Windows"))
+        {
+            // written again with the same contents.
+            assertTrue(list.getFile().delete());
+            target.map("key", snapshot2);
+            assertTrue("index of the current list is kept", list.getSidecarFile(ChoiceListPrefixIndex.SUFFIX).exists());
+            assertTrue("index of the current list is kept", list.getSidecarFile(ChoiceListTrigramIndex.SUFFIX).exists());
+        }
+    }
+    
+    @Test
+    public void testLastKnownGoodRecord()
+    {
+        MappedChoiceListStore target = createStore();
+        ChoiceListSnapshot snapshot = target.map(
+                "key",
+                new ChoiceListSnapshot(Arrays.asList("a", "b", "c"), 10)
+        );
+        
+        LastKnownGoodChoiceListStore.Record record = new LastKnownGoodChoiceListStore.Record("key", snapshot);
+        assertEquals("only the fingerprint is recorded", snapshot.getFingerprint().toString(), record.getMappedFingerprint());
+        
+        ChoiceListSnapshot loaded = record.toSnapshot(target.open("key", record.getMappedFingerprint()));
+        assertTrue("opened from the file", loaded.getChoiceList() instanceof MappedStringList);
+        assertEquals(snapshot.getChoiceList(), loaded.getChoiceList());
+        assertEquals(10, loaded.getCreatedAt());
+        assertTrue(snapshot.hasSameContents(loaded));
+        
+        assertNull(
+                "lists not in files are recorded as they are",
+                new LastKnownGoodChoiceListStore.Record("key", new ChoiceListSnapshot(Arrays.asList("a"))).getMappedFingerprint()
+        );
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter;
+
+import static org.junit.Assert.*;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for RenderedChoiceListStore, not corresponding to Jenkins.
+ */
+public class RenderedChoiceListStoreSimpleTest
+{
+    @Test
+    public void testRetain()
+    {
+        RenderedChoiceListStore target = new RenderedChoiceListStore();
+        Object owner = new Object();
+        ChoiceListSnapshot snapshot = new ChoiceListSnapshot(Arrays.asList("value1", "value2"));
+        
+        String token = target.retain(owner, snapshot, 0);
+        assertEquals(snapshot.getFingerprint().toString(), token);
+        assertSame(snapshot, target.get(owner, token, 1));
+        
+        assertNull("another owner", target.get(new Object(), token, 1));
+        assertNull("another token", target.get(owner, "other", 1));
+        assertNull("no token", target.get(owner, null, 1));
+    }
+    
+    @Test
+    public void testExpire()
+    {
+        RenderedChoiceListStore target = new RenderedChoiceListStore();
+        Object owner = new Object();
+        ChoiceListSnapshot snapshot = new ChoiceListSnapshot(Arrays.asList("value1", "value2"));
+        
+        String token = target.retain(owner, snapshot, 0);
+        assertNotNull(target.get(owner, token, RenderedChoiceListStore.TTL - 1));
+        
+        // shown again
+        target.retain(owner, snapshot, 100);
+        assertNotNull("extended", target.get(owner, token, RenderedChoiceListStore.TTL + 99));
+        assertNull("expired", target.get(owner, token, RenderedChoiceListStore.TTL + 100));
+    }
+    
+    @Test
+    public void testMaxEntries()
+    {
+        RenderedChoiceListStore target = new RenderedChoiceListStore();
+        Object owner = new Object();
+        String first = target.retain(owner, new ChoiceListSnapshot(Arrays.asList("first")), 0);
+        for(int i = 0; i < RenderedChoiceListStore.MAX_ENTRIES; ++i)
+        {
+            target.retain(owner, new ChoiceListSnapshot(Arrays.asList(Integer.toString(i))), 0);
+        }
+        assertNull("dropped", target.get(owner, first, 0));
+    }
+    
+    @Test
+    public void testMaxRetainedChoices()
+    {
+        RenderedChoiceListStore target = new RenderedChoiceListStore();
+        Object owner = new Object();
+        int half = (int)(RenderedChoiceListStore.MAX_RETAINED_CHOICES / 2);
+        
+        String first = target.retain(owner, new ChoiceListSnapshot(Collections.nCopies(half, "first")), 0);
+        String second = target.retain(owner, new ChoiceListSnapshot(Collections.nCopies(half, "second")), 0);
+        assertNotNull(target.get(owner, first, 0));
+        assertEquals(RenderedChoiceListStore.MAX_RETAINED_CHOICES, target.getRetainedChoices());
+        
+        // first is used more recently than second.
+        String third = target.retain(owner, new ChoiceListSnapshot(Collections.nCopies(1, "third")), 0);
+        assertNull("dropped", target.get(owner, second, 0));
+        assertNotNull(target.get(owner, first, 0));
+        assertNotNull(target.get(owner, third, 0));
+        assertEquals(half + 1, target.getRetainedChoices());
+        
+        String tooLarge = target.retain(
+                owner,
+                new ChoiceListSnapshot(Collections.nCopies((int)RenderedChoiceListStore.MAX_RETAINED_CHOICES + 1, "large")),
+                0
+        );
+        assertNull("not retained", target.get(owner, tooLarge, 0));
+        assertNotNull("others are kept", target.get(owner, first, 0));
+    }
+    
+    @Test
+    public void testOwnerCollected() throws Exception
+    {
+        RenderedChoiceListStore target = new RenderedChoiceListStore();
+        Object owner = new Object();
+        Object other = new Object();
+        target.retain(owner, new ChoiceListSnapshot(Arrays.asList("value1", "value2")), 0);
+        String token = target.retain(other, new ChoiceListSnapshot(Arrays.asList("value3")), 0);
+        assertEquals(3, target.getRetainedChoices());
+        
+        // the parameter is replaced by reconfiguring the job.
+        WeakReference<Object> ref = new WeakReference<Object>(owner);
+        owner = null;
+        for(int i = 0; i < 100 && ref.get() != null; ++i)
+        {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("not held by the store", ref.get());
+        for(int i = 0; i < 100 && target.getRetainedChoices() > 1; ++i)
+        {
+            // wait for the reference to be enqueued.
+            Thread.sleep(10);
+        }
+        assertEquals("dropped without expiring", 1, target.getRetainedChoices());
+        assertNotNull("others are kept", target.get(other, token, 0));
+    }
+    
+    @Test
+    public void testRetainedChoicesNotModified()
+    {
+        RenderedChoiceListStore target = new RenderedChoiceListStore();
+        Object owner = new Object();
+        List<String> choiceList = new ArrayList<String>(Arrays.asList("value1", "value2"));
+        
+        String token = target.retain(owner, new ChoiceListSnapshot(choiceList), 0);
+        // the provider modifies its list after shown.
+        choiceList.set(1, "value3");
+        
+        ChoiceListSnapshot snapshot = target.get(owner, token, 0);
+        assertEquals(Arrays.asList("value1", "value2"), snapshot.getChoiceList());
+        assertTrue(snapshot.contains("value2"));
+        assertFalse(snapshot.contains("value3"));
+    }
+}
@@ -29,6 +29,10 @@ import java.util.Arrays;
 
 import org.junit.Test;
 
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.converters.reflection.Sun14ReflectionProvider;
+import com.thoughtworks.xstream.io.xml.DomDriver;
+
 /**
  * Tests for TextareaChoiceListProvider, not corresponding to Jenkins.
  */
@@ -98,4 +102,41 @@ public class TextareaChoiceListProviderSimpleTest
             assertEquals("blank", defaultChoice, target.getDefaultChoice());
         }
     }
+    
+    @Test
+    public void testGetChoiceListSnapshot()
+    {
+        TextareaChoiceListProvider target = new TextareaChoiceListProvider("a\nb\nc\n", null, false, null);
+        ChoiceListSnapshot snapshot = target.getChoiceListSnapshot();
+        assertEquals(Arrays.asList("a", "b", "c"), snapshot.getChoiceList());
+        assertSame("shared while not changed", snapshot, target.getChoiceListSnapshot());
+        
+        target.setChoiceList(Arrays.asList("a", "b", "c", "d"));
+        assertNotSame("recreated when changed", snapshot, target.getChoiceListSnapshot());
+        assertEquals(Arrays.asList("a", "b", "c", "d"), target.getChoiceListSnapshot().getChoiceList());
+    }
+    
+    @Test
+    public void testChoiceListShared()
+    {
+        TextareaChoiceListProvider target1 = new TextareaChoiceListProvider("a\nb\nc\n", null, false, null);
+        TextareaChoiceListProvider target2 = new TextareaChoiceListProvider("a\nb\nc", "b", false, null);
+        TextareaChoiceListProvider target3 = new TextareaChoiceListProvider("a\nb\n", null, false, null);
+        
+        assertSame("same contents", target1.getChoiceList(), target2.getChoiceList());
+        assertNotSame("different contents", target1.getChoiceList(), target3.getChoiceList());
+    }
+    
+    @Test
+    public void testWriteReplace()
+    {
+        TextareaChoiceListProvider target = new TextareaChoiceListProvider("a\nb\nc\n", null, false, null);
+        XStream xstream = new XStream(new Sun14ReflectionProvider(), new DomDriver());
+        String xml = xstream.toXML(target);
+        assertTrue(xml, xml.matches("(?s).*<choiceList>\\s*<string>a</string>\\s*<string>b</string>\\s*<string>c</string>\\s*</choiceList>.*"));
+        
+        TextareaChoiceListProvider loaded = (TextareaChoiceListProvider)xstream.fromXML(xml);
+        assertEquals(Arrays.asList("a", "b", "c"), loaded.getChoiceList());
+        assertSame("shared when loaded", target.getChoiceList(), loaded.getChoiceList());
+    }
 }
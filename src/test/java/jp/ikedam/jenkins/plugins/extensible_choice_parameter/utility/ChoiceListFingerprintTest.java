@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for ChoiceListFingerprint
+ */
+public class ChoiceListFingerprintTest
+{
+    @Test
+    public void testFromStringList()
+    {
+        // same contents
+        {
+            List<String> list1 = Arrays.asList("a", "b", "c");
+            List<String> list2 = new ArrayList<String>(list1);
+            assertEquals("same contents", ChoiceListFingerprint.fromStringList(list1), ChoiceListFingerprint.fromStringList(list2));
+        }
+        
+        // different order
+        {
+            assertFalse("different order", ChoiceListFingerprint.fromStringList(Arrays.asList("a", "b")).equals(
+                    ChoiceListFingerprint.fromStringList(Arrays.asList("b", "a"))
+            ));
+        }
+        
+        // different boundaries
+        {
+            assertFalse("different boundaries", ChoiceListFingerprint.fromStringList(Arrays.asList("ab", "c")).equals(
+                    ChoiceListFingerprint.fromStringList(Arrays.asList("a", "bc"))
+            ));
+        }
+        
+        // empty string is not same to empty list.
+        {
+            assertFalse("empty string", ChoiceListFingerprint.fromStringList(Arrays.asList("")).equals(
+                    ChoiceListFingerprint.fromStringList(new ArrayList<String>(0))
+            ));
+        }
+        
+        // null is same to empty list.
+        {
+            assertEquals("null", ChoiceListFingerprint.fromStringList(new ArrayList<String>(0)), ChoiceListFingerprint.fromStringList(null));
+        }
+        
+        // null element is not same to empty string.
+        {
+            assertFalse("null element", ChoiceListFingerprint.fromStringList(Arrays.asList((String)null)).equals(
+                    ChoiceListFingerprint.fromStringList(Arrays.asList(""))
+            ));
+        }
+    }
+    
+    @Test
+    public void testToStringAndFromString()
+    {
+        ChoiceListFingerprint fingerprint = ChoiceListFingerprint.fromStrings("a", "b", "c");
+        String value = fingerprint.toString();
+        assertEquals("32 hex letters", 32, value.length());
+        assertEquals("parse the string", fingerprint, ChoiceListFingerprint.fromString(value));
+        assertEquals("upper bits", fingerprint.getHigh(), ChoiceListFingerprint.fromString(value).getHigh());
+        
+        assertNull("null", ChoiceListFingerprint.fromString(null));
+        assertNull("too short", ChoiceListFingerprint.fromString("0123"));
+        assertNull("not a hex", ChoiceListFingerprint.fromString("0123456789abcdefghijklmnopqrstuv"));
+    }
+}
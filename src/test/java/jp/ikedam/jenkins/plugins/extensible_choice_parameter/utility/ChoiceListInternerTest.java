@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for ChoiceListInterner
+ */
+public class ChoiceListInternerTest
+{
+    @Test
+    public void testIntern()
+    {
+        ChoiceListInterner target = new ChoiceListInterner();
+        
+        assertNull("null", target.intern(null));
+        
+        List<String> list1 = Arrays.asList("a", "b", "c");
+        List<String> list2 = new ArrayList<String>(list1);
+        List<String> interned = target.intern(list1);
+        assertEquals("same contents", list1, interned);
+        assertNotSame("copied", list1, interned);
+        assertSame("shared", interned, target.intern(list2));
+        assertSame("shared with itself", interned, target.intern(interned));
+        try
+        {
+            interned.set(0, "x");
+            fail("shared lists cannot be modified");
+        }
+        catch(UnsupportedOperationException e)
+        {
+            // expected
+        }
+        
+        List<String> another = target.intern(Arrays.asList("a", "b"));
+        assertNotSame("different contents", interned, another);
+        assertEquals(Arrays.asList("a", "b"), another);
+        assertEquals(2, target.size());
+    }
+    
+    @Test
+    public void testCollected() throws Exception
+    {
+        ChoiceListInterner target = new ChoiceListInterner();
+        
+        List<String> interned = target.intern(Arrays.asList("a", "b", "c"));
+        assertEquals(1, target.size());
+        
+        interned = null;
+        for(int i = 0; i < 50 && target.size() > 0; ++i)
+        {
+            System.gc();
+            Thread.sleep(100);
+        }
+        assertEquals("dropped when no longer used", 0, target.size());
+    }
+    
+    @Test
+    public void testInternCompact()
+    {
+        ChoiceListInterner target = new ChoiceListInterner();
+        
+        List<String> list = Arrays.asList("a", "b", "c");
+        List<String> compact = target.intern(list, true);
+        assertTrue("compacted", compact instanceof FrontCodedStringList);
+        assertEquals(list, compact);
+        assertSame("shared", compact, target.intern(new ArrayList<String>(list), true));
+        
+        List<String> notCompact = target.intern(list, false);
+        assertFalse("replaced", notCompact instanceof FrontCodedStringList);
+        assertEquals(list, notCompact);
+        assertSame("shared", notCompact, target.intern(list));
+    }
+}
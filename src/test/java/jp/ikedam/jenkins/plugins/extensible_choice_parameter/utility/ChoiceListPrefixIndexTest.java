@@ -0,0 +1,214 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for ChoiceListPrefixIndex
+ */
+public class ChoiceListPrefixIndexTest
+{
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    
+    /**
+     * A list failing random access while building indexes.
+     */
+    private static class SequentialList extends AbstractList<String>
+    {
+        private final List<String> choiceList;
+        public boolean building = true;
+        
+        public SequentialList(List<String> choiceList)
+        {
+            this.choiceList = choiceList;
+        }
+        
+        @Override
+        public String get(int index)
+        {
+            assertFalse("read in random order", building);
+            return choiceList.get(index);
+        }
+        
+        @Override
+        public Iterator<String> iterator()
+        {
+            return choiceList.iterator();
+        }
+        
+        @Override
+        public int size()
+        {
+            return choiceList.size();
+        }
+    }
+    
+    @Test
+    public void testSearch()
+    {
+        ChoiceListPrefixIndex target = new ChoiceListPrefixIndex(Arrays.asList(
+                "release-1.10",
+                "Release-1.2",
+                "snapshot-2.0",
+                "release-1.1",
+                "rc-1.0"
+        ));
+        
+        assertEquals("case insensitive and sorted",
+                Arrays.asList("release-1.1", "release-1.10", "Release-1.2"),
+                target.search("REL", 10));
+        assertEquals("limited",
+                Arrays.asList("release-1.1", "release-1.10"),
+                target.search("rel", 2));
+        assertEquals("exact match",
+                Arrays.asList("rc-1.0"),
+                target.search("rc-1.0", 10));
+        assertEquals("no match",
+                new ArrayList<String>(),
+                target.search("x", 10));
+        assertEquals("longer than any",
+                new ArrayList<String>(),
+                target.search("snapshot-2.0-SNAPSHOT", 10));
+        assertEquals("empty for all", 5, target.search("", 10).size());
+        assertEquals("null for all", 5, target.search(null, 10).size());
+        assertEquals("zero limit", 0, target.search("r", 0).size());
+    }
+    
+    @Test
+    public void testCount()
+    {
+        ChoiceListPrefixIndex target = new ChoiceListPrefixIndex(Arrays.asList(
+                "ab",
+                "abc",
+                "abd",
+                "ac",
+                "b",
+                "a" + Character.MAX_VALUE + "x",
+                "a" + Character.MAX_VALUE
+        ));
+        assertEquals(7, target.size());
+        assertEquals("all", 7, target.count(""));
+        assertEquals("all", 7, target.count(null));
+        assertEquals("a", 6, target.count("a"));
+        assertEquals("ab", 3, target.count("AB"));
+        assertEquals("abc", 1, target.count("abc"));
+        assertEquals("not found", 0, target.count("abe"));
+        assertEquals("not found", 0, target.count("c"));
+        assertEquals("max value", 2, target.count("a" + Character.MAX_VALUE));
+    }
+    
+    @Test
+    public void testDuplicatesAndNull()
+    {
+        List<String> choiceList = Arrays.asList("b", null, "a", "b", "");
+        ChoiceListPrefixIndex target = new ChoiceListPrefixIndex(choiceList);
+        assertEquals("duplicates", Arrays.asList("b", "b"), target.search("b", 10));
+        assertEquals("null and empty are first", Arrays.asList(null, ""), target.search("", 2));
+    }
+    
+    @Test
+    public void testEmpty()
+    {
+        ChoiceListPrefixIndex target = new ChoiceListPrefixIndex(null);
+        assertEquals(0, target.size());
+        assertEquals(0, target.search("a", 10).size());
+        assertEquals(0, target.count("a"));
+        assertEquals(0, target.count(""));
+    }
+    
+    @Test
+    public void testBuildSequentially()
+    {
+        List<String> choiceList = new ArrayList<String>();
+        for(int i = 0; i < 1000; ++i)
+        {
+            choiceList.add(String.format("%s-%d", (i % 3 == 0)?"Release":"snapshot", 999 - i));
+        }
+        choiceList.add(null);
+        ChoiceListPrefixIndex indexed = new ChoiceListPrefixIndex(choiceList);
+        
+        SequentialList sequential = new SequentialList(new FrontCodedStringList(choiceList));
+        ChoiceListPrefixIndex target = new ChoiceListPrefixIndex(sequential);
+        sequential.building = false;
+        for(String prefix: Arrays.asList("r", "release-99", "SNAPSHOT-1", "", "x"))
+        {
+            assertEquals(prefix, indexed.search(prefix, 2000), target.search(prefix, 2000));
+            assertEquals(prefix, indexed.count(prefix), target.count(prefix));
+        }
+    }
+    
+    @Test
+    public void testMappedList() throws Exception
+    {
+        List<String> choiceList = Arrays.asList("b", "Ab", "a", "ab", null, "abc", "B", "aB", "c");
+        File file = new File(tmp.getRoot(), "test.list");
+        MappedStringList.write(file, choiceList);
+        ChoiceListPrefixIndex indexed = new ChoiceListPrefixIndex(choiceList);
+        MappedStringList mapped = MappedStringList.open(file);
+        File indexFile = mapped.getSidecarFile(ChoiceListPrefixIndex.SUFFIX);
+        ChoiceListPrefixIndex target = ChoiceListPrefixIndex.open(mapped);
+        assertTrue("stored next to the list", indexFile.exists());
+        
+        assertEquals(choiceList.size(), target.size());
+        for(String prefix: Arrays.asList("a", "AB", "b", "", "d"))
+        {
+            assertEquals(prefix, indexed.search(prefix, 100), target.search(prefix, 100));
+            assertEquals(prefix, indexed.search(prefix, 2), target.search(prefix, 2));
+            assertEquals(prefix, indexed.count(prefix), target.count(prefix));
+        }
+        assertEquals(0, target.search("a", 0).size());
+        
+        long lastModified = indexFile.lastModified();
+        assertEquals("reused", indexed.search("a", 100), ChoiceListPrefixIndex.open(mapped).search("a", 100));
+        assertEquals(lastModified, indexFile.lastModified());
+    }
+    
+    @Test
+    public void testMappedListBrokenIndex() throws Exception
+    {
+        List<String> choiceList = Arrays.asList("b", "a", "c");
+        File file = new File(tmp.getRoot(), "test.list");
+        MappedStringList.write(file, choiceList);
+        MappedStringList mapped = MappedStringList.open(file);
+        File indexFile = mapped.getSidecarFile(ChoiceListPrefixIndex.SUFFIX);
+        FileUtils.writeStringToFile(indexFile, "broken");
+        
+        assertEquals("written again", Arrays.asList("a", "b", "c"), ChoiceListPrefixIndex.open(mapped).search("", 10));
+        assertEquals(12 + 4 * 3, indexFile.length());
+    }
+}
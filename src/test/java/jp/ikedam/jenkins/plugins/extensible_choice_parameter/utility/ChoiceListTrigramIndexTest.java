@@ -0,0 +1,332 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for ChoiceListTrigramIndex
+ */
+public class ChoiceListTrigramIndexTest
+{
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    
+    /**
+     * A list failing random access while building indexes.
+     */
+    private static class SequentialList extends AbstractList<String>
+    {
+        private final List<String> choiceList;
+        public boolean building = true;
+        
+        public SequentialList(List<String> choiceList)
+        {
+            this.choiceList = choiceList;
+        }
+        
+        @Override
+        public String get(int index)
+        {
+            assertFalse("read in random order", building);
+            return choiceList.get(index);
+        }
+        
+        @Override
+        public Iterator<String> iterator()
+        {
+            return choiceList.iterator();
+        }
+        
+        @Override
+        public int size()
+        {
+            return choiceList.size();
+        }
+    }
+    
+    private static final List<String> CHOICES = Arrays.asList(
+            "app-JENKINS-1234-build.zip",
+            "jenkins-1234",
+            "app-jenkins-12345.zip",
+            "tool-1.0.zip",
+            "JENKINS-1234",
+            "myjenkins-1234.zip",
+            "jk",
+            "x"
+    );
+    
+    @Test
+    public void testSearchSubstring()
+    {
+        ChoiceListTrigramIndex target = new ChoiceListTrigramIndex(CHOICES);
+        
+        ChoiceListTrigramIndex.Result result = target.search("Jenkins-1234", 10);
+        assertEquals(
+                "exact, prefix, word, and substring matches, shorter first in each",
+                Arrays.asList(
+                        "jenkins-1234",
+                        "JENKINS-1234",
+                        "app-jenkins-12345.zip",
+                        "app-JENKINS-1234-build.zip",
+                        "myjenkins-1234.zip"
+                ),
+                result.getChoiceList()
+        );
+        assertEquals(5, result.getTotal());
+        
+        result = target.search("jenkins-1234", 2);
+        assertEquals(Arrays.asList("jenkins-1234", "JENKINS-1234"), result.getChoiceList());
+        assertEquals("total is not limited", 5, result.getTotal());
+    }
+    
+    @Test
+    public void testSearchFuzzy()
+    {
+        ChoiceListTrigramIndex target = new ChoiceListTrigramIndex(CHOICES);
+        
+        // a typo: jenkisn
+        ChoiceListTrigramIndex.Result result = target.search("jenkisn-1234", 10);
+        assertEquals(5, result.getTotal());
+        assertTrue(result.getChoiceList().containsAll(Arrays.asList(
+                "jenkins-1234",
+                "JENKINS-1234",
+                "app-jenkins-12345.zip",
+                "app-JENKINS-1234-build.zip",
+                "myjenkins-1234.zip"
+        )));
+        
+        result = target.search("1234-build", 10);
+        assertEquals("substring matches come first", "app-JENKINS-1234-build.zip", result.getChoiceList().get(0));
+        
+        assertEquals("too different", 0, target.search("zzzzzzz", 10).getTotal());
+    }
+    
+    @Test
+    public void testSearchShort()
+    {
+        ChoiceListTrigramIndex target = new ChoiceListTrigramIndex(CHOICES);
+        
+        assertEquals(
+                Arrays.asList("jk"),
+                target.search("jk", 10).getChoiceList()
+        );
+        assertEquals(
+                Arrays.asList("x"),
+                target.search("X", 10).getChoiceList()
+        );
+        assertEquals(
+                Arrays.asList("tool-1.0.zip"),
+                target.search("1.", 10).getChoiceList()
+        );
+        assertEquals(
+                "prefix matches first",
+                Arrays.asList("app-jenkins-12345.zip", "app-JENKINS-1234-build.zip"),
+                target.search("ap", 10).getChoiceList()
+        );
+        assertEquals(4, target.search("zi", 10).getTotal());
+    }
+    
+    @Test
+    public void testSearchAll()
+    {
+        ChoiceListTrigramIndex target = new ChoiceListTrigramIndex(CHOICES);
+        
+        assertEquals(CHOICES.size(), target.search("", 100).getTotal());
+        assertEquals(CHOICES.subList(0, 3), target.search(null, 3).getChoiceList());
+        assertEquals(0, target.search("jenkins", 0).getChoiceList().size());
+    }
+    
+    @Test
+    public void testSearchLimited()
+    {
+        List<String> choiceList = new ArrayList<String>();
+        for(int i = 0; i < 300; ++i)
+        {
+            choiceList.add(String.format("%s-jenkins-%d.zip", (i % 3 == 0)?"app":"tool", i % 7));
+            choiceList.add(String.format("jenkisn-%d", i));
+        }
+        ChoiceListTrigramIndex target = new ChoiceListTrigramIndex(choiceList);
+        
+        for(String query: Arrays.asList("jenkins-1", "jenkins", "zip", "ap", "s-", "jenkisn-12"))
+        {
+            ChoiceListTrigramIndex.Result all = target.search(query, choiceList.size());
+            for(int limit: Arrays.asList(1, 5, 50))
+            {
+                ChoiceListTrigramIndex.Result result = target.search(query, limit);
+                assertEquals(query, all.getTotal(), result.getTotal());
+                assertEquals(
+                        String.format("%s: %d", query, limit),
+                        all.getChoiceList().subList(0, Math.min(limit, all.getChoiceList().size())),
+                        result.getChoiceList()
+                );
+            }
+        }
+    }
+    
+    @Test
+    public void testSearchReadsOnlyCompetitiveStrings()
+    {
+        final List<String> choiceList = new ArrayList<String>();
+        choiceList.add("abcdef");
+        for(int i = 0; i < 1000; ++i)
+        {
+            choiceList.add(String.format("abcdxx-%d", i));
+        }
+        final int[] reads = new int[1];
+        ChoiceListTrigramIndex target = new ChoiceListTrigramIndex(new AbstractList<String>()
+        {
+            @Override
+            public String get(int index)
+            {
+                ++reads[0];
+                return choiceList.get(index);
+            }
+            
+            @Override
+            public int size()
+            {
+                return choiceList.size();
+            }
+        });
+        
+        reads[0] = 0;
+        ChoiceListTrigramIndex.Result result = target.search("abcdef", 1);
+        assertEquals(Arrays.asList("abcdef"), result.getChoiceList());
+        assertEquals("fuzzy matches are counted", 1001, result.getTotal());
+        assertTrue(String.format("read %d strings", reads[0]), reads[0] < 10);
+    }
+    
+    @Test
+    public void testEmpty()
+    {
+        ChoiceListTrigramIndex target = new ChoiceListTrigramIndex(null);
+        assertEquals(0, target.size());
+        assertEquals(new ArrayList<String>(), target.search("abc", 10).getChoiceList());
+        assertEquals(new ArrayList<String>(), target.search("a", 10).getChoiceList());
+    }
+    
+    @Test
+    public void testLargeList()
+    {
+        List<String> choiceList = new ArrayList<String>();
+        for(int i = 0; i < 100000; ++i)
+        {
+            choiceList.add(String.format("artifact-%06d-SNAPSHOT.jar", i));
+        }
+        ChoiceListTrigramIndex target = new ChoiceListTrigramIndex(choiceList);
+        
+        long start = System.currentTimeMillis();
+        ChoiceListTrigramIndex.Result result = target.search("012345", 10);
+        long elapsed = System.currentTimeMillis() - start;
+        
+        assertEquals(Arrays.asList("artifact-012345-SNAPSHOT.jar"), result.getChoiceList().subList(0, 1));
+        assertTrue(String.format("took %d ms", elapsed), elapsed < 1000);
+    }
+    
+    @Test
+    public void testBuildSequentially()
+    {
+        ChoiceListTrigramIndex indexed = new ChoiceListTrigramIndex(CHOICES);
+        
+        SequentialList sequential = new SequentialList(new FrontCodedStringList(CHOICES));
+        ChoiceListTrigramIndex target = new ChoiceListTrigramIndex(sequential);
+        sequential.building = false;
+        assertEquals(indexed.getTrigramCount(), target.getTrigramCount());
+        for(String query: Arrays.asList("Jenkins-1234", "jenkisn-1234", "jk", "1.", "ap", "zi", "", "nothing"))
+        {
+            ChoiceListTrigramIndex.Result expected = indexed.search(query, 10);
+            ChoiceListTrigramIndex.Result result = target.search(query, 10);
+            assertEquals(query, expected.getChoiceList(), result.getChoiceList());
+            assertEquals(query, expected.getTotal(), result.getTotal());
+        }
+    }
+    
+    @Test
+    public void testManyTrigrams()
+    {
+        // more trigrams than the initial capacity of the table while building.
+        List<String> choiceList = new ArrayList<String>();
+        for(int i = 0; i < 5000; ++i)
+        {
+            choiceList.add(Integer.toString(i * 7919, 36));
+        }
+        ChoiceListTrigramIndex target = new ChoiceListTrigramIndex(choiceList);
+        assertTrue(target.getTrigramCount() > 2048);
+        for(int i = 0; i < 5000; i += 97)
+        {
+            String value = Integer.toString(i * 7919, 36);
+            assertEquals(value, target.search(value, 1).getChoiceList().get(0));
+        }
+    }
+    
+    @Test
+    public void testMappedList() throws Exception
+    {
+        File file = new File(tmp.getRoot(), "test.list");
+        MappedStringList.write(file, CHOICES);
+        ChoiceListTrigramIndex indexed = new ChoiceListTrigramIndex(CHOICES);
+        MappedStringList mapped = MappedStringList.open(file);
+        ChoiceListTrigramIndex target = ChoiceListTrigramIndex.open(mapped);
+        
+        assertTrue("stored next to the list", mapped.getSidecarFile(ChoiceListTrigramIndex.SUFFIX).exists());
+        assertEquals(indexed.getTrigramCount(), target.getTrigramCount());
+        assertEquals(CHOICES.size(), target.size());
+        for(String query: Arrays.asList("Jenkins-1234", "jenkisn-1234", "jk", "1.", "ap", "zi", "", "nothing"))
+        {
+            ChoiceListTrigramIndex.Result expected = indexed.search(query, 10);
+            ChoiceListTrigramIndex.Result result = target.search(query, 10);
+            assertEquals(query, expected.getChoiceList(), result.getChoiceList());
+            assertEquals(query, expected.getTotal(), result.getTotal());
+        }
+        
+        ChoiceListTrigramIndex reopened = ChoiceListTrigramIndex.open(mapped);
+        assertEquals("reused", indexed.search("jenkins", 10).getChoiceList(), reopened.search("jenkins", 10).getChoiceList());
+    }
+    
+    @Test
+    public void testMappedListBrokenIndex() throws Exception
+    {
+        File file = new File(tmp.getRoot(), "test.list");
+        MappedStringList.write(file, CHOICES);
+        MappedStringList mapped = MappedStringList.open(file);
+        FileUtils.writeStringToFile(mapped.getSidecarFile(ChoiceListTrigramIndex.SUFFIX), "broken");
+        
+        ChoiceListTrigramIndex target = ChoiceListTrigramIndex.open(mapped);
+        assertEquals("written again", new ChoiceListTrigramIndex(CHOICES).getTrigramCount(), target.getTrigramCount());
+        assertEquals(Arrays.asList("jk"), target.search("jk", 10).getChoiceList());
+    }
+}
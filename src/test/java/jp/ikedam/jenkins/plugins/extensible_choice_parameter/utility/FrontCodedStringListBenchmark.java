@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the memory and the time to read strings
+ * of {@link FrontCodedStringList} and {@link ArrayList}.
+ * 
+ * Not run as a test. Run it from the IDE or the command line:
+ * <pre>
+ * java -cp target/classes:target/test-classes jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility.FrontCodedStringListBenchmark [number of strings]
+ * </pre>
+ */
+public class FrontCodedStringListBenchmark
+{
+    private static List<String> createVersions(int size)
+    {
+        List<String> ret = new ArrayList<String>(size);
+        for(int i = 0; i < size; ++i)
+        {
+            ret.add(String.format(
+                    "org.example.products:product-server-distribution:%d.%d.%d-build%05d",
+                    i / 10000, (i / 100) % 100, i % 100, i
+            ));
+        }
+        return ret;
+    }
+    
+    private static long usedMemory() throws InterruptedException
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 5; ++i)
+        {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    private static long readAll(List<String> list)
+    {
+        long chars = 0;
+        for(int i = 0; i < list.size(); ++i)
+        {
+            chars += list.get(i).length();
+        }
+        for(String s: list)
+        {
+            chars += s.length();
+        }
+        return chars;
+    }
+    
+    public static void main(String[] args) throws Exception
+    {
+        int size = (args.length > 0)?Integer.parseInt(args[0]):1000000;
+        
+        long base = usedMemory();
+        List<String> arrayList = createVersions(size);
+        long arrayListBytes = usedMemory() - base;
+        
+        FrontCodedStringList compactList = new FrontCodedStringList(arrayList);
+        arrayList = null;
+        long compactListBytes = usedMemory() - base;
+        
+        arrayList = createVersions(size);
+        
+        // warm up
+        readAll(arrayList);
+        readAll(compactList);
+        
+        long start = System.nanoTime();
+        readAll(arrayList);
+        long arrayListNanos = System.nanoTime() - start;
+        
+        start = System.nanoTime();
+        readAll(compactList);
+        long compactListNanos = System.nanoTime() - start;
+        
+        start = System.nanoTime();
+        compactList.contains(arrayList.get(size - 1));
+        long compactContainsNanos = System.nanoTime() - start;
+        
+        System.out.println(String.format("%d strings (e.g. %s)", size, arrayList.get(size - 1)));
+        System.out.println(String.format(
+                "ArrayList<String>:    %6.1f bytes/entry (heap), %6.1f ns/entry to read",
+                (double)arrayListBytes / size,
+                (double)arrayListNanos / size / 2
+        ));
+        System.out.println(String.format(
+                "FrontCodedStringList: %6.1f bytes/entry (heap), %6.1f bytes/entry (encoded), %6.1f ns/entry to read",
+                (double)compactListBytes / size,
+                (double)compactList.getEncodedSize() / size,
+                (double)compactListNanos / size / 2
+        ));
+        System.out.println(String.format(
+                "FrontCodedStringList#contains (the last one): %.1f ms",
+                compactContainsNanos / 1000000.0
+        ));
+    }
+}
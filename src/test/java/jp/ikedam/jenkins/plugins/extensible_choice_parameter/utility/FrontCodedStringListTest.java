@@ -0,0 +1,195 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for FrontCodedStringList
+ */
+public class FrontCodedStringListTest
+{
+    private static List<String> createVersions(int size)
+    {
+        List<String> ret = new ArrayList<String>(size);
+        for(int i = 0; i < size; ++i)
+        {
+            ret.add(String.format("com.example.artifact-%d.%d.%d-SNAPSHOT", i / 100, (i / 10) % 10, i % 10));
+        }
+        return ret;
+    }
+    
+    @Test
+    public void testContents()
+    {
+        List<String> expected = Arrays.asList(
+                "",
+                "abc",
+                "abcdef",
+                "abcdef",
+                "ab",
+                null,
+                "ab",
+                "日本語",
+                "日本",
+                "日本語の選択肢",
+                "x"
+        );
+        FrontCodedStringList target = new FrontCodedStringList(expected);
+        
+        assertEquals(expected.size(), target.size());
+        for(int i = 0; i < expected.size(); ++i)
+        {
+            assertEquals(String.format("get(%d)", i), expected.get(i), target.get(i));
+        }
+        assertEquals("iterator", expected, new ArrayList<String>(target));
+        assertEquals("equals", expected, target);
+        assertEquals("hashCode", expected.hashCode(), target.hashCode());
+    }
+    
+    @Test
+    public void testEmpty()
+    {
+        FrontCodedStringList target = new FrontCodedStringList(Collections.<String>emptyList());
+        assertEquals(0, target.size());
+        assertFalse(target.iterator().hasNext());
+        assertEquals(-1, target.indexOf("a"));
+    }
+    
+    @Test
+    public void testBuckets()
+    {
+        // across several buckets, and the last one is not full.
+        List<String> expected = createVersions(FrontCodedStringList.BUCKET_SIZE * 3 + 5);
+        FrontCodedStringList target = new FrontCodedStringList(expected);
+        
+        for(int i = 0; i < expected.size(); ++i)
+        {
+            assertEquals(String.format("get(%d)", i), expected.get(i), target.get(i));
+        }
+        Iterator<String> it = target.iterator();
+        for(String s: expected)
+        {
+            assertTrue(it.hasNext());
+            assertEquals(s, it.next());
+        }
+        assertFalse(it.hasNext());
+    }
+    
+    @Test
+    public void testIndexOf()
+    {
+        List<String> expected = createVersions(100);
+        expected.add(null);
+        expected.add("日本語");
+        FrontCodedStringList target = new FrontCodedStringList(expected);
+        
+        assertEquals(0, target.indexOf(expected.get(0)));
+        assertEquals(57, target.indexOf(expected.get(57)));
+        assertEquals(100, target.indexOf(null));
+        assertEquals(101, target.indexOf("日本語"));
+        assertEquals(-1, target.indexOf("com.example.artifact-0.5.7"));
+        assertEquals(-1, target.indexOf(1));
+        assertTrue(target.contains(expected.get(99)));
+        assertFalse(target.contains("nosuchvalue"));
+    }
+    
+    @Test
+    public void testOutOfBounds()
+    {
+        FrontCodedStringList target = new FrontCodedStringList(Arrays.asList("a", "b"));
+        try
+        {
+            target.get(2);
+            fail();
+        }
+        catch(IndexOutOfBoundsException e)
+        {
+            // expected
+        }
+        try
+        {
+            target.get(-1);
+            fail();
+        }
+        catch(IndexOutOfBoundsException e)
+        {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testImmutable()
+    {
+        FrontCodedStringList target = new FrontCodedStringList(Arrays.asList("a", "b"));
+        try
+        {
+            target.add("c");
+            fail();
+        }
+        catch(UnsupportedOperationException e)
+        {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testCompact()
+    {
+        List<String> expected = createVersions(10000);
+        FrontCodedStringList target = new FrontCodedStringList(expected);
+        long chars = 0;
+        for(String s: expected)
+        {
+            chars += s.length();
+        }
+        // even less than the characters themselves.
+        assertTrue(String.format("%d bytes for %d characters", target.getEncodedSize(), chars), target.getEncodedSize() < chars);
+    }
+    
+    @Test
+    public void testSerialize() throws Exception
+    {
+        List<String> expected = createVersions(100);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(new FrontCodedStringList(expected));
+        out.close();
+        
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(expected, in.readObject());
+    }
+}
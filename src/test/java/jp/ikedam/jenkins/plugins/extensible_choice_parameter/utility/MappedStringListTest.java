@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.extensible_choice_parameter.utility;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for MappedStringList
+ */
+public class MappedStringListTest
+{
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    
+    private MappedStringList writeAndOpen(List<String> stringList) throws IOException
+    {
+        File file = new File(tmp.getRoot(), "test.list");
+        MappedStringList.write(file, stringList);
+        return MappedStringList.open(file);
+    }
+    
+    @Test
+    public void testContents() throws Exception
+    {
+        List<String> expected = Arrays.asList(
+                "abc",
+                "",
+                null,
+                "日本語",
+                null,
+                "def"
+        );
+        MappedStringList target = writeAndOpen(expected);
+        
+        assertEquals(expected.size(), target.size());
+        for(int i = 0; i < expected.size(); ++i)
+        {
+            assertEquals(String.format("get(%d)", i), expected.get(i), target.get(i));
+        }
+        assertEquals("iterator", expected, new ArrayList<String>(target));
+        assertEquals("hashCode", expected.hashCode(), target.hashCode());
+    }
+    
+    @Test
+    public void testEmpty() throws Exception
+    {
+        MappedStringList target = writeAndOpen(Collections.<String>emptyList());
+        assertEquals(0, target.size());
+        assertFalse(target.iterator().hasNext());
+        assertEquals(-1, target.indexOf("a"));
+    }
+    
+    @Test
+    public void testLarge() throws Exception
+    {
+        List<String> expected = new ArrayList<String>();
+        for(int i = 0; i < 100000; ++i)
+        {
+            expected.add(String.format("com.example:artifact:%d.%d", i / 100, i % 100));
+        }
+        MappedStringList target = writeAndOpen(expected);
+        assertEquals(expected, target);
+        assertEquals(99999, target.indexOf("com.example:artifact:999.99"));
+    }
+    
+    @Test
+    public void testIndexOf() throws Exception
+    {
+        MappedStringList target = writeAndOpen(Arrays.asList("abc", null, "ab", "日本語", "abc"));
+        assertEquals(0, target.indexOf("abc"));
+        assertEquals(1, target.indexOf(null));
+        assertEquals(2, target.indexOf("ab"));
+        assertEquals(3, target.indexOf("日本語"));
+        assertEquals(-1, target.indexOf("a"));
+        assertEquals(-1, target.indexOf(1));
+        assertTrue(target.contains("日本語"));
+        assertFalse(target.contains("日本"));
+        
+        assertEquals(-1, writeAndOpen(Arrays.asList("a")).indexOf(null));
+    }
+    
+    @Test
+    public void testOutOfBounds() throws Exception
+    {
+        MappedStringList target = writeAndOpen(Arrays.asList("a", "b"));
+        try
+        {
+            target.get(2);
+            fail();
+        }
+        catch(IndexOutOfBoundsException e)
+        {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testOverwrite() throws Exception
+    {
+        File file = new File(tmp.getRoot(), "test.list");
+        MappedStringList.write(file, Arrays.asList("a", "b"));
+        MappedStringList opened = MappedStringList.open(file);
+        
+        MappedStringList.write(file, Arrays.asList("c", "d", "e"));
+        assertEquals(Arrays.asList("c", "d", "e"), MappedStringList.open(file));
+        assertEquals("lists already opened are not affected", Arrays.asList("a", "b"), opened);
+        assertEquals("no temporary files are left", 1, tmp.getRoot().list().length);
+    }
+    
+    @Test
+    public void testOpenInvalid() throws Exception
+    {
+        File file = tmp.newFile("invalid.list");
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write("This is not a list of strings.".getBytes("UTF-8"));
+        }
+        finally
+        {
+            out.close();
+        }
+        try
+        {
+            MappedStringList.open(file);
+            fail();
+        }
+        catch(IOException e)
+        {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testSerialize() throws Exception
+    {
+        List<String> expected = Arrays.asList("a", null, "日本語");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(writeAndOpen(expected));
+        out.close();
+        
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Object o = in.readObject();
+        assertFalse("serialized as an ordinary list", o instanceof MappedStringList);
+        assertEquals(expected, o);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.taglib.form;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the time to render options with j:forEach and with {@link StaticOptionsTag}.
+ * 
+ * Not run as a test. Run it from the IDE or the command line:
+ * <pre>
+ * java -cp target/classes:target/test-classes jp.ikedam.jenkins.plugins.taglib.form.StaticOptionsTagBenchmark [numbers of options...]
+ * </pre>
+ */
+public class StaticOptionsTagBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int[] sizes = new int[]{1000, 10000, 100000};
+        if(args.length > 0)
+        {
+            sizes = new int[args.length];
+            for(int i = 0; i < args.length; ++i)
+            {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        
+        for(int size: sizes)
+        {
+            List<String> items = new ArrayList<String>(size);
+            for(int i = 0; i < size; ++i)
+            {
+                items.add(String.format("artifact-%06d.zip", i));
+            }
+            String defValue = items.get(size / 2);
+            
+            // warm up
+            StaticOptionsTagSimpleTest.render(StaticOptionsTagSimpleTest.FOREACH_SCRIPT, items, defValue);
+            StaticOptionsTagSimpleTest.render(StaticOptionsTagSimpleTest.TAG_SCRIPT, items, defValue);
+            
+            long forEachTime = 0;
+            long tagTime = 0;
+            int repeat = 3;
+            for(int i = 0; i < repeat; ++i)
+            {
+                long start = System.nanoTime();
+                StaticOptionsTagSimpleTest.render(StaticOptionsTagSimpleTest.FOREACH_SCRIPT, items, defValue);
+                forEachTime += System.nanoTime() - start;
+                start = System.nanoTime();
+                StaticOptionsTagSimpleTest.render(StaticOptionsTagSimpleTest.TAG_SCRIPT, items, defValue);
+                tagTime += System.nanoTime() - start;
+            }
+            System.out.println(String.format(
+                    "%d options: j:forEach %d ms, StaticOptionsTag %d ms",
+                    size,
+                    forEachTime / repeat / 1000000,
+                    tagTime / repeat / 1000000
+            ));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jp.ikedam.jenkins.plugins.taglib.form;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.jelly.JellyContext;
+import org.apache.commons.jelly.Script;
+import org.apache.commons.jelly.XMLOutput;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests for StaticOptionsTag
+ */
+public class StaticOptionsTagSimpleTest
+{
+    static final String TAG_SCRIPT =
+            "<j:jelly xmlns:j=\"jelly:core\""
+            + " xmlns:es=\"jelly:jp.ikedam.jenkins.plugins.taglib.form.StaticSelectTagLibrary\">"
+            + "<select><es:options items=\"${items}\" value=\"${defValue}\" /></select>"
+            + "</j:jelly>";
+    
+    /**
+     * What f:option does, without the overhead of invoking the tag file.
+     */
+    static final String FOREACH_SCRIPT =
+            "<j:jelly xmlns:j=\"jelly:core\">"
+            + "<select><j:forEach var=\"value\" items=\"${items}\">"
+            + "<j:choose>"
+            + "<j:when test=\"${defValue==value}\"><option value=\"${value}\" selected=\"true\">${value}</option></j:when>"
+            + "<j:otherwise><option value=\"${value}\">${value}</option></j:otherwise>"
+            + "</j:choose>"
+            + "</j:forEach></select>"
+            + "</j:jelly>";
+    
+    static String render(String script, List<String> items, String defValue) throws Exception
+    {
+        JellyContext context = new JellyContext();
+        context.setVariable("items", items);
+        context.setVariable("defValue", defValue);
+        Script compiled = context.compileScript(new InputSource(new StringReader(script)));
+        StringWriter writer = new StringWriter();
+        XMLOutput output = XMLOutput.createXMLOutput(writer, true);
+        compiled.run(context, output);
+        output.flush();
+        return writer.toString();
+    }
+    
+    /**
+     * Jelly writes attributes in a random order.
+     */
+    static String removeSelected(String html)
+    {
+        return html.replace(" selected=\"true\"", "");
+    }
+    
+    @Test
+    public void testWriteOptions() throws Exception
+    {
+        StringWriter writer = new StringWriter();
+        XMLOutput output = XMLOutput.createXMLOutput(writer, true);
+        StaticOptionsTag.writeOptions(
+                output,
+                Arrays.asList("value1", "<b>\"&amp;\"</b>", null, "value2"),
+                "value2"
+        );
+        output.flush();
+        assertEquals(
+                "<option value=\"value1\">value1</option>"
+                + "<option value=\"&lt;b&gt;&quot;&amp;amp;&quot;&lt;/b&gt;\">&lt;b&gt;\"&amp;amp;\"&lt;/b&gt;</option>"
+                + "<option value=\"\"></option>"
+                + "<option value=\"value2\" selected=\"true\">value2</option>",
+                writer.toString()
+        );
+    }
+    
+    @Test
+    public void testTag() throws Exception
+    {
+        List<String> items = Arrays.asList("value1", "value2", "value3");
+        String html = render(TAG_SCRIPT, items, "value2");
+        assertEquals(
+                removeSelected(render(FOREACH_SCRIPT, items, "value2")),
+                removeSelected(html)
+        );
+        assertTrue(html, html.contains("<option value=\"value2\" selected=\"true\">"));
+        assertEquals(
+                render(FOREACH_SCRIPT, items, null),
+                render(TAG_SCRIPT, items, null)
+        );
+        assertEquals(
+                "<select></select>",
+                render(TAG_SCRIPT, null, null)
+        );
+    }
+    
+    @Test
+    public void testManyOptions() throws Exception
+    {
+        List<String> items = new ArrayList<String>(1000);
+        for(int i = 0; i < 1000; ++i)
+        {
+            items.add(String.format("artifact-%06d.zip", i));
+        }
+        String defValue = items.get(500);
+        String html = render(TAG_SCRIPT, items, defValue);
+        assertEquals(
+                removeSelected(render(FOREACH_SCRIPT, items, defValue)),
+                removeSelected(html)
+        );
+        assertTrue(html, html.contains("<option value=\"artifact-000500.zip\" selected=\"true\">"));
+    }
+}